@@ -0,0 +1,300 @@
+package ca.bcit.bookstore2;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Benchmarks every BookStore query and Bookshop construction over
+ * synthetic catalogs of increasing size.
+ *
+ * Each benchmark is warmed up, then measured over several timed
+ * iterations. The report gives throughput, average time per operation,
+ * bytes allocated per operation, the allocation rate and the number of
+ * collections during measurement. Catalog sizes default to 1K through 10M
+ * and can be chosen on the command line:
+ * <pre>
+ *   java -Xmx8g ca.bcit.bookstore2.BookStoreBenchmark 1000 1000000
+ * </pre>
+ * Output from the printing queries is discarded while they are measured.
+ *
+ * @author Alex Lee
+ * @author Evan Tang
+ *
+ * @version 1.0
+ */
+public final class BookStoreBenchmark
+{
+    private static final int[] DEFAULT_SIZES = {1_000, 10_000, 100_000, 1_000_000, 10_000_000};
+    private static final long SEED = 2522L;
+
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int MEASURED_ITERATIONS = 5;
+    private static final long ITERATION_NANOS = 500_000_000L;
+
+    private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+    private static final double BYTES_PER_MEGABYTE = 1024.0 * 1024.0;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static volatile Object sink;
+
+    private BookStoreBenchmark()
+    {
+    }
+
+    /**
+     * Runs the benchmarks.
+     *
+     * @param args catalog sizes to benchmark; the defaults are used if none are given
+     */
+    public static void main(final String[] args)
+    {
+        final PrintStream report;
+        final int[] sizes;
+
+        report = System.out;
+        sizes = args.length == 0 ? DEFAULT_SIZES : parseSizes(args);
+
+        report.printf("%-12s %-34s %14s %14s %12s %10s %6s%n",
+                "books", "benchmark", "ops/s", "avg ns/op", "B/op", "MB/s", "gc");
+
+        for(final int size : sizes)
+        {
+            final List<Novel> novels;
+            final BookStore store;
+
+            novels = new NovelGenerator(SEED).generate(size);
+            store = new BookStore("Benchmark " + size, novels);
+
+            for(final Map.Entry<String, Operation> benchmark : benchmarks(store, novels).entrySet())
+            {
+                final Result result;
+
+                System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+                try
+                {
+                    result = measure(benchmark.getValue());
+                }
+                finally
+                {
+                    System.setOut(report);
+                }
+
+                report.printf("%-12d %-34s %14.1f %14.1f %12.1f %10.1f %6d%n",
+                        size,
+                        benchmark.getKey(),
+                        result.operationsPerSecond(),
+                        result.nanosPerOperation(),
+                        result.bytesPerOperation(),
+                        result.megabytesPerSecond(),
+                        result.collections);
+            }
+        }
+    }
+
+    /**
+     * Lists the benchmarks for one catalog, in report order.
+     */
+    private static Map<String, Operation> benchmarks(final BookStore store, final List<Novel> novels)
+    {
+        final Map<String, Operation> benchmarks;
+        benchmarks = new LinkedHashMap<>();
+
+        benchmarks.put("printAllTitles", () -> { store.printAllTitles(); return null; });
+        benchmarks.put("printBookTitle(the)", () -> { store.printBookTitle("the"); return null; });
+        benchmarks.put("printTitlesInAlphaOrder", () -> { store.printTitlesInAlphaOrder(); return null; });
+        benchmarks.put("printGroupByDecade(2000)", () -> { store.printGroupByDecade(2000); return null; });
+        benchmarks.put("getLongest", () -> { store.getLongest(); return null; });
+        benchmarks.put("isThereABookWrittenBetween(1950)", () -> store.isThereABookWrittenBetween(1950));
+        benchmarks.put("howManyBooksContain(heart)", () -> store.howManyBooksContain("heart"));
+        benchmarks.put("howManyBooksContain(a)", () -> store.howManyBooksContain("a"));
+        benchmarks.put("searchTitles(hunterr, 10)", () -> store.searchTitles("hunterr", 10));
+        benchmarks.put("whichPercentWrittenBetween", () -> store.whichPercentWrittenBetween(1940, 1950));
+        benchmarks.put("getOldestBook", store::getOldestBook);
+        benchmarks.put("getBooksThisLength(15)", () -> store.getBooksThisLength(15));
+        benchmarks.put("getAllNovels", store::getAllNovels);
+        benchmarks.put("runBatch(Main queries)", () -> store.runBatch(mainQueries()));
+        benchmarks.put("query(heart, 1940-1960, length 15)", () -> store.query()
+                .titleContains("heart")
+                .publishedBetween(1940, 1960)
+                .titleLength(15)
+                .toList());
+        benchmarks.put("new Bookshop", () -> new Bookshop(novels));
+
+        final Bookshop shop;
+        final String title;
+
+        shop = new Bookshop(novels);
+        title = novels.get(novels.size() / 2).getTitle();
+
+        benchmarks.put("Bookshop.findByTitle", () -> shop.findByTitle(title));
+        benchmarks.put("Bookshop.findByTitleIgnoreCase", () -> shop.findByTitleIgnoreCase(title.toUpperCase()));
+        benchmarks.put("Bookshop.getSortedTitlesWithout", () -> shop.getSortedTitlesWithout("the"));
+
+        return benchmarks;
+    }
+
+    /**
+     * Builds a batch holding the queries Main runs one after another.
+     */
+    private static QueryBatch mainQueries()
+    {
+        final QueryBatch batch;
+        batch = new QueryBatch();
+
+        batch.titlesContaining("the");
+        batch.titlesByDecade(2000);
+        batch.longestTitle();
+        batch.bookWrittenIn(1950);
+        batch.countContaining("heart");
+        batch.countContaining("a");
+        batch.percentWrittenBetween(1940, 1950);
+        batch.oldestBook();
+        batch.booksThisLength(15);
+
+        return batch;
+    }
+
+    /**
+     * Warms an operation up, then measures it.
+     */
+    private static Result measure(final Operation operation)
+    {
+        for(int i = 0; i < WARMUP_ITERATIONS; i++)
+        {
+            runIteration(operation);
+        }
+
+        final Result total;
+        total = new Result();
+
+        for(int i = 0; i < MEASURED_ITERATIONS; i++)
+        {
+            final Result iteration;
+            iteration = runIteration(operation);
+
+            total.operations += iteration.operations;
+            total.nanos += iteration.nanos;
+            total.bytes += iteration.bytes;
+            total.collections += iteration.collections;
+        }
+        return total;
+    }
+
+    /**
+     * Runs an operation for one timed iteration, in doubling batches so that
+     * reading the clock does not dominate fast operations.
+     */
+    private static Result runIteration(final Operation operation)
+    {
+        final Result result;
+        final long startBytes;
+        final long startCollections;
+        final long start;
+        long batch;
+
+        result = new Result();
+        startBytes = allocatedBytes();
+        startCollections = collections();
+        start = System.nanoTime();
+        batch = 1;
+
+        do
+        {
+            for(long i = 0; i < batch; i++)
+            {
+                sink = operation.run();
+            }
+            result.operations += batch;
+            batch *= 2;
+        }
+        while(System.nanoTime() - start < ITERATION_NANOS);
+
+        result.nanos = System.nanoTime() - start;
+        result.bytes = allocatedBytes() - startBytes;
+        result.collections = collections() - startCollections;
+        return result;
+    }
+
+    private static long allocatedBytes()
+    {
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static long collections()
+    {
+        long count = 0;
+
+        for(final GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans())
+        {
+            count += Math.max(0, collector.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static int[] parseSizes(final String[] args)
+    {
+        final List<Integer> sizes;
+        sizes = new ArrayList<>();
+
+        for(final String arg : args)
+        {
+            final int size;
+            size = Integer.parseInt(arg);
+
+            if(size < 1)
+            {
+                throw new IllegalArgumentException("catalog size must be positive: " + arg);
+            }
+            sizes.add(size);
+        }
+        return sizes.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * A benchmarked call whose result is kept alive.
+     */
+    @FunctionalInterface
+    private interface Operation
+    {
+        Object run();
+    }
+
+    /**
+     * Totals measured over one or more iterations.
+     */
+    private static final class Result
+    {
+        private long operations;
+        private long nanos;
+        private long bytes;
+        private long collections;
+
+        private double operationsPerSecond()
+        {
+            return operations * NANOS_PER_SECOND / nanos;
+        }
+
+        private double nanosPerOperation()
+        {
+            return (double) nanos / operations;
+        }
+
+        private double bytesPerOperation()
+        {
+            return (double) bytes / operations;
+        }
+
+        private double megabytesPerSecond()
+        {
+            return bytes / BYTES_PER_MEGABYTE * NANOS_PER_SECOND / nanos;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package ca.bcit.bookstore2;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Load test for BookStoreServer over the loopback interface.
+ *
+ * A server is started on a free local port over a synthetic catalog and a
+ * client sends a mix of queries, keeping a fixed number in flight. After
+ * a warm-up, every response time is recorded, and the report gives the
+ * throughput and the 50th, 99th and 99.9th percentile latencies.
+ * <pre>
+ *   java -Dsun.net.httpserver.nodelay=true ca.bcit.bookstore2.BookStoreServerLoadTest [requests] [concurrency] [books]
+ * </pre>
+ *
+ * @author Alex Lee
+ * @author Evan Tang
+ *
+ * @version 1.0
+ */
+public final class BookStoreServerLoadTest
+{
+    private static final int DEFAULT_REQUESTS = 200_000;
+    private static final int DEFAULT_CONCURRENCY = 256;
+    private static final int DEFAULT_BOOKS = 100_000;
+    private static final int WARMUP_DIVISOR = 10;
+    private static final long SEED = 2522L;
+    private static final int STATUS_OK = 200;
+
+    private static final double NANOS_PER_MICRO = 1_000.0;
+    private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+
+    private static final List<String> QUERIES = List.of(
+            "/count?contains=heart",
+            "/titles?contains=jest",
+            "/percent?first=1940&last=1950",
+            "/exists?year=1950",
+            "/decade?start=2000",
+            "/oldest",
+            "/oldest?count=10",
+            "/length?n=15",
+            "/longest");
+
+    private BookStoreServerLoadTest()
+    {
+    }
+
+    /**
+     * Runs the load test.
+     *
+     * @param args optional number of requests, requests in flight and catalog size
+     *
+     * @throws IOException if the server cannot be started
+     * @throws InterruptedException if interrupted while waiting for responses
+     */
+    public static void main(final String[] args) throws IOException, InterruptedException
+    {
+        final int requests;
+        final int concurrency;
+        final int books;
+
+        requests = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_REQUESTS;
+        concurrency = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_CONCURRENCY;
+        books = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_BOOKS;
+
+        final BookStore store;
+        store = new BookStore("Load test", new NovelGenerator(SEED).generate(books));
+
+        try(BookStoreServer server = new BookStoreServer(store,
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0)))
+        {
+            final HttpClient client;
+            final String base;
+
+            server.start();
+            client = HttpClient.newHttpClient();
+            base = "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+
+            run(client, base, requests / WARMUP_DIVISOR, concurrency, new LatencyHistogram(), new LongAdder());
+
+            final LatencyHistogram latencies;
+            final LongAdder errors;
+            final long started;
+            final long elapsed;
+
+            latencies = new LatencyHistogram();
+            errors = new LongAdder();
+            started = System.nanoTime();
+            run(client, base, requests, concurrency, latencies, errors);
+            elapsed = System.nanoTime() - started;
+
+            System.out.printf("books=%d requests=%d concurrency=%d virtualThreads=%b errors=%d%n",
+                    books, requests, concurrency, server.usesVirtualThreads(), errors.sum());
+            System.out.printf("throughput %.0f req/s%n", requests * NANOS_PER_SECOND / elapsed);
+            System.out.printf("p50 %.1f us  p99 %.1f us  p999 %.1f us  max %.1f us%n",
+                    latencies.percentile(50) / NANOS_PER_MICRO,
+                    latencies.percentile(99) / NANOS_PER_MICRO,
+                    latencies.percentile(99.9) / NANOS_PER_MICRO,
+                    latencies.max() / NANOS_PER_MICRO);
+        }
+    }
+
+    /**
+     * Sends requests, cycling through the query mix, with at most a number
+     * of them in flight, and waits for all the responses.
+     */
+    private static void run(final HttpClient client,
+                            final String base,
+                            final int requests,
+                            final int concurrency,
+                            final LatencyHistogram latencies,
+                            final LongAdder errors) throws InterruptedException
+    {
+        final Semaphore inFlight;
+        inFlight = new Semaphore(concurrency);
+
+        for(int i = 0; i < requests; i++)
+        {
+            final HttpRequest request;
+            final long sent;
+
+            request = HttpRequest.newBuilder(URI.create(base + QUERIES.get(i % QUERIES.size()))).build();
+
+            inFlight.acquire();
+            sent = System.nanoTime();
+
+            final CompletableFuture<HttpResponse<byte[]>> response;
+            response = client.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray());
+
+            response.whenComplete((result, failure) -> {
+                latencies.record(System.nanoTime() - sent);
+
+                if(failure != null || result.statusCode() != STATUS_OK)
+                {
+                    errors.increment();
+                }
+                inFlight.release();
+            });
+        }
+
+        inFlight.acquire(concurrency);
+        inFlight.release(concurrency);
+    }
+}
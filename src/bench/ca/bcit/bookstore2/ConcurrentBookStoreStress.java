@@ -0,0 +1,133 @@
+package ca.bcit.bookstore2;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Stress check that readers of a ConcurrentBookStore never see a change
+ * half applied.
+ *
+ * A writer keeps swapping one marker novel for another in a single update,
+ * so the catalog always holds the same number of books and exactly one
+ * marker. Reader threads check both facts, through several different
+ * queries, inside each read. Any mismatch is a torn read and makes the
+ * program exit with status 1.
+ * <pre>
+ *   java ca.bcit.bookstore2.ConcurrentBookStoreStress [seconds] [readers]
+ * </pre>
+ *
+ * @author Alex Lee
+ * @author Evan Tang
+ *
+ * @version 1.0
+ */
+public final class ConcurrentBookStoreStress
+{
+    private static final int CATALOG_SIZE = 20_000;
+    private static final long SEED = 2522L;
+    private static final int DEFAULT_SECONDS = 10;
+    private static final int DEFAULT_READERS = 4;
+    private static final long MILLIS_PER_SECOND = 1000L;
+    private static final double ALL_BOOKS = 100.0;
+
+    private static final String MARKER = "zz marker";
+    private static final Novel FIRST_MARKER = new Novel(MARKER + " one", "Stress Writer", 2001);
+    private static final Novel SECOND_MARKER = new Novel(MARKER + " two", "Stress Writer", 2002);
+
+    private ConcurrentBookStoreStress()
+    {
+    }
+
+    /**
+     * Runs the stress check.
+     *
+     * @param args optional run time in seconds and number of reader threads
+     *
+     * @throws InterruptedException if interrupted while waiting for the threads
+     */
+    public static void main(final String[] args) throws InterruptedException
+    {
+        final int seconds;
+        final int readerCount;
+        final List<Novel> novels;
+        final ConcurrentBookStore store;
+        final int expectedSize;
+
+        seconds = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_SECONDS;
+        readerCount = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_READERS;
+
+        novels = new ArrayList<>(new NovelGenerator(SEED).generate(CATALOG_SIZE));
+        novels.add(FIRST_MARKER);
+        store = new ConcurrentBookStore("Stress", novels);
+        expectedSize = novels.size();
+
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final LongAdder reads = new LongAdder();
+        final LongAdder writes = new LongAdder();
+        final LongAdder tornReads = new LongAdder();
+
+        final List<Thread> threads;
+        threads = new ArrayList<>();
+
+        threads.add(new Thread(() -> {
+            boolean firstPresent = true;
+
+            while(running.get())
+            {
+                final Novel out = firstPresent ? FIRST_MARKER : SECOND_MARKER;
+                final Novel in = firstPresent ? SECOND_MARKER : FIRST_MARKER;
+
+                store.update(bookStore -> {
+                    bookStore.removeNovel(out);
+                    bookStore.addNovel(in);
+                });
+                firstPresent = !firstPresent;
+                writes.increment();
+            }
+        }, "writer"));
+
+        for(int i = 0; i < readerCount; i++)
+        {
+            threads.add(new Thread(() -> {
+                while(running.get())
+                {
+                    final boolean consistent = store.read(bookStore ->
+                            bookStore.getAllNovels().size() == expectedSize &&
+                            bookStore.howManyBooksContain("") == expectedSize &&
+                            bookStore.whichPercentWrittenBetween(Novel.INITIAL_YEAR, Novel.CURRENT_YEAR) == ALL_BOOKS &&
+                            bookStore.howManyBooksContain(MARKER) == 1);
+
+                    if(!consistent)
+                    {
+                        tornReads.increment();
+                    }
+                    reads.increment();
+                }
+            }, "reader-" + i));
+        }
+
+        for(final Thread thread : threads)
+        {
+            thread.start();
+        }
+
+        Thread.sleep(seconds * MILLIS_PER_SECOND);
+        running.set(false);
+
+        for(final Thread thread : threads)
+        {
+            thread.join();
+        }
+
+        System.out.println("reads=" + reads.sum() +
+                " writes=" + writes.sum() +
+                " tornReads=" + tornReads.sum());
+
+        if(tornReads.sum() > 0)
+        {
+            System.exit(1);
+        }
+    }
+}
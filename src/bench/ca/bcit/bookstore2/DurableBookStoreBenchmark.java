@@ -0,0 +1,164 @@
+package ca.bcit.bookstore2;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Measures how fast a DurableBookStore logs changes and how long it takes
+ * to reopen.
+ *
+ * Write throughput is measured by adding generated novels with the log
+ * forced to disk after every change, and then after batches of changes.
+ * Forcing after every change is limited by the disk's sync latency, so it
+ * runs on a smaller number of changes. Recovery is measured by reopening a
+ * catalog whose changes are all in the log, and again after they have been
+ * compacted into a snapshot.
+ * <pre>
+ *   java ca.bcit.bookstore2.DurableBookStoreBenchmark [records] [directory]
+ * </pre>
+ *
+ * @author Alex Lee
+ * @author Evan Tang
+ *
+ * @version 1.0
+ */
+public final class DurableBookStoreBenchmark
+{
+    private static final int DEFAULT_RECORDS = 2_000_000;
+    private static final int SYNC_EACH_RECORDS = 2_000;
+    private static final int[] SYNC_BATCHES = {64, 1_024, 16_384};
+    private static final long SEED = 2522L;
+
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+    private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+
+    private DurableBookStoreBenchmark()
+    {
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args optional number of records and a directory for the catalogs
+     *
+     * @throws IOException if a catalog cannot be written or read
+     */
+    public static void main(final String[] args) throws IOException
+    {
+        final int records;
+        final Path parent;
+        final List<Novel> novels;
+
+        records = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_RECORDS;
+        parent = args.length > 1 ? Path.of(args[1]) : Path.of(System.getProperty("java.io.tmpdir"));
+        novels = new NovelGenerator(SEED).generate(records);
+
+        System.out.printf("%-28s %12s %14s %12s%n", "benchmark", "records", "records/s", "ms");
+
+        writes(parent, novels.subList(0, Math.min(SYNC_EACH_RECORDS, records)), 1);
+
+        for(final int batch : SYNC_BATCHES)
+        {
+            writes(parent, novels, batch);
+        }
+
+        recovery(parent, novels);
+    }
+
+    /**
+     * Adds novels one at a time to an empty catalog, forcing the log to
+     * disk after every batch of changes.
+     */
+    private static void writes(final Path parent, final List<Novel> novels, final int syncEvery) throws IOException
+    {
+        final Path directory;
+        directory = Files.createTempDirectory(parent, "wal-bench");
+
+        try(DurableBookStore store = DurableBookStore.open(directory, "Benchmark", List.of(),
+                syncEvery, Integer.MAX_VALUE))
+        {
+            final long started;
+            final long elapsed;
+
+            started = System.nanoTime();
+            for(final Novel novel : novels)
+            {
+                store.addNovel(novel);
+            }
+            store.sync();
+            elapsed = System.nanoTime() - started;
+
+            report("append, sync every " + syncEvery, novels.size(), elapsed);
+        }
+        finally
+        {
+            deleteDirectory(directory);
+        }
+    }
+
+    /**
+     * Reopens a catalog held entirely in its log, then again once it has
+     * been compacted into a snapshot.
+     */
+    private static void recovery(final Path parent, final List<Novel> novels) throws IOException
+    {
+        final Path directory;
+        directory = Files.createTempDirectory(parent, "wal-bench");
+
+        try
+        {
+            try(DurableBookStore store = DurableBookStore.open(directory, "Benchmark", List.of(),
+                    DurableBookStore.DEFAULT_SYNC_EVERY, Integer.MAX_VALUE))
+            {
+                for(final Novel novel : novels)
+                {
+                    store.addNovel(novel);
+                }
+            }
+
+            long started;
+            long elapsed;
+
+            started = System.nanoTime();
+            try(DurableBookStore store = DurableBookStore.open(directory, "Benchmark", List.of()))
+            {
+                elapsed = System.nanoTime() - started;
+                report("recover, replay log", store.getReplayedRecords(), elapsed);
+
+                store.snapshot();
+            }
+
+            started = System.nanoTime();
+            try(DurableBookStore store = DurableBookStore.open(directory, "Benchmark", List.of()))
+            {
+                elapsed = System.nanoTime() - started;
+                report("recover, map snapshot", store.getBookStore().getAllNovels().size(), elapsed);
+            }
+        }
+        finally
+        {
+            deleteDirectory(directory);
+        }
+    }
+
+    private static void report(final String name, final long records, final long nanos)
+    {
+        System.out.printf("%-28s %12d %14.0f %12.1f%n",
+                name, records, records * NANOS_PER_SECOND / nanos, nanos / NANOS_PER_MILLI);
+    }
+
+    private static void deleteDirectory(final Path directory) throws IOException
+    {
+        try(DirectoryStream<Path> files = Files.newDirectoryStream(directory))
+        {
+            for(final Path file : files)
+            {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+}
@@ -0,0 +1,133 @@
+package ca.bcit.bookstore2;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+/**
+ * Shows how long a freshly opened bookstore takes to answer its first
+ * queries, with indexes built on first use and with indexes built in the
+ * background.
+ *
+ * Built on first use, the first query of each kind pays for its index.
+ * Built in the background, the same queries are answered at once by
+ * scanning the catalog. The report then gives each index's build time,
+ * the time until the bookstore is fully indexed, and the queries again
+ * once every index is ready.
+ * <pre>
+ *   java -Xmx6g ca.bcit.bookstore2.IndexWarmupBenchmark [books]
+ * </pre>
+ *
+ * @author Alex Lee
+ * @author Evan Tang
+ *
+ * @version 1.0
+ */
+public final class IndexWarmupBenchmark
+{
+    private static final int DEFAULT_BOOKS = 1_000_000;
+    private static final long SEED = 2522L;
+
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    private IndexWarmupBenchmark()
+    {
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args optional catalog size
+     */
+    public static void main(final String[] args)
+    {
+        final int books;
+        final List<Novel> novels;
+        final Map<String, Function<BookStore, Object>> queries;
+
+        books = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_BOOKS;
+        novels = new NovelGenerator(SEED).generate(books);
+        queries = queries(novels.get(0).getAuthorName());
+
+        final BookStore lazy;
+        final BookStore background;
+        final ExecutorService executor;
+        final Map<String, Double> lazyFirst;
+        final Map<String, Double> backgroundFirst;
+        final long opened;
+
+        lazy = new BookStore("Lazy", novels);
+        lazyFirst = time(lazy, queries);
+
+        executor = Executors.newSingleThreadExecutor();
+        background = new BookStore("Background", novels);
+        opened = System.nanoTime();
+        background.buildIndexesInBackground(executor);
+        backgroundFirst = time(background, queries);
+        background.awaitIndexes();
+
+        final double fullyIndexedMillis;
+        fullyIndexedMillis = (System.nanoTime() - opened) / NANOS_PER_MILLI;
+
+        final Map<String, Double> backgroundReady;
+        backgroundReady = time(background, queries);
+        executor.shutdown();
+
+        System.out.printf("%,d books%n%n", books);
+        System.out.printf("%-28s %14s %16s %14s%n", "first query", "lazy ms", "background ms", "ready ms");
+
+        for(final String name : queries.keySet())
+        {
+            System.out.printf("%-28s %14.2f %16.2f %14.2f%n",
+                    name, lazyFirst.get(name), backgroundFirst.get(name), backgroundReady.get(name));
+        }
+
+        System.out.printf("%nfully indexed after %.0f ms%n", fullyIndexedMillis);
+
+        for(final IndexStatus status : background.getIndexStatus())
+        {
+            System.out.println("  " + status);
+        }
+    }
+
+    /**
+     * The queries a server would get first, each needing a different index.
+     */
+    private static Map<String, Function<BookStore, Object>> queries(final String authorName)
+    {
+        final Map<String, Function<BookStore, Object>> queries;
+        queries = new LinkedHashMap<>();
+
+        queries.put("howManyBooksContain(heart)", store -> store.howManyBooksContain("heart"));
+        queries.put("getTitlesByDecade(1950)", store -> store.getTitlesByDecade(1950));
+        queries.put("getLongestTitle()", BookStore::getLongestTitle);
+        queries.put("countBooksBy(author)", store -> store.countBooksBy(authorName));
+        queries.put("query(heart, 1940-1960)",
+                store -> store.query().titleContains("heart").publishedBetween(1940, 1960).count());
+
+        return queries;
+    }
+
+    /**
+     * Runs each query once and returns how long each took.
+     */
+    private static Map<String, Double> time(final BookStore bookStore,
+                                            final Map<String, Function<BookStore, Object>> queries)
+    {
+        final Map<String, Double> millis;
+        millis = new LinkedHashMap<>();
+
+        for(final Map.Entry<String, Function<BookStore, Object>> query : queries.entrySet())
+        {
+            final long started;
+            started = System.nanoTime();
+
+            query.getValue().apply(bookStore);
+            millis.put(query.getKey(), (System.nanoTime() - started) / NANOS_PER_MILLI);
+        }
+        return millis;
+    }
+}
@@ -0,0 +1,123 @@
+package ca.bcit.bookstore2;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates synthetic catalogs of valid novels from a fixed seed.
+ *
+ * Titles and author names are drawn from small vocabularies that include
+ * the words the sample queries look for, so every query has matches at
+ * every catalog size.
+ *
+ * @author Alex Lee
+ * @author Evan Tang
+ *
+ * @version 1.0
+ */
+final class NovelGenerator
+{
+    private static final String[] TITLE_WORDS = {
+            "the", "heart", "of", "a", "night", "river", "house", "king", "men",
+            "lonely", "hunter", "sun", "also", "rises", "road", "sleep", "golden",
+            "notebook", "blind", "assassin", "sea", "wind", "glory", "power",
+            "children", "midnight", "farm", "animal", "noise", "white", "teeth",
+            "rainbow", "gravity", "fire", "pale", "jest", "infinite", "tragedy",
+            "American", "French", "Lieutenant's", "Woman", "Death", "Family"
+    };
+
+    private static final String[] FIRST_NAMES = {
+            "Saul", "Thomas", "Philip", "Margaret", "Virginia", "William", "John",
+            "Toni", "George", "Zadie", "Kazuo", "Evelyn", "Graham", "Iris", "Henry"
+    };
+
+    private static final String[] LAST_NAMES = {
+            "Bellow", "Pynchon", "Roth", "Atwood", "Woolf", "Faulkner", "Updike",
+            "Morrison", "Orwell", "Smith", "Ishiguro", "Waugh", "Greene", "Murdoch", "Miller"
+    };
+
+    private static final int MAX_TITLE_LENGTH = 50;
+    private static final int MAX_TITLE_WORDS = 6;
+    private static final int OLDEST_YEAR = 1600;
+    private static final int NEWEST_YEAR = 2026;
+
+    private final Random random;
+
+    /**
+     * Creates a generator.
+     *
+     * @param seed seed for the random sequence
+     */
+    NovelGenerator(final long seed)
+    {
+        random = new Random(seed);
+    }
+
+    /**
+     * Generates a catalog of novels.
+     *
+     * @param count number of novels to generate
+     *
+     * @return the novels
+     */
+    List<Novel> generate(final int count)
+    {
+        final List<Novel> novels;
+        novels = new ArrayList<>(count);
+
+        for(int i = 0; i < count; i++)
+        {
+            novels.add(next());
+        }
+        return novels;
+    }
+
+    /**
+     * Generates one novel.
+     *
+     * @return the novel
+     */
+    Novel next()
+    {
+        return new Novel(nextTitle(), nextAuthor(), nextYear());
+    }
+
+    private String nextTitle()
+    {
+        final StringBuilder title;
+        final int words;
+
+        title = new StringBuilder();
+        words = 1 + random.nextInt(MAX_TITLE_WORDS);
+
+        for(int i = 0; i < words; i++)
+        {
+            final String word;
+            word = TITLE_WORDS[random.nextInt(TITLE_WORDS.length)];
+
+            if(title.length() + word.length() + 1 > MAX_TITLE_LENGTH)
+            {
+                break;
+            }
+
+            if(title.length() > 0)
+            {
+                title.append(' ');
+            }
+            title.append(Character.toUpperCase(word.charAt(0))).append(word, 1, word.length());
+        }
+        return title.toString();
+    }
+
+    private String nextAuthor()
+    {
+        return FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + " " +
+                LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+    }
+
+    private int nextYear()
+    {
+        return OLDEST_YEAR + random.nextInt(NEWEST_YEAR - OLDEST_YEAR + 1);
+    }
+}
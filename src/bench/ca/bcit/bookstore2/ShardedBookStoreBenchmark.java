@@ -0,0 +1,222 @@
+package ca.bcit.bookstore2;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+
+/**
+ * Runs a catalog split across several shard JVMs on this machine and
+ * checks it against a single bookstore.
+ *
+ * Each shard is a ShardServer in a child JVM on the loopback interface.
+ * The catalog is loaded through a ShardCoordinator, then every query is
+ * run on both the shards and a BookStore holding the same novels; the
+ * answers must match and both times are reported. The oldest book and
+ * the longest title are compared by year and length, since ties may be
+ * broken in a different order.
+ * <pre>
+ *   java ca.bcit.bookstore2.ShardedBookStoreBenchmark [shards] [books] [hash|year]
+ * </pre>
+ *
+ * @author Alex Lee
+ * @author Evan Tang
+ *
+ * @version 1.0
+ */
+public final class ShardedBookStoreBenchmark
+{
+    private static final int DEFAULT_SHARDS = 4;
+    private static final int DEFAULT_BOOKS = 1_000_000;
+    private static final long SEED = 2522L;
+    private static final int ROUNDS = 5;
+    private static final int FIRST_YEAR = 1600;
+    private static final int LAST_YEAR = 2026;
+
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    private ShardedBookStoreBenchmark()
+    {
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args optional number of shards, catalog size and partitioning
+     *
+     * @throws IOException if a shard cannot be started or reached
+     * @throws InterruptedException if interrupted while stopping the shards
+     */
+    public static void main(final String[] args) throws IOException, InterruptedException
+    {
+        final int shards;
+        final int books;
+        final boolean byYear;
+
+        shards = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_SHARDS;
+        books = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_BOOKS;
+        byYear = args.length > 2 && "year".equals(args[2]);
+
+        final List<Novel> novels;
+        final BookStore single;
+        final List<Process> processes;
+        final List<InetSocketAddress> addresses;
+
+        novels = new NovelGenerator(SEED).generate(books);
+        single = new BookStore("Single", novels);
+        processes = new ArrayList<>();
+        addresses = new ArrayList<>();
+
+        try
+        {
+            for(int shard = 0; shard < shards; shard++)
+            {
+                final Process process;
+                process = startShard();
+                processes.add(process);
+                addresses.add(readAddress(process));
+            }
+
+            try(ShardCoordinator coordinator = new ShardCoordinator(addresses,
+                    byYear ? Partitioner.byYearRange(yearBoundaries(shards)) : Partitioner.byTitleHash()))
+            {
+                final long started;
+                started = System.nanoTime();
+                coordinator.addNovels(novels);
+
+                System.out.printf("shards=%d books=%d partitioning=%s loaded in %.0f ms%n",
+                        shards, books, byYear ? "year" : "hash",
+                        (System.nanoTime() - started) / NANOS_PER_MILLI);
+
+                compare("getNovelCount()", single::getNovelCount, coordinator::getNovelCount);
+                compare("howManyBooksContain(heart)",
+                        () -> single.howManyBooksContain("heart"),
+                        () -> coordinator.howManyBooksContain("heart"));
+                compare("whichPercentWrittenBetween(1940, 1950)",
+                        () -> single.whichPercentWrittenBetween(1940, 1950),
+                        () -> coordinator.whichPercentWrittenBetween(1940, 1950));
+                compare("getOldestBook().getYearPublished()",
+                        () -> single.getOldestBook().getYearPublished(),
+                        () -> coordinator.getOldestBook().getYearPublished());
+                compare("getLongestTitle().length()",
+                        () -> single.getLongestTitle().length(),
+                        () -> coordinator.getLongestTitle().length());
+                compare("getBooksThisLength(15).size()",
+                        () -> single.getBooksThisLength(15).size(),
+                        () -> coordinator.getBooksThisLength(15).size());
+            }
+        }
+        finally
+        {
+            for(final Process process : processes)
+            {
+                process.getOutputStream().close();
+            }
+
+            for(final Process process : processes)
+            {
+                process.waitFor();
+            }
+        }
+    }
+
+    /**
+     * Starts a ShardServer in a child JVM with this JVM's class path.
+     */
+    private static Process startShard() throws IOException
+    {
+        final String java;
+        java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+
+        return new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                ShardServer.class.getName())
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+    }
+
+    /**
+     * Reads the port a child shard prints once it is listening.
+     */
+    private static InetSocketAddress readAddress(final Process process) throws IOException
+    {
+        final BufferedReader reader;
+        final String line;
+
+        reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+        line = reader.readLine();
+
+        if(line == null)
+        {
+            throw new IOException("shard exited before listening");
+        }
+        return new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(line.trim()));
+    }
+
+    /**
+     * Splits the generated years into equal ranges, one per shard.
+     */
+    private static int[] yearBoundaries(final int shards)
+    {
+        final int[] boundaries;
+        boundaries = new int[shards - 1];
+
+        for(int i = 0; i < boundaries.length; i++)
+        {
+            boundaries[i] = FIRST_YEAR + (LAST_YEAR - FIRST_YEAR + 1) * (i + 1) / shards;
+        }
+        return boundaries;
+    }
+
+    /**
+     * Times a query on the single bookstore and on the shards, keeping the
+     * best of a few rounds, and fails if their answers differ.
+     */
+    private static <T> void compare(final String name,
+                                    final Callable<T> single,
+                                    final Callable<T> sharded)
+    {
+        try
+        {
+            long singleBest = Long.MAX_VALUE;
+            long shardedBest = Long.MAX_VALUE;
+            T singleResult = null;
+            T shardedResult = null;
+
+            for(int round = 0; round < ROUNDS; round++)
+            {
+                long started;
+
+                started = System.nanoTime();
+                singleResult = single.call();
+                singleBest = Math.min(singleBest, System.nanoTime() - started);
+
+                started = System.nanoTime();
+                shardedResult = sharded.call();
+                shardedBest = Math.min(shardedBest, System.nanoTime() - started);
+            }
+
+            if(!Objects.equals(singleResult, shardedResult))
+            {
+                throw new IllegalStateException(name + ": single " + singleResult + ", sharded " + shardedResult);
+            }
+
+            System.out.printf("%-40s single %8.2f ms  sharded %8.2f ms  = %s%n",
+                    name, singleBest / NANOS_PER_MILLI, shardedBest / NANOS_PER_MILLI, singleResult);
+        }
+        catch(final RuntimeException e)
+        {
+            throw e;
+        }
+        catch(final Exception e)
+        {
+            throw new IllegalStateException(name + " failed", e);
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package ca.bcit.bookstore2;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Measures how much less memory a TitleDictionary takes than the same
+ * titles held as Strings, and what a lookup costs.
+ *
+ * For each catalog size the distinct titles of a synthetic catalog are
+ * held first as an array of Strings, then as a dictionary. The heap in use
+ * after a full collection is read before either exists and with each held
+ * on its own, and the report gives bytes per title for both forms along
+ * with the dictionary's own count of its arrays. Lookups by title and by id
+ * are then timed over titles picked at random.
+ *
+ * The same catalog is also put in off-heap storage twice, once with every
+ * title packed into the arena and once with the titles in a dictionary and
+ * only ids in the rows, and the report gives the title bytes per novel of
+ * each: the arena's title bytes against the dictionary's arrays. A
+ * Bookshop keeps its titles the same way.
+ * <pre>
+ *   java -Xmx6g ca.bcit.bookstore2.TitleDictionaryBenchmark 1000000 10000000
+ * </pre>
+ *
+ * @author Alex Lee
+ * @author Evan Tang
+ *
+ * @version 1.0
+ */
+public final class TitleDictionaryBenchmark
+{
+    private static final int[] DEFAULT_SIZES = {1_000_000, 10_000_000};
+    private static final long SEED = 2522L;
+    private static final int LOOKUPS = 1_000_000;
+    private static final int COLLECTIONS = 3;
+
+    private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+
+    private static volatile Object sink;
+
+    private TitleDictionaryBenchmark()
+    {
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args catalog sizes to measure; the defaults are used if none are given
+     */
+    public static void main(final String[] args)
+    {
+        final int[] sizes;
+        sizes = args.length == 0 ? DEFAULT_SIZES : Arrays.stream(args).mapToInt(Integer::parseInt).toArray();
+
+        System.out.printf("%-10s %-10s %14s %14s %14s %12s %12s %14s %14s%n",
+                "books", "titles", "String B/t", "dict B/t", "dict arrays", "get ns", "indexOf ns",
+                "arena B/n", "dict B/n");
+
+        for(final int size : sizes)
+        {
+            measure(size);
+        }
+    }
+
+    private static void measure(final int size)
+    {
+        final long baseline;
+        String[] titles;
+        TitleDictionary dictionary;
+
+        baseline = usedHeap();
+        titles = distinctTitles(size);
+
+        final int titleCount;
+        final long withStrings;
+
+        titleCount = titles.length;
+        withStrings = usedHeap();
+
+        dictionary = TitleDictionary.of(Arrays.asList(titles));
+        titles = null;
+
+        final long withDictionary;
+        withDictionary = usedHeap();
+
+        final Random random;
+        final int[] ids;
+        final String[] lookups;
+
+        random = new Random(SEED);
+        ids = new int[LOOKUPS];
+        lookups = new String[LOOKUPS];
+
+        for(int i = 0; i < LOOKUPS; i++)
+        {
+            ids[i] = random.nextInt(titleCount);
+            lookups[i] = dictionary.get(random.nextInt(titleCount));
+        }
+
+        final double getNanos;
+        final double indexOfNanos;
+        final long dictionaryBytes;
+        final double[] offHeapTitleBytes;
+
+        getNanos = timeGets(dictionary, ids);
+        indexOfNanos = timeLookups(dictionary, lookups);
+        dictionaryBytes = dictionary.sizeInBytes();
+        offHeapTitleBytes = offHeapTitleBytes(size);
+
+        System.out.printf("%-10d %-10d %14.1f %14.1f %14.1f %12.0f %12.0f %14.1f %14.1f%n",
+                size,
+                titleCount,
+                (double) (withStrings - baseline) / titleCount,
+                (double) (withDictionary - baseline) / titleCount,
+                (double) dictionaryBytes / titleCount,
+                getNanos,
+                indexOfNanos,
+                offHeapTitleBytes[0],
+                offHeapTitleBytes[1]);
+    }
+
+    /**
+     * Stores a catalog off the heap with its titles in the arena and with
+     * them in a dictionary, and returns the title bytes per novel of each.
+     */
+    private static double[] offHeapTitleBytes(final int size)
+    {
+        final List<Novel> novels;
+        final OffHeapNovelStorage inArena;
+        final OffHeapNovelStorage inDictionary;
+
+        novels = new NovelGenerator(SEED).generate(size);
+        inArena = new OffHeapNovelStorage(novels, false);
+        inDictionary = new OffHeapNovelStorage(novels, true);
+
+        // both arenas hold the same author bytes, so the difference is the titles
+        return new double[] {
+                (double) (inArena.arena().remaining() - inDictionary.arena().remaining()) / size,
+                (double) inDictionary.titleDictionary().sizeInBytes() / size
+        };
+    }
+
+    /**
+     * Generates a catalog and keeps only its distinct titles, so that the
+     * novels and author names can be collected.
+     */
+    private static String[] distinctTitles(final int size)
+    {
+        final Set<String> titles;
+        titles = new LinkedHashSet<>();
+
+        for(final Novel novel : new NovelGenerator(SEED).generate(size))
+        {
+            titles.add(novel.getTitle());
+        }
+        return titles.toArray(new String[0]);
+    }
+
+    private static double timeGets(final TitleDictionary dictionary, final int[] picks)
+    {
+        long best = Long.MAX_VALUE;
+
+        for(int round = 0; round < COLLECTIONS; round++)
+        {
+            final long started;
+            started = System.nanoTime();
+
+            for(final int id : picks)
+            {
+                sink = dictionary.get(id);
+            }
+            best = Math.min(best, System.nanoTime() - started);
+        }
+        return (double) best / picks.length;
+    }
+
+    private static double timeLookups(final TitleDictionary dictionary, final String[] titles)
+    {
+        long best = Long.MAX_VALUE;
+
+        for(int round = 0; round < COLLECTIONS; round++)
+        {
+            final long started;
+            int found = 0;
+
+            started = System.nanoTime();
+
+            for(final String title : titles)
+            {
+                if(dictionary.indexOf(title) >= 0)
+                {
+                    found++;
+                }
+            }
+            best = Math.min(best, System.nanoTime() - started);
+
+            if(found != titles.length)
+            {
+                throw new IllegalStateException("only " + found + " of " + titles.length + " titles found");
+            }
+        }
+        return (double) best / titles.length;
+    }
+
+    /**
+     * Returns the heap in use after full collections.
+     */
+    private static long usedHeap()
+    {
+        for(int i = 0; i < COLLECTIONS; i++)
+        {
+            System.gc();
+        }
+        return MEMORY.getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,150 @@
+package ca.bcit.bookstore2;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compares ways of scanning every title for a short substring, the case
+ * the trigram index cannot answer.
+ *
+ * Three scans count the same matches: lower-casing each novel's title per
+ * query, checking a list of titles folded in advance, and scanning the
+ * packed bytes of a TitleArena. Each is run a few times and the best time
+ * is reported with its speed-up over the first.
+ * <pre>
+ *   java -Xmx6g ca.bcit.bookstore2.TitleScanBenchmark [books] [query...]
+ * </pre>
+ *
+ * @author Alex Lee
+ * @author Evan Tang
+ *
+ * @version 1.0
+ */
+public final class TitleScanBenchmark
+{
+    private static final int DEFAULT_BOOKS = 10_000_000;
+    private static final String[] DEFAULT_QUERIES = {"a", "z", "?", "'s", ", "};
+    private static final long SEED = 2522L;
+    private static final int ROUNDS = 5;
+
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    private TitleScanBenchmark()
+    {
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args optional catalog size followed by queries
+     */
+    public static void main(final String[] args)
+    {
+        final int books;
+        final String[] queries;
+
+        books = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_BOOKS;
+        queries = args.length > 1 ? Arrays.copyOfRange(args, 1, args.length) : DEFAULT_QUERIES;
+
+        final List<Novel> novels;
+        final List<String> foldedTitles;
+        final TitleArena arena;
+
+        novels = new NovelGenerator(SEED).generate(books);
+        foldedTitles = new ArrayList<>(books);
+        arena = new TitleArena();
+
+        for(int slot = 0; slot < novels.size(); slot++)
+        {
+            final String folded;
+            folded = TitleIndex.fold(novels.get(slot).getTitle());
+
+            foldedTitles.add(folded);
+            arena.add(slot, folded);
+        }
+
+        System.out.printf("%-10s %-10s %14s %14s %14s %9s%n",
+                "query", "matches", "per novel ms", "folded ms", "arena ms", "speed-up");
+
+        for(final String query : queries)
+        {
+            final byte[] encoded;
+            final long[] perNovel = new long[2];
+            final long[] folded = new long[2];
+            final long[] packed = new long[2];
+
+            encoded = TitleArena.encode(query);
+
+            for(int round = 0; round < ROUNDS; round++)
+            {
+                time(perNovel, () -> {
+                    int count = 0;
+
+                    for(final Novel novel : novels)
+                    {
+                        if(novel.getTitle().toLowerCase().contains(query))
+                        {
+                            count++;
+                        }
+                    }
+                    return count;
+                });
+                time(folded, () -> {
+                    int count = 0;
+
+                    for(final String title : foldedTitles)
+                    {
+                        if(title.contains(query))
+                        {
+                            count++;
+                        }
+                    }
+                    return count;
+                });
+                time(packed, () -> arena.count(encoded, 0, arena.slotCount()));
+            }
+
+            if(perNovel[1] != folded[1] || perNovel[1] != packed[1])
+            {
+                throw new IllegalStateException(query + ": counts " + perNovel[1] + ", " + folded[1] +
+                        ", " + packed[1]);
+            }
+
+            System.out.printf("%-10s %-10d %14.1f %14.1f %14.1f %8.1fx%n",
+                    "\"" + query + "\"",
+                    packed[1],
+                    perNovel[0] / NANOS_PER_MILLI,
+                    folded[0] / NANOS_PER_MILLI,
+                    packed[0] / NANOS_PER_MILLI,
+                    (double) perNovel[0] / packed[0]);
+        }
+    }
+
+    /**
+     * Runs a scan, keeping its best time in the first element and its count
+     * in the second.
+     */
+    private static void time(final long[] best, final Scan scan)
+    {
+        final long started;
+        final int count;
+        final long elapsed;
+
+        started = System.nanoTime();
+        count = scan.run();
+        elapsed = System.nanoTime() - started;
+
+        best[0] = best[0] == 0 ? elapsed : Math.min(best[0], elapsed);
+        best[1] = count;
+    }
+
+    /**
+     * A scan that counts matching titles.
+     */
+    @FunctionalInterface
+    private interface Scan
+    {
+        int run();
+    }
+}
@@ -0,0 +1,295 @@
+package ca.bcit.bookstore2;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.function.IntConsumer;
+
+/**
+ * Catalog slots by author, over a dictionary of author names.
+ *
+ * Each distinct author name is stored once and given a small id, and each
+ * id keeps a sorted list of the slots of that author's books. Names are
+ * also kept sorted by their case-folded form, which answers lookups that
+ * ignore case and prefix lookups as a range of the sorted map. Ids are
+ * never reused, so an author whose books have all been removed keeps an
+ * id with no slots.
+ *
+ * @author Alex Lee
+ * @author Evan Tang
+ *
+ * @version 1.0
+ */
+final class AuthorIndex
+{
+    private static final int NO_AUTHOR = -1;
+
+    private final Map<String, Integer> idsByName;
+    private final List<String> names;
+    private final List<IntList> slotsByAuthor;
+    private final NavigableMap<String, IntList> idsByFoldedName;
+
+    /**
+     * Creates an empty index.
+     */
+    AuthorIndex()
+    {
+        idsByName = new HashMap<>();
+        names = new ArrayList<>();
+        slotsByAuthor = new ArrayList<>();
+        idsByFoldedName = new TreeMap<>();
+    }
+
+    /**
+     * Adds a book's author to the index. Slots must be added in increasing order.
+     *
+     * @param slot catalog slot of the novel
+     * @param name name of the author
+     */
+    void add(final int slot, final String name)
+    {
+        Integer id = idsByName.get(name);
+
+        if(id == null)
+        {
+            id = names.size();
+            idsByName.put(name, id);
+            names.add(name);
+            slotsByAuthor.add(new IntList());
+            idsByFoldedName.computeIfAbsent(fold(name), folded -> new IntList()).add(id);
+        }
+        slotsByAuthor.get(id).add(slot);
+    }
+
+    /**
+     * Removes a book's author from the index.
+     *
+     * @param slot catalog slot of the novel
+     * @param name name of the author
+     */
+    void remove(final int slot, final String name)
+    {
+        final int id;
+        id = idOf(name);
+
+        if(id != NO_AUTHOR)
+        {
+            slotsByAuthor.get(id).removeSorted(slot);
+        }
+    }
+
+    /**
+     * Counts the books by an author, matching the name exactly.
+     *
+     * @param name name of the author
+     *
+     * @return number of books
+     */
+    int count(final String name)
+    {
+        final int id;
+        id = idOf(name);
+
+        return id == NO_AUTHOR ? 0 : slotsByAuthor.get(id).size();
+    }
+
+    /**
+     * Visits the slots of the books by an author, matching the name exactly,
+     * in catalog order.
+     *
+     * @param name name of the author
+     * @param action called with each slot
+     */
+    void forEachBy(final String name, final IntConsumer action)
+    {
+        final int id;
+        id = idOf(name);
+
+        if(id != NO_AUTHOR)
+        {
+            forEachSlot(id, action);
+        }
+    }
+
+    /**
+     * Returns a cursor over the slots of the books by an author, matching
+     * the name exactly, in catalog order.
+     *
+     * @param name name of the author
+     *
+     * @return the cursor
+     */
+    SlotCursor slotsBy(final String name)
+    {
+        final int id;
+        id = idOf(name);
+
+        return id == NO_AUTHOR ? SlotCursor.EMPTY : slotsByAuthor.get(id).cursor();
+    }
+
+    /**
+     * Visits the slots of the books by every author whose name matches,
+     * ignoring case, grouped by the way the name is written.
+     *
+     * @param name name of the author
+     * @param action called with each slot
+     */
+    void forEachByIgnoreCase(final String name, final IntConsumer action)
+    {
+        final IntList ids;
+        ids = idsByFoldedName.get(fold(name));
+
+        if(ids != null)
+        {
+            for(int i = 0; i < ids.size(); i++)
+            {
+                forEachSlot(ids.get(i), action);
+            }
+        }
+    }
+
+    /**
+     * Returns the authors with books whose names start with a prefix,
+     * ignoring case, in case-insensitive alphabetical order.
+     *
+     * @param prefix start of the name
+     *
+     * @return the matching names
+     */
+    List<String> namesStartingWith(final String prefix)
+    {
+        final String folded;
+        final List<String> found;
+
+        folded = fold(prefix);
+        found = new ArrayList<>();
+
+        for(final Map.Entry<String, IntList> entry : idsByFoldedName.tailMap(folded, true).entrySet())
+        {
+            final IntList ids;
+
+            if(!entry.getKey().startsWith(folded))
+            {
+                break;
+            }
+
+            ids = entry.getValue();
+
+            for(int i = 0; i < ids.size(); i++)
+            {
+                if(!slotsByAuthor.get(ids.get(i)).isEmpty())
+                {
+                    found.add(names.get(ids.get(i)));
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Returns the number of books by each author with books, in
+     * case-insensitive alphabetical order of the names.
+     *
+     * @return counts by author name
+     */
+    Map<String, Integer> counts()
+    {
+        final Map<String, Integer> counts;
+        counts = new LinkedHashMap<>();
+
+        for(final IntList ids : idsByFoldedName.values())
+        {
+            for(int i = 0; i < ids.size(); i++)
+            {
+                final int size;
+                size = slotsByAuthor.get(ids.get(i)).size();
+
+                if(size > 0)
+                {
+                    counts.put(names.get(ids.get(i)), size);
+                }
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Returns the authors with the most books, most first. Authors with the
+     * same number of books are ordered by name.
+     *
+     * @param limit most authors to return
+     *
+     * @return the author names
+     */
+    List<String> mostProlific(final int limit)
+    {
+        final Comparator<Integer> byCount;
+        final Comparator<Integer> weakestFirst;
+        final PriorityQueue<Integer> best;
+        final List<String> ranked;
+
+        byCount = Comparator.comparingInt(id -> slotsByAuthor.get(id).size());
+        weakestFirst = byCount.thenComparing(id -> names.get(id), Comparator.reverseOrder());
+        best = new PriorityQueue<>(weakestFirst);
+
+        // keep only the strongest authors seen so far, so the heap never passes the limit
+        for(int id = 0; id < names.size() && limit > 0; id++)
+        {
+            if(slotsByAuthor.get(id).isEmpty())
+            {
+                continue;
+            }
+
+            if(best.size() < limit)
+            {
+                best.add(id);
+            }
+            else if(weakestFirst.compare(id, best.peek()) > 0)
+            {
+                best.poll();
+                best.add(id);
+            }
+        }
+
+        ranked = new ArrayList<>(best.size());
+
+        while(!best.isEmpty())
+        {
+            ranked.add(names.get(best.poll()));
+        }
+
+        Collections.reverse(ranked);
+        return ranked;
+    }
+
+    private int idOf(final String name)
+    {
+        final Integer id;
+        id = idsByName.get(name);
+
+        return id == null ? NO_AUTHOR : id;
+    }
+
+    private void forEachSlot(final int id, final IntConsumer action)
+    {
+        final IntList slots;
+        slots = slotsByAuthor.get(id);
+
+        for(int i = 0; i < slots.size(); i++)
+        {
+            action.accept(slots.get(i));
+        }
+    }
+
+    private static String fold(final String name)
+    {
+        return name.toLowerCase();
+    }
+}
@@ -0,0 +1,139 @@
+package ca.bcit.bookstore2;
+
+/**
+ * Fixed-size Bloom filter over long keys.
+ *
+ * A key that was added is always reported as possibly present; a key that
+ * was not is reported absent except for a small false-positive rate that
+ * grows as the filter fills. Keys cannot be removed.
+ *
+ * @author Alex Lee
+ * @author Evan Tang
+ *
+ * @version 1.0
+ */
+final class BloomFilter
+{
+    private static final int MIN_BITS = Long.SIZE;
+    private static final double LN2 = Math.log(2);
+
+    private final long[] words;
+    private final int bitMask;
+    private final int hashCount;
+    private final int capacity;
+    private int size;
+
+    /**
+     * Creates an empty filter.
+     *
+     * @param capacity number of keys it is sized for
+     * @param falsePositiveRate false-positive rate wanted at that many keys
+     */
+    BloomFilter(final int capacity, final double falsePositiveRate)
+    {
+        final double bitsPerKey;
+        final long bits;
+
+        bitsPerKey = -Math.log(falsePositiveRate) / (LN2 * LN2);
+        bits = Math.max(MIN_BITS, Long.highestOneBit((long) Math.ceil(capacity * bitsPerKey) - 1) << 1);
+
+        this.words = new long[(int) (bits / Long.SIZE)];
+        this.bitMask = (int) bits - 1;
+        this.hashCount = Math.max(1, (int) Math.round(bitsPerKey * LN2));
+        this.capacity = capacity;
+        this.size = 0;
+    }
+
+    /**
+     * Adds a key. Keys that were already present do not count towards the
+     * capacity.
+     *
+     * @param key the key
+     */
+    void add(final long key)
+    {
+        final long hash;
+        boolean changed = false;
+
+        hash = mix(key);
+
+        for(int i = 0; i < hashCount; i++)
+        {
+            final int bit = bit(hash, i);
+            final long mask = 1L << bit;
+
+            changed |= (words[bit >>> 6] & mask) == 0;
+            words[bit >>> 6] |= mask;
+        }
+
+        if(changed)
+        {
+            size++;
+        }
+    }
+
+    /**
+     * Tells whether a key may have been added.
+     *
+     * @param key the key
+     *
+     * @return false if the key was certainly never added
+     */
+    boolean mightContain(final long key)
+    {
+        final long hash;
+        hash = mix(key);
+
+        for(int i = 0; i < hashCount; i++)
+        {
+            final int bit = bit(hash, i);
+
+            if((words[bit >>> 6] & (1L << bit)) == 0)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tells whether more keys have been added than the filter was sized for.
+     *
+     * @return true once the filter is over capacity
+     */
+    boolean isFull()
+    {
+        return size > capacity;
+    }
+
+    /**
+     * Returns the number of keys the filter was sized for.
+     *
+     * @return the capacity
+     */
+    int capacity()
+    {
+        return capacity;
+    }
+
+    /**
+     * Derives the i-th bit from the two halves of the hash.
+     */
+    private int bit(final long hash, final int i)
+    {
+        return ((int) hash + i * (int) (hash >>> 32)) & bitMask;
+    }
+
+    /**
+     * Spreads the key bits over the whole hash.
+     */
+    private static long mix(final long key)
+    {
+        long hash = key * 0x9E3779B97F4A7C15L;
+
+        hash ^= hash >>> 32;
+        hash *= 0xD6E8FEB86659FD93L;
+        hash ^= hash >>> 32;
+        return hash;
+    }
+}
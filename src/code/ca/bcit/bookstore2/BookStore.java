@@ -1,11 +1,31 @@
 package ca.bcit.bookstore2;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+import java.util.function.ObjIntConsumer;
+import java.util.function.Supplier;
 
 /**
  * Represents the bookstore.
  *
+ * Queries may run from several threads at once, but changes to the
+ * catalog must not overlap with anything else. ConcurrentBookStore wraps
+ * two bookstores to allow changes while queries are running.
+ *
+ * Indexes are built when a query first needs them, or ahead of time on a
+ * background executor, during which queries scan the catalog instead.
+ *
  * @author Alex Lee
  * @author Evan Tang
  *
@@ -16,28 +36,79 @@ public class BookStore
     private static final int DECADE_OFFSET = 9;
 
     private static final String EMPTY_STRING = "";
-    private static final int INITIAL_COUNTER = 0;
-
-    private static final int INITIAL_YEAR = 1;
-    private static final int CURRENT_YEAR = 2026;
 
     private static final double PERCENTAGE =  100.0;
 
+    private static final int NO_SLOT = -1;
+
+    // removed slots are reclaimed once there are at least this many and at least as many as live ones
+    private static final int MIN_REMOVED_TO_COMPACT = 1024;
+
     private final String bookStoreName;
-    private final List<Novel> novels;
+    private NovelStorage novels;
+    private final LazyIndex<TitleIndex> titleIndex;
+    private final LazyIndex<YearIndex> yearIndex;
+    private final LazyIndex<SortedTitleIndex> sortedTitleIndex;
+    private final LazyIndex<LengthIndex> lengthIndex;
+    private final LazyIndex<AuthorIndex> authorIndex;
+    private final LazyIndex<FuzzyTitleIndex> fuzzyTitleIndex;
+    private volatile TitleDictionary titleDictionary;
+    private ParallelScanner parallelScanner;
+    private QueryCache queryCache;
+    private volatile QueryMetrics metrics;
+    private long catalogVersion;
 
     /**
-     * Creates the bookstore.
+     * Creates the bookstore, keeping the novels on the heap.
      *
      * @param bookStoreName name of the bookstore
      */
     public BookStore(final String bookStoreName, final List<Novel> novels)
+    {
+        this(bookStoreName, novels, StorageMode.HEAP);
+    }
+
+    /**
+     * Creates the bookstore with the chosen storage.
+     *
+     * @param bookStoreName name of the bookstore
+     * @param novels novels in the bookstore
+     * @param storageMode where to keep the novels
+     */
+    public BookStore(final String bookStoreName,
+                     final List<Novel> novels,
+                     final StorageMode storageMode)
+    {
+        this(bookStoreName, createStorage(novels, storageMode));
+    }
+
+    /**
+     * Creates the bookstore over storage that is already filled.
+     *
+     * @param bookStoreName name of the bookstore
+     * @param storage storage holding the novels
+     */
+    BookStore(final String bookStoreName, final NovelStorage storage)
     {
         validateBookStoreName(bookStoreName);
-        validateNovels(novels);
 
         this.bookStoreName = bookStoreName;
-        this.novels = new ArrayList<>(novels);
+        this.novels = storage;
+
+        // indexes are built on first use, so opening a large catalog does not read every record up front
+        this.titleIndex = new LazyIndex<>("title",
+                () -> fill(new TitleIndex(), (index, slot) -> index.add(slot, novels.getTitle(slot))));
+        this.yearIndex = new LazyIndex<>("year",
+                () -> fill(new YearIndex(novels::getTitle), (index, slot) -> index.add(slot, novels.getYearPublished(slot))));
+        this.sortedTitleIndex = new LazyIndex<>("sortedTitle",
+                () -> fill(new SortedTitleIndex(Locale.getDefault()),
+                        (index, slot) -> index.add(slot, novels.getTitle(slot))));
+        this.lengthIndex = new LazyIndex<>("length",
+                () -> fill(new LengthIndex(), (index, slot) -> index.add(slot, novels.getTitle(slot).length())));
+        this.authorIndex = new LazyIndex<>("author",
+                () -> fill(new AuthorIndex(), (index, slot) -> index.add(slot, novels.getAuthorName(slot))));
+        this.fuzzyTitleIndex = new LazyIndex<>("fuzzyTitle",
+                () -> fill(new FuzzyTitleIndex(), (index, slot) -> index.add(slot, novels.getTitle(slot))));
     }
 
     /**
@@ -53,12 +124,37 @@ public class BookStore
         }
     }
 
+    /**
+     * Validates the novels and copies them into the chosen storage.
+     *
+     * @param novels novels in the bookstore
+     * @param storageMode where to keep the novels
+     *
+     * @return the filled storage
+     */
+    private static NovelStorage createStorage(final List<Novel> novels,
+                                              final StorageMode storageMode)
+    {
+        validateNovels(novels);
+
+        if(storageMode == null)
+        {
+            throw new IllegalArgumentException("storage mode must be provided");
+        }
+
+        if(storageMode == StorageMode.OFF_HEAP)
+        {
+            return new OffHeapNovelStorage(novels);
+        }
+        return new HeapNovelStorage(novels);
+    }
+
     @Override
     public String toString()
     {
         return "BookStore{" +
                 "bookStoreName='" + bookStoreName + '\'' +
-                ", novels=" + novels +
+                ", novels=" + novels.asList() +
                 '}';
     }
 
@@ -67,9 +163,46 @@ public class BookStore
      */
     public void printAllTitles()
     {
-        for(final Novel novel : novels)
+        printToStandardOut(this::printAllTitles);
+    }
+
+    /**
+     * Writes all the titles of the novel in the bookstore in uppercase to a sink.
+     *
+     * @param sink where to write the titles
+     */
+    public void printAllTitles(final LineSink sink)
+    {
+        final long start = QueryMetrics.start(metrics);
+
+        forEachTitleInUppercase(sink::line);
+        QueryMetrics.stop(metrics, "printAllTitles", start);
+    }
+
+    /**
+     * Returns all the titles of the novel in the bookstore in uppercase.
+     *
+     * @return list of titles
+     */
+    public List<String> getAllTitlesInUppercase()
+    {
+        final long start = QueryMetrics.start(metrics);
+
+        final List<String> titles;
+        titles = new ArrayList<>(novels.liveCount());
+
+        forEachTitleInUppercase(titles::add);
+        return QueryMetrics.stop(metrics, "getAllTitlesInUppercase", start, titles);
+    }
+
+    private void forEachTitleInUppercase(final Consumer<String> action)
+    {
+        for(int slot = 0; slot < novels.slotCount(); slot++)
         {
-            System.out.println(novel.getTitle().toUpperCase());
+            if(novels.isLive(slot))
+            {
+                action.accept(novels.getTitle(slot).toUpperCase());
+            }
         }
     }
 
@@ -80,13 +213,41 @@ public class BookStore
      */
     public void printBookTitle(final String title)
     {
-        for(final Novel novel : novels)
-        {
-            if(novel.getTitle().toLowerCase().contains(title))
-            {
-                System.out.println(novel.getTitle());
-            }
-        }
+        printToStandardOut(sink -> printBookTitle(title, sink));
+    }
+
+    /**
+     * Writes all titles that contain the specified parameter to a sink.
+     *
+     * @param title a specific parameter to be found in title.
+     * @param sink where to write the titles
+     */
+    public void printBookTitle(final String title, final LineSink sink)
+    {
+        final long start = QueryMetrics.start(metrics);
+
+        forEachMatch(titleIndex, (index, each) -> index.forEachMatch(title, each),
+                slot -> titleContains(slot, title), slot -> sink.line(novels.getTitle(slot)));
+        QueryMetrics.stop(metrics, "printBookTitle", start);
+    }
+
+    /**
+     * Returns all titles that contain the specified parameter.
+     *
+     * @param title a specific parameter to be found in title.
+     *
+     * @return list of matching titles
+     */
+    public List<String> getBookTitles(final String title)
+    {
+        final long start = QueryMetrics.start(metrics);
+
+        final List<String> titles;
+        titles = new ArrayList<>();
+
+        forEachMatch(titleIndex, (index, each) -> index.forEachMatch(title, each),
+                slot -> titleContains(slot, title), slot -> titles.add(novels.getTitle(slot)));
+        return QueryMetrics.stop(metrics, "getBookTitles", start, titles);
     }
 
     /**
@@ -94,17 +255,88 @@ public class BookStore
      */
     public void printTitlesInAlphaOrder()
     {
-        List<String> titles = new ArrayList<>();
+        printToStandardOut(this::printTitlesInAlphaOrder);
+    }
+
+    /**
+     * Writes all titles in alphabetical order, A-Z, to a sink.
+     *
+     * @param sink where to write the titles
+     */
+    public void printTitlesInAlphaOrder(final LineSink sink)
+    {
+        final long start = QueryMetrics.start(metrics);
+
+        sortedTitleIndex.get().forEachInOrder(slot -> sink.line(novels.getTitle(slot)));
+        QueryMetrics.stop(metrics, "printTitlesInAlphaOrder", start);
+    }
+
+    /**
+     * Returns all titles in alphabetical order, A-Z, ignoring case.
+     *
+     * @return sorted list of titles
+     */
+    public List<String> getTitlesInAlphaOrder()
+    {
+        final long start = QueryMetrics.start(metrics);
+
+        final List<String> titles;
+        titles = new ArrayList<>(novels.liveCount());
+
+        sortedTitleIndex.get().forEachInOrder(slot -> titles.add(novels.getTitle(slot)));
+        return QueryMetrics.stop(metrics, "getTitlesInAlphaOrder", start, titles);
+    }
+
+    /**
+     * Returns the titles that sort at or after one title and before another,
+     * in alphabetical order. For example, "L" and "N" give every title
+     * starting with L or M.
+     *
+     * @param from lowest title to include
+     * @param to title to stop before
+     *
+     * @return sorted list of titles
+     */
+    public List<String> getTitlesBetween(final String from, final String to)
+    {
+        final long start = QueryMetrics.start(metrics);
 
-        for (final Novel novel : novels) {
-            titles.add(novel.getTitle());
+        if(from == null || to == null)
+        {
+            throw new IllegalArgumentException("range bounds must be provided");
         }
 
-        titles.sort(String.CASE_INSENSITIVE_ORDER);
+        final List<String> titles;
+        titles = new ArrayList<>();
+
+        sortedTitleIndex.get().forEachBetween(from, to, slot -> titles.add(novels.getTitle(slot)));
+        return QueryMetrics.stop(metrics, "getTitlesBetween", start, titles);
+    }
+
+    /**
+     * Returns one page of titles in alphabetical order. Pass the last title
+     * of a page to get the next one. Titles that sort the same are kept on
+     * one page, so a page may hold more than the page size.
+     *
+     * @param after title the page starts after, or null for the first page
+     * @param pageSize number of titles wanted
+     *
+     * @return sorted list of titles
+     */
+    public List<String> getTitlePage(final String after, final int pageSize)
+    {
+        final long start = QueryMetrics.start(metrics);
 
-        for (final String title : titles) {
-            System.out.println(title);
+        if(pageSize < 1)
+        {
+            throw new IllegalArgumentException("page size must be at least 1");
         }
+
+        final List<String> titles;
+        titles = new ArrayList<>(pageSize);
+
+        sortedTitleIndex.get().forEachAfter(after, pageSize, slot -> titles.add(novels.getTitle(slot)));
+        return QueryMetrics.stop(metrics, "getTitlePage", start, titles);
     }
 
     /**
@@ -112,37 +344,150 @@ public class BookStore
      */
     public void printGroupByDecade(final int decade)
     {
+        printToStandardOut(sink -> printGroupByDecade(decade, sink));
+    }
+
+    /**
+     * Writes all books for the inputted decade up to its upperbound to a sink.
+     *
+     * @param decade first year of the decade
+     * @param sink where to write the titles
+     */
+    public void printGroupByDecade(final int decade, final LineSink sink)
+    {
+        final long start = QueryMetrics.start(metrics);
+
+        final int decadeUpperbound = decade + DECADE_OFFSET;
+
+        forEachMatch(yearIndex, (index, each) -> index.forEachBetween(decade, decadeUpperbound, each),
+                slot -> publishedBetween(slot, decade, decadeUpperbound), slot -> sink.line(novels.getTitle(slot)));
+        QueryMetrics.stop(metrics, "printGroupByDecade", start);
+    }
+
+    /**
+     * Returns the titles of all books for the inputted decade up to its upperbound.
+     *
+     * @param decade first year of the decade
+     *
+     * @return list of titles in catalog order
+     */
+    public List<String> getTitlesByDecade(final int decade)
+    {
+        final long start = QueryMetrics.start(metrics);
+
         final int decadeUpperbound = decade + DECADE_OFFSET;
+        final List<String> titles;
+        titles = new ArrayList<>();
 
-        for(final Novel novel : novels)
+        forEachMatch(yearIndex, (index, each) -> index.forEachBetween(decade, decadeUpperbound, each),
+                slot -> publishedBetween(slot, decade, decadeUpperbound), slot -> titles.add(novels.getTitle(slot)));
+        return QueryMetrics.stop(metrics, "getTitlesByDecade", start, titles);
+    }
+
+    /**
+     * Finds the longest title in the bookstore.
+     */
+    public void getLongest()
+    {
+        printToStandardOut(this::getLongest);
+    }
+
+    /**
+     * Finds the longest title in the bookstore and writes it to a sink.
+     *
+     * @param sink where to write the title
+     */
+    public void getLongest(final LineSink sink)
+    {
+        final long start = QueryMetrics.start(metrics);
+
+        sink.line(longestTitle());
+        QueryMetrics.stop(metrics, "getLongest", start);
+    }
+
+    /**
+     * Returns the longest title in the bookstore. Ties go to the earlier book.
+     *
+     * @return the longest title, or an empty string if there are no books
+     */
+    public String getLongestTitle()
+    {
+        final long start = QueryMetrics.start(metrics);
+
+        return QueryMetrics.stop(metrics, "getLongestTitle", start, longestTitle());
+    }
+
+    private String longestTitle()
+    {
+        final LengthIndex index;
+        final int longest;
+
+        index = lengthIndex.ifReady();
+        longest = index == null ? scan(this::longestIn, this::longerOf) : index.first(index.longestLength());
+
+        return longest == NO_SLOT ? EMPTY_STRING : novels.getTitle(longest);
+    }
+
+    /**
+     * Finds the first slot with the longest title in a range.
+     *
+     * @return the slot, or NO_SLOT if the range is empty
+     */
+    private int longestIn(final int from, final int to)
+    {
+        int longest = NO_SLOT;
+
+        for(int slot = from; slot < to; slot++)
         {
-            int novelYear = novel.getYearPublished();
-            if(novelYear >= decade && novelYear <= decadeUpperbound)
+            if(novels.isLive(slot) && (longest == NO_SLOT ||
+                    novels.getTitle(slot).length() > novels.getTitle(longest).length()))
             {
-                System.out.println(novel.getTitle());
+                longest = slot;
             }
         }
+        return longest;
     }
 
     /**
-     * Finds the longest title in the bookstore.
+     * Picks the slot with the longer title, preferring the earlier slot on a tie.
      */
-    public void getLongest()
+    private int longerOf(final int earlier, final int later)
     {
-        String longestTitle = EMPTY_STRING;
+        if(later == NO_SLOT)
+        {
+            return earlier;
+        }
 
-        for(final Novel novel : novels)
+        if(earlier == NO_SLOT ||
+                novels.getTitle(later).length() > novels.getTitle(earlier).length())
         {
-            final String title;
+            return later;
+        }
+        return earlier;
+    }
+
+    /**
+     * Returns every title that shares the longest length, in catalog order.
+     *
+     * @return the longest titles, empty if there are no books
+     */
+    public List<String> getLongestTitles()
+    {
+        final long start = QueryMetrics.start(metrics);
 
-            title = novel.getTitle();
+        final String longest;
+        final List<String> titles;
 
-            if(title.length() > longestTitle.length())
-            {
-                longestTitle = title;
-            }
+        longest = longestTitle();
+        titles = new ArrayList<>();
+
+        if(!longest.isEmpty())
+        {
+            forEachMatch(lengthIndex, (index, each) -> index.forEach(longest.length(), each),
+                    slot -> novels.getTitle(slot).length() == longest.length(),
+                    slot -> titles.add(novels.getTitle(slot)));
         }
-        System.out.println(longestTitle);
+        return QueryMetrics.stop(metrics, "getLongestTitles", start, titles);
     }
 
     /**
@@ -154,20 +499,16 @@ public class BookStore
      */
     public boolean isThereABookWrittenBetween(final int year)
     {
-        if (year < INITIAL_YEAR || year > CURRENT_YEAR)
+        final long start = QueryMetrics.start(metrics);
+
+        if (year < Novel.INITIAL_YEAR || year > Novel.CURRENT_YEAR)
         {
             throw new IllegalArgumentException(
-                    "year must be between " + INITIAL_YEAR + " and " + CURRENT_YEAR);
+                    "year must be between " + Novel.INITIAL_YEAR + " and " + Novel.CURRENT_YEAR);
         }
 
-        for (final Novel novel : novels)
-        {
-            if (novel.getYearPublished() == year)
-            {
-                return true;
-            }
-        }
-        return false;
+        return QueryMetrics.stop(metrics, "isThereABookWrittenBetween", start,
+                countBetween(year, year) > 0);
     }
 
 
@@ -180,112 +521,1197 @@ public class BookStore
      */
     public int howManyBooksContain(final String word)
     {
-        int counter = 0;
+        final long start = QueryMetrics.start(metrics);
+
+        return QueryMetrics.stop(metrics, "howManyBooksContain", start,
+                cached(() -> countBooksContaining(word), "howManyBooksContain", word));
+    }
+
+    /**
+     * Counts the books whose title contains a word, ignoring case.
+     */
+    private int countBooksContaining(final String word)
+    {
+        final TitleIndex index;
+        final String folded;
+
+        index = titleIndex.ifReady();
+        folded = TitleIndex.fold(word);
 
-        for(final Novel novel : novels)
+        if(index == null)
         {
-            if(novel.getTitle().toLowerCase().contains(word.toLowerCase()))
-            {
-                counter++;
-            }
+            return countMatching(slot -> titleContains(slot, folded));
+        }
+
+        if(index.usesScan(folded))
+        {
+            return scan((from, to) -> index.countScan(folded, from, to), Integer::sum);
         }
-        return counter;
+        return index.count(folded);
     }
 
     /**
-     * Calculate the percentage of the book were written between these two years.
+     * Finds the titles that best match a query, tolerating typing mistakes.
+     * Each word of the query matches title words within one edit if it has
+     * three to five characters and within two if it is longer; shorter
+     * words must match exactly. Titles matching more words, and with fewer
+     * edits, rank first.
      *
-     * @param first left bound of the year
-     * @param last right bound of the year
+     * @param query words to look for, such as "gatsbi" or "catch 22"
+     * @param limit most titles to return
      *
-     * @return percentage of the book
+     * @return the matching titles, best first
      */
-    public double whichPercentWrittenBetween(final int first, final int last)
+    public List<String> searchTitles(final String query, final int limit)
     {
-        double percentage;
+        final long start = QueryMetrics.start(metrics);
 
-        if (first > last)
+        if(query == null)
         {
-            throw new IllegalArgumentException(
-                    "first year must be less than or equal to last year");
+            throw new IllegalArgumentException("query must be provided");
         }
 
-        if (first < INITIAL_YEAR || last > CURRENT_YEAR)
+        if(limit < 0)
         {
-            throw new IllegalArgumentException(
-                    "Year must be between " + INITIAL_YEAR + " and " + CURRENT_YEAR);
+            throw new IllegalArgumentException("limit cannot be negative");
         }
 
-        int numberCounter = INITIAL_COUNTER;
+        final List<String> titles;
+        titles = new ArrayList<>();
 
-        for (final Novel novel : novels)
+        for(final int slot : fuzzyTitleIndex.get().search(query, limit, novels.slotCount()))
         {
-            int year = novel.getYearPublished();
-            if (year >= first && year <= last)
-            {
-                numberCounter++;
-            }
+            titles.add(novels.getTitle(slot));
         }
+        return QueryMetrics.stop(metrics, "searchTitles", start, titles);
+    }
+
+    /**
+     * Calculate the percentage of the book were written between these two years.
+     *
+     * @param first left bound of the year
+     * @param last right bound of the year
+     *
+     * @return percentage of the book
+     */
+    public double whichPercentWrittenBetween(final int first, final int last)
+    {
+        final long start = QueryMetrics.start(metrics);
+
+        double percentage;
+
+        validateYearRange(first, last);
 
-        percentage = numberCounter * PERCENTAGE / novels.size();
+        percentage = cached(() -> countBetween(first, last) * PERCENTAGE / novels.liveCount(),
+                "whichPercentWrittenBetween", first, last);
 
-        return percentage;
+        return QueryMetrics.stop(metrics, "whichPercentWrittenBetween", start, percentage);
     }
 
+    /**
+     * Counts the books written between two years, inclusive. Unlike the
+     * percentage, counts from several bookstores can be added together.
+     *
+     * @param first left bound of the year
+     * @param last right bound of the year
+     *
+     * @return number of books
+     */
+    public int countBooksWrittenBetween(final int first, final int last)
+    {
+        final long start = QueryMetrics.start(metrics);
+
+        validateYearRange(first, last);
+
+        return QueryMetrics.stop(metrics, "countBooksWrittenBetween", start, countBetween(first, last));
+    }
 
     /**
-     * Returns the oldest book in the bookstore.
+     * Counts the books published in an inclusive range of years.
      */
-    public Novel getOldestBook()
+    private int countBetween(final int first, final int last)
     {
-        if (novels.isEmpty())
+        final YearIndex index;
+        index = yearIndex.ifReady();
+
+        if(index == null)
         {
-            return null;
+            return countMatching(slot -> publishedBetween(slot, first, last));
         }
+        return index.countBetween(first, last);
+    }
 
-        Novel oldest = null;
-
-        for (Novel novel : novels)
+    private static void validateYearRange(final int first, final int last)
+    {
+        if (first > last)
         {
-            if (oldest == null ||
-                    novel.getYearPublished() < oldest.getYearPublished()) {
-                oldest = novel;
-            }
+            throw new IllegalArgumentException(
+                    "first year must be less than or equal to last year");
         }
 
-        return oldest;
+        if (first < Novel.INITIAL_YEAR || last > Novel.CURRENT_YEAR)
+        {
+            throw new IllegalArgumentException(
+                    "Year must be between " + Novel.INITIAL_YEAR + " and " + Novel.CURRENT_YEAR);
+        }
     }
 
 
     /**
-     * Returns a List of all books whose title is this length
-     *
-     * @param titleLength desired length of the title
-     *
-     * @return desired list of novel
+     * Returns the oldest book in the bookstore. Ties go to the earlier book.
+     * The year index answers this when it is ready; otherwise the catalog is
+     * scanned rather than building the index for one query.
      */
-    public List<Novel> getBooksThisLength(final int titleLength )
+    public Novel getOldestBook()
     {
-        List<Novel> desiredBook;
-        desiredBook = new ArrayList<>();
+        final long start = QueryMetrics.start(metrics);
 
-        for(final Novel novel : novels)
+        if (novels.liveCount() == 0)
         {
-            String title = novel.getTitle();
-            if(title.length() == titleLength)
-                desiredBook.add(novel);
+            return QueryMetrics.stop(metrics, "getOldestBook", start, null);
         }
-        return desiredBook;
+
+        return QueryMetrics.stop(metrics, "getOldestBook", start,
+                cached(() -> novels.get(oldestSlot()), "getOldestBook"));
     }
 
     /**
-     * Returns all novel present.
-     *
-     * @return list of novels
+     * Finds the first slot with the earliest year.
      */
-    public List<Novel> getAllNovels()
+    private int oldestSlot()
     {
-        return novels;
+        final YearIndex index;
+        index = yearIndex.ifBuilt();
+
+        if(index == null)
+        {
+            return scan(this::oldestIn, this::olderOf);
+        }
+        return index.first(index.yearAtRank(0));
+    }
+
+    /**
+     * Finds the first slot with the earliest year in a range.
+     *
+     * @return the slot, or NO_SLOT if the range is empty
+     */
+    private int oldestIn(final int from, final int to)
+    {
+        int oldest = NO_SLOT;
+
+        for (int slot = from; slot < to; slot++)
+        {
+            if (novels.isLive(slot) && (oldest == NO_SLOT ||
+                    novels.getYearPublished(slot) < novels.getYearPublished(oldest))) {
+                oldest = slot;
+            }
+        }
+        return oldest;
+    }
+
+    /**
+     * Picks the slot with the earlier year, preferring the earlier slot on a tie.
+     */
+    private int olderOf(final int earlier, final int later)
+    {
+        if (later == NO_SLOT)
+        {
+            return earlier;
+        }
+
+        if (earlier == NO_SLOT ||
+                novels.getYearPublished(later) < novels.getYearPublished(earlier))
+        {
+            return later;
+        }
+        return earlier;
+    }
+
+    /**
+     * Returns the oldest books, oldest first. Books from the same year are
+     * ordered by title.
+     *
+     * @param count most books to return
+     *
+     * @return the oldest books
+     */
+    public List<Novel> getOldestBooks(final int count)
+    {
+        final long start = QueryMetrics.start(metrics);
+
+        return QueryMetrics.stop(metrics, "getOldestBooks", start, booksByYear(count, false));
+    }
+
+    /**
+     * Returns the newest books, newest first. Books from the same year are
+     * ordered by title.
+     *
+     * @param count most books to return
+     *
+     * @return the newest books
+     */
+    public List<Novel> getNewestBooks(final int count)
+    {
+        final long start = QueryMetrics.start(metrics);
+
+        return QueryMetrics.stop(metrics, "getNewestBooks", start, booksByYear(count, true));
+    }
+
+    /**
+     * Returns the median publication year. With an even number of books it
+     * is halfway between the two middle years.
+     *
+     * @return the median year
+     *
+     * @throws IllegalStateException if there are no books
+     */
+    public double getMedianYear()
+    {
+        final long start = QueryMetrics.start(metrics);
+
+        final YearIndex index;
+        final int total;
+
+        index = yearIndex.get();
+        total = requireBooks(index);
+
+        return QueryMetrics.stop(metrics, "getMedianYear", start,
+                (index.yearAtRank((total - 1) / 2) + index.yearAtRank(total / 2)) / 2.0);
+    }
+
+    /**
+     * Returns the year by which a percentage of the books had been published,
+     * using the nearest-rank method.
+     *
+     * @param percentile percentage of the books, from 0 to 100
+     *
+     * @return the year of the book at that percentile
+     *
+     * @throws IllegalStateException if there are no books
+     */
+    public int getPercentileYear(final double percentile)
+    {
+        final long start = QueryMetrics.start(metrics);
+
+        if(!(percentile >= 0 && percentile <= PERCENTAGE))
+        {
+            throw new IllegalArgumentException("percentile must be between 0 and " + PERCENTAGE);
+        }
+
+        final YearIndex index;
+        final int total;
+        final int rank;
+
+        index = yearIndex.get();
+        total = requireBooks(index);
+        rank = Math.max(0, (int) Math.ceil(percentile / PERCENTAGE * total) - 1);
+
+        return QueryMetrics.stop(metrics, "getPercentileYear", start, index.yearAtRank(rank));
+    }
+
+    /**
+     * Returns the rank of a year: the number of books published before it,
+     * which is where its first book falls when the books are listed oldest
+     * first.
+     *
+     * @param year the year
+     *
+     * @return number of books published before the year
+     */
+    public int getYearRank(final int year)
+    {
+        final long start = QueryMetrics.start(metrics);
+
+        if (year < Novel.INITIAL_YEAR || year > Novel.CURRENT_YEAR)
+        {
+            throw new IllegalArgumentException(
+                    "Year must be between " + Novel.INITIAL_YEAR + " and " + Novel.CURRENT_YEAR);
+        }
+        return QueryMetrics.stop(metrics, "getYearRank", start, yearIndex.get().countBefore(year));
+    }
+
+    /**
+     * Finds the oldest or newest books. The year index is used when it has
+     * been built; otherwise the catalog is scanned once, keeping only the
+     * best books seen so far, rather than building the index for one query.
+     */
+    private List<Novel> booksByYear(final int count, final boolean newestFirst)
+    {
+        if(count < 0)
+        {
+            throw new IllegalArgumentException("count cannot be negative");
+        }
+
+        final Comparator<Integer> order;
+        final YearIndex index;
+        final List<Integer> slots;
+        final List<Novel> books;
+
+        order = byYearThenTitle(newestFirst);
+        index = yearIndex.ifBuilt();
+
+        if(index == null)
+        {
+            slots = scan((from, to) -> {
+                final TopK best;
+                best = new TopK(count, order);
+
+                for(int slot = from; slot < to; slot++)
+                {
+                    if(novels.isLive(slot))
+                    {
+                        best.offer(slot);
+                    }
+                }
+                return best;
+            }, TopK::merge).slots();
+        }
+        else
+        {
+            slots = slotsByYear(index, count, newestFirst);
+        }
+
+        books = new ArrayList<>(slots.size());
+
+        for(final int slot : slots)
+        {
+            books.add(novels.get(slot));
+        }
+        return books;
+    }
+
+    /**
+     * Walks the year index from the oldest or newest year, taking each
+     * year's books in title order, until enough books have been taken.
+     */
+    private static List<Integer> slotsByYear(final YearIndex index,
+                                             final int count,
+                                             final boolean newestFirst)
+    {
+        final int total;
+        final int wanted;
+        final int step;
+        final List<Integer> slots;
+
+        total = index.total();
+        wanted = Math.min(count, total);
+        step = newestFirst ? -1 : 1;
+        slots = new ArrayList<>(wanted);
+
+        if(wanted == 0)
+        {
+            return slots;
+        }
+
+        for(int year = index.yearAtRank(newestFirst ? total - 1 : 0); slots.size() < wanted; year += step)
+        {
+            index.forEachInTitleOrder(year, wanted - slots.size(), slots::add);
+        }
+        return slots;
+    }
+
+    /**
+     * Orders slots by year, then by title, then by catalog order.
+     */
+    private Comparator<Integer> byYearThenTitle(final boolean newestFirst)
+    {
+        final Comparator<Integer> byYear;
+        byYear = Comparator.comparingInt(novels::getYearPublished);
+
+        return (newestFirst ? byYear.reversed() : byYear)
+                .thenComparing(novels::getTitle)
+                .thenComparingInt(slot -> slot);
+    }
+
+    /**
+     * Returns the number of books, refusing an empty bookstore.
+     */
+    private static int requireBooks(final YearIndex index)
+    {
+        final int total;
+        total = index.total();
+
+        if(total == 0)
+        {
+            throw new IllegalStateException("the bookstore has no books");
+        }
+        return total;
+    }
+
+
+    /**
+     * Returns a List of all books whose title is this length
+     *
+     * @param titleLength desired length of the title
+     *
+     * @return desired list of novel
+     */
+    public List<Novel> getBooksThisLength(final int titleLength )
+    {
+        final long start = QueryMetrics.start(metrics);
+
+        final List<Novel> desiredBook;
+        desiredBook = new ArrayList<>();
+
+        forEachMatch(lengthIndex, (index, each) -> index.forEach(titleLength, each),
+                slot -> novels.getTitle(slot).length() == titleLength, slot -> desiredBook.add(novels.get(slot)));
+        return QueryMetrics.stop(metrics, "getBooksThisLength", start, desiredBook);
+    }
+
+    /**
+     * Returns the books by an author, matching the name exactly.
+     *
+     * @param authorName name of the author
+     *
+     * @return the books in catalog order
+     */
+    public List<Novel> getBooksBy(final String authorName)
+    {
+        final long start = QueryMetrics.start(metrics);
+
+        if(authorName == null)
+        {
+            throw new IllegalArgumentException("authorName must be provided");
+        }
+
+        final List<Novel> books;
+        books = new ArrayList<>();
+
+        forEachMatch(authorIndex, (index, each) -> index.forEachBy(authorName, each),
+                slot -> novels.getAuthorName(slot).equals(authorName), slot -> books.add(novels.get(slot)));
+        return QueryMetrics.stop(metrics, "getBooksBy", start, books);
+    }
+
+    /**
+     * Returns the books by an author, ignoring case in the name.
+     *
+     * @param authorName name of the author
+     *
+     * @return the books, grouped by the way the name is written
+     */
+    public List<Novel> getBooksByIgnoreCase(final String authorName)
+    {
+        final long start = QueryMetrics.start(metrics);
+
+        if(authorName == null)
+        {
+            throw new IllegalArgumentException("authorName must be provided");
+        }
+
+        final List<Novel> books;
+        books = new ArrayList<>();
+
+        authorIndex.get().forEachByIgnoreCase(authorName, slot -> books.add(novels.get(slot)));
+        return QueryMetrics.stop(metrics, "getBooksByIgnoreCase", start, books);
+    }
+
+    /**
+     * Returns the authors whose names start with a prefix, ignoring case.
+     *
+     * @param prefix start of the name
+     *
+     * @return the author names in alphabetical order
+     */
+    public List<String> getAuthorsStartingWith(final String prefix)
+    {
+        final long start = QueryMetrics.start(metrics);
+
+        if(prefix == null)
+        {
+            throw new IllegalArgumentException("prefix must be provided");
+        }
+        return QueryMetrics.stop(metrics, "getAuthorsStartingWith", start,
+                authorIndex.get().namesStartingWith(prefix));
+    }
+
+    /**
+     * Counts the books by an author, matching the name exactly.
+     *
+     * @param authorName name of the author
+     *
+     * @return number of books
+     */
+    public int countBooksBy(final String authorName)
+    {
+        final long start = QueryMetrics.start(metrics);
+
+        if(authorName == null)
+        {
+            throw new IllegalArgumentException("authorName must be provided");
+        }
+        final AuthorIndex index;
+        index = authorIndex.ifReady();
+
+        return QueryMetrics.stop(metrics, "countBooksBy", start, index == null ?
+                countMatching(slot -> novels.getAuthorName(slot).equals(authorName)) : index.count(authorName));
+    }
+
+    /**
+     * Returns how many books each author has.
+     *
+     * @return number of books by author name, in alphabetical order of the names
+     */
+    public Map<String, Integer> getBooksPerAuthor()
+    {
+        final long start = QueryMetrics.start(metrics);
+
+        return QueryMetrics.stop(metrics, "getBooksPerAuthor", start, authorIndex.get().counts());
+    }
+
+    /**
+     * Returns the authors with the most books, most first. Authors with the
+     * same number of books are ordered by name.
+     *
+     * @param limit most authors to return
+     *
+     * @return the author names
+     */
+    public List<String> getMostProlificAuthors(final int limit)
+    {
+        final long start = QueryMetrics.start(metrics);
+
+        if(limit < 0)
+        {
+            throw new IllegalArgumentException("limit cannot be negative");
+        }
+        return QueryMetrics.stop(metrics, "getMostProlificAuthors", start,
+                authorIndex.get().mostProlific(limit));
+    }
+
+    /**
+     * Answers every query in a batch with one pass over the catalog. Each
+     * book is read once and offered to all the queries, so the cost grows
+     * with the catalog rather than with catalog times batch size. The pass
+     * runs in parallel when that has been enabled.
+     *
+     * @param batch the queries to answer
+     *
+     * @return the answers, looked up by the handles the batch returned
+     */
+    public QueryBatch.Results runBatch(final QueryBatch batch)
+    {
+        final long start = QueryMetrics.start(metrics);
+
+        if(batch == null)
+        {
+            throw new IllegalArgumentException("batch must be provided");
+        }
+
+        final QueryBatch.Pass pass;
+        pass = scan((from, to) -> batch.sweep(novels, from, to), QueryBatch.Pass::merge);
+
+        return QueryMetrics.stop(metrics, "runBatch", start, pass.results(novels));
+    }
+
+    /**
+     * Starts a query that combines conditions on the books, such as a word
+     * in the title and a range of years. The query is planned over the
+     * indexes when its result is asked for.
+     *
+     * @return a query matching every book until conditions are added
+     */
+    public NovelQuery query()
+    {
+        return new NovelQuery(this);
+    }
+
+    /**
+     * Runs the full-scan queries on a fork-join pool once the catalog holds
+     * at least a threshold number of books. Smaller catalogs stay sequential.
+     *
+     * @param pool pool to run the scans on
+     * @param threshold smallest catalog size to scan in parallel
+     */
+    public void enableParallelQueries(final ForkJoinPool pool, final int threshold)
+    {
+        if(pool == null)
+        {
+            throw new IllegalArgumentException("pool must be provided");
+        }
+
+        if(threshold < 1)
+        {
+            throw new IllegalArgumentException("threshold must be at least 1");
+        }
+
+        parallelScanner = new ParallelScanner(pool, threshold);
+    }
+
+    /**
+     * Returns the full-scan queries to a single thread.
+     */
+    public void disableParallelQueries()
+    {
+        parallelScanner = null;
+    }
+
+    /**
+     * Starts building every index on an executor and returns at once.
+     * Until an index is ready, the queries it would answer scan the
+     * catalog instead: word, decade, year-range, title length, longest
+     * title and exact-author queries, and the conditions of a NovelQuery.
+     * The alphabetical, order-statistic, case-insensitive author and
+     * typo-tolerant queries wait for their index. Each query switches to its
+     * index as soon as the index is published.
+     *
+     * @param executor executor to build the indexes on
+     */
+    public void buildIndexesInBackground(final Executor executor)
+    {
+        if(executor == null)
+        {
+            throw new IllegalArgumentException("executor must be provided");
+        }
+
+        // cheapest first, so the common queries reach full speed soonest
+        yearIndex.buildIn(executor);
+        lengthIndex.buildIn(executor);
+        authorIndex.buildIn(executor);
+        titleIndex.buildIn(executor);
+        sortedTitleIndex.buildIn(executor);
+        fuzzyTitleIndex.buildIn(executor);
+    }
+
+    /**
+     * Waits for the indexes being built in the background.
+     */
+    public void awaitIndexes()
+    {
+        yearIndex.await();
+        lengthIndex.await();
+        authorIndex.await();
+        titleIndex.await();
+        sortedTitleIndex.await();
+        fuzzyTitleIndex.await();
+    }
+
+    /**
+     * Reports which indexes are ready and how long each took to build.
+     *
+     * @return the status of every index
+     */
+    public List<IndexStatus> getIndexStatus()
+    {
+        return List.of(yearIndex.status(),
+                       lengthIndex.status(),
+                       authorIndex.status(),
+                       titleIndex.status(),
+                       sortedTitleIndex.status(),
+                       fuzzyTitleIndex.status());
+    }
+
+    /**
+     * Tells whether every index is ready, so that no query scans the catalog
+     * or waits for a build.
+     *
+     * @return true if every index is ready
+     */
+    public boolean isFullyIndexed()
+    {
+        for(final IndexStatus status : getIndexStatus())
+        {
+            if(!status.isReady())
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Caches the results of the returning queries, keeping at most a number
+     * of results and evicting the least recently used. Any change to the
+     * catalog invalidates every cached result.
+     *
+     * @param maxEntries most results to keep
+     */
+    public void enableQueryCache(final int maxEntries)
+    {
+        if(maxEntries < 1)
+        {
+            throw new IllegalArgumentException("cache must hold at least one entry");
+        }
+
+        queryCache = new QueryCache(maxEntries);
+    }
+
+    /**
+     * Stops caching query results and drops the cache.
+     */
+    public void disableQueryCache()
+    {
+        queryCache = null;
+    }
+
+    /**
+     * Returns the hit and miss counts of the query cache.
+     *
+     * @return cache statistics, or null if the cache is not enabled
+     */
+    public QueryCacheStats getQueryCacheStats()
+    {
+        final QueryCache cache;
+        cache = queryCache;
+
+        return cache == null ? null : cache.stats();
+    }
+
+    /**
+     * Starts recording call counts, latencies and result sizes for every
+     * query and change. Recording again after it was stopped starts afresh.
+     *
+     * @return the metrics being recorded
+     */
+    public QueryMetrics enableMetrics()
+    {
+        final QueryMetrics enabled;
+        enabled = new QueryMetrics(this::getNovelCount);
+
+        metrics = enabled;
+        return enabled;
+    }
+
+    /**
+     * Stops recording metrics.
+     */
+    public void disableMetrics()
+    {
+        metrics = null;
+    }
+
+    /**
+     * Returns the metrics being recorded.
+     *
+     * @return the metrics, or null if they are not enabled
+     */
+    public QueryMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+    /**
+     * Getter for the bookstore name.
+     *
+     * @return bookstore name
+     */
+    public String getBookStoreName()
+    {
+        return bookStoreName;
+    }
+
+    /**
+     * Returns the novels in columnar form with every title in the arena, as
+     * a catalog file lays them out, copying them if they are kept on the
+     * heap or their titles are in a dictionary.
+     *
+     * @return columnar storage of the novels
+     */
+    OffHeapNovelStorage columnarStorage()
+    {
+        // a fresh copy also drops the slots of removed novels
+        if(novels instanceof OffHeapNovelStorage &&
+           novels.liveCount() == novels.slotCount() &&
+           ((OffHeapNovelStorage) novels).titlesInArena())
+        {
+            return (OffHeapNovelStorage) novels;
+        }
+        return new OffHeapNovelStorage(novels.asList(), false);
+    }
+
+    /**
+     * Copies novels still mapped from a catalog file into memory, so that
+     * the file can be deleted.
+     */
+    void detachStorage()
+    {
+        awaitIndexes();
+
+        if(novels instanceof OffHeapNovelStorage)
+        {
+            ((OffHeapNovelStorage) novels).detach();
+        }
+    }
+
+    /**
+     * Returns the titles as a compressed, sorted dictionary, which a
+     * Bookshop over the same novels can share. Off-heap storage keeps its
+     * titles in such a dictionary, which is returned as long as it holds
+     * every title; it may also hold titles of removed novels. Otherwise the
+     * dictionary is built on first use and built again after the catalog
+     * changes, and is held in addition to the novels' own titles.
+     *
+     * @return the title dictionary
+     */
+    public TitleDictionary getTitleDictionary()
+    {
+        TitleDictionary dictionary = titleDictionary;
+
+        if(dictionary == null)
+        {
+            synchronized(this)
+            {
+                dictionary = titleDictionary;
+
+                if(dictionary == null && novels instanceof OffHeapNovelStorage)
+                {
+                    dictionary = ((OffHeapNovelStorage) novels).titleDictionary();
+                    titleDictionary = dictionary;
+                }
+
+                if(dictionary == null)
+                {
+                    final List<String> titles;
+                    titles = new ArrayList<>(novels.liveCount());
+
+                    for(int slot = 0; slot < novels.slotCount(); slot++)
+                    {
+                        if(novels.isLive(slot))
+                        {
+                            titles.add(novels.getTitle(slot));
+                        }
+                    }
+                    dictionary = TitleDictionary.of(titles);
+                    titleDictionary = dictionary;
+                }
+            }
+        }
+        return dictionary;
+    }
+
+    /**
+     * Returns the number of novels in the bookstore.
+     *
+     * @return number of novels
+     */
+    public int getNovelCount()
+    {
+        return novels.liveCount();
+    }
+
+    /**
+     * Returns all novel present.
+     *
+     * @return unmodifiable snapshot of the novels, unaffected by later changes
+     */
+    public List<Novel> getAllNovels()
+    {
+        final long start = QueryMetrics.start(metrics);
+
+        return QueryMetrics.stop(metrics, "getAllNovels", start,
+                Collections.unmodifiableList(novels.asList()));
+    }
+
+    /**
+     * Adds a novel to the bookstore. A BookStore is not safe for concurrent
+     * changes; use ConcurrentBookStore to change a catalog under load.
+     * Indexes still being built in the background are waited for first.
+     *
+     * @param novel the novel to add
+     */
+    public void addNovel(final Novel novel)
+    {
+        final long start = QueryMetrics.start(metrics);
+
+        if(novel == null)
+        {
+            throw new IllegalArgumentException("novel must be provided");
+        }
+
+        awaitIndexes();
+
+        final int slot;
+        slot = novels.add(novel);
+
+        titleIndex.update(index -> index.add(slot, novel.getTitle()));
+        yearIndex.update(index -> index.add(slot, novel.getYearPublished()));
+        sortedTitleIndex.update(index -> index.add(slot, novel.getTitle()));
+        lengthIndex.update(index -> index.add(slot, novel.getTitle().length()));
+        authorIndex.update(index -> index.add(slot, novel.getAuthorName()));
+        fuzzyTitleIndex.update(index -> index.add(slot, novel.getTitle()));
+        titleDictionary = null;
+        catalogVersion++;
+        QueryMetrics.stop(metrics, "addNovel", start);
+    }
+
+    /**
+     * Removes one copy of a novel from the bookstore. Indexes still being
+     * built in the background are waited for first.
+     *
+     * @param novel the novel to remove
+     *
+     * @return true if a copy was removed, false if the bookstore did not have it
+     */
+    public boolean removeNovel(final Novel novel)
+    {
+        final long start = QueryMetrics.start(metrics);
+
+        if(novel == null)
+        {
+            throw new IllegalArgumentException("novel must be provided");
+        }
+
+        awaitIndexes();
+
+        final int[] found = {NO_SLOT};
+
+        titleIndex.get().forEachMatch(TitleIndex.fold(novel.getTitle()), slot -> {
+            if(found[0] == NO_SLOT && novel.equals(novels.get(slot)))
+            {
+                found[0] = slot;
+            }
+        });
+
+        final int slot;
+        slot = found[0];
+
+        if(slot == NO_SLOT)
+        {
+            return QueryMetrics.stop(metrics, "removeNovel", start, false);
+        }
+
+        titleIndex.get().remove(slot);
+
+        yearIndex.update(index -> index.remove(slot, novel.getYearPublished()));
+        sortedTitleIndex.update(index -> index.remove(slot, novel.getTitle()));
+        lengthIndex.update(index -> index.remove(slot, novel.getTitle().length()));
+        authorIndex.update(index -> index.remove(slot, novel.getAuthorName()));
+        fuzzyTitleIndex.update(index -> index.remove(slot, novel.getTitle()));
+
+        novels.remove(slot);
+        titleDictionary = null;
+        catalogVersion++;
+
+        if(shouldCompact())
+        {
+            compact();
+        }
+        return QueryMetrics.stop(metrics, "removeNovel", start, true);
+    }
+
+    /**
+     * Reclaims the slots of removed novels by copying the live ones into
+     * fresh storage of the same kind, then rebuilding the indexes that had
+     * been built. Removing novels does this on its own once removed slots
+     * outnumber live ones, so a long-running catalog does not grow with
+     * every removal. Like any change, it must not overlap with queries, and
+     * indexes still being built in the background are waited for first.
+     */
+    public void compact()
+    {
+        final long start = QueryMetrics.start(metrics);
+
+        awaitIndexes();
+
+        if(novels.liveCount() == novels.slotCount())
+        {
+            QueryMetrics.stop(metrics, "compact", start);
+            return;
+        }
+
+        novels = novels instanceof OffHeapNovelStorage ?
+                new OffHeapNovelStorage(novels.asList()) : new HeapNovelStorage(novels.asList());
+
+        titleIndex.rebuild();
+        yearIndex.rebuild();
+        sortedTitleIndex.rebuild();
+        lengthIndex.rebuild();
+        authorIndex.rebuild();
+        fuzzyTitleIndex.rebuild();
+        titleDictionary = null;
+        catalogVersion++;
+        QueryMetrics.stop(metrics, "compact", start);
+    }
+
+    /**
+     * Checks whether enough slots have been removed to be worth reclaiming.
+     */
+    private boolean shouldCompact()
+    {
+        final int removed;
+        removed = novels.slotCount() - novels.liveCount();
+
+        return removed >= MIN_REMOVED_TO_COMPACT && removed >= novels.liveCount();
+    }
+
+    /**
+     * Runs a printer against a sink over standard output, then flushes it.
+     *
+     * @param printer writes its lines to the sink
+     */
+    private static void printToStandardOut(final Consumer<LineSink> printer)
+    {
+        final LineSink sink;
+        sink = LineSink.of(System.out);
+
+        printer.accept(sink);
+        sink.flush();
+    }
+
+    /**
+     * Plans a query over this bookstore's indexes.
+     *
+     * @param conditions conditions that must all hold
+     *
+     * @return the plan
+     */
+    QueryPlanner.Plan plan(final List<NovelQuery.Condition> conditions)
+    {
+        return new QueryPlanner(novels, titleIndex::ifReady, yearIndex::ifReady, lengthIndex::ifReady,
+                authorIndex::ifReady)
+                .plan(conditions);
+    }
+
+    /**
+     * Answers a query from the cache when it is enabled.
+     *
+     * @param query computes the result
+     * @param name name of the query
+     * @param arguments arguments of the query
+     * @param <T> type of the result
+     *
+     * @return the result
+     */
+    private <T> T cached(final Supplier<T> query, final String name, final Object... arguments)
+    {
+        final QueryCache cache;
+        cache = queryCache;
+
+        if(cache == null)
+        {
+            return query.get();
+        }
+        return cache.get(catalogVersion, query, name, arguments);
+    }
+
+    /**
+     * Visits the slots a query matches, in catalog order. The query's index
+     * answers it once the index is ready; while the index is still being
+     * built in the background, the catalog is scanned with a test instead.
+     *
+     * @param lazyIndex the index that answers the query
+     * @param lookup passes the slots the index matches to a consumer
+     * @param test checks one live slot when scanning
+     * @param action called with each matching slot
+     * @param <I> type of the index
+     */
+    private <I> void forEachMatch(final LazyIndex<I> lazyIndex,
+                                  final BiConsumer<I, IntConsumer> lookup,
+                                  final IntPredicate test,
+                                  final IntConsumer action)
+    {
+        final I index;
+        index = lazyIndex.ifReady();
+
+        if(index != null)
+        {
+            lookup.accept(index, action);
+            return;
+        }
+
+        final IntList slots;
+        slots = scan((from, to) -> {
+            final IntList matches;
+            matches = new IntList();
+
+            for(int slot = from; slot < to; slot++)
+            {
+                if(novels.isLive(slot) && test.test(slot))
+                {
+                    matches.add(slot);
+                }
+            }
+            return matches;
+        }, IntList::addAll);
+
+        for(int i = 0; i < slots.size(); i++)
+        {
+            action.accept(slots.get(i));
+        }
+    }
+
+    /**
+     * Counts the live slots that pass a test by scanning the catalog.
+     *
+     * @param test checks one live slot
+     *
+     * @return number of passing slots
+     */
+    private int countMatching(final IntPredicate test)
+    {
+        return scan((from, to) -> {
+            int count = 0;
+
+            for(int slot = from; slot < to; slot++)
+            {
+                if(novels.isLive(slot) && test.test(slot))
+                {
+                    count++;
+                }
+            }
+            return count;
+        }, Integer::sum);
+    }
+
+    /**
+     * Checks whether the folded title in a slot contains a query, as the
+     * title index would.
+     */
+    private boolean titleContains(final int slot, final String query)
+    {
+        return TitleIndex.fold(novels.getTitle(slot)).contains(query);
+    }
+
+    /**
+     * Checks whether the novel in a slot was published in an inclusive range of years.
+     */
+    private boolean publishedBetween(final int slot, final int first, final int last)
+    {
+        final int year;
+        year = novels.getYearPublished(slot);
+
+        return year >= first && year <= last;
+    }
+
+    /**
+     * Scans every slot, in parallel when that has been enabled.
+     *
+     * @param scan scans one range of slots
+     * @param combiner merges the results of two adjacent ranges, earlier first
+     * @param <R> type of the scan result
+     *
+     * @return the result for the whole catalog
+     */
+    private <R> R scan(final ParallelScanner.RangeScan<R> scan, final BinaryOperator<R> combiner)
+    {
+        final ParallelScanner scanner;
+        scanner = parallelScanner;
+
+        if(scanner == null)
+        {
+            return scan.scan(0, novels.slotCount());
+        }
+        return scanner.scan(novels.slotCount(), scan, combiner);
+    }
+
+    /**
+     * Adds every live slot to a new index.
+     *
+     * @param index the empty index
+     * @param add adds one slot to the index
+     * @param <I> type of the index
+     *
+     * @return the filled index
+     */
+    private <I> I fill(final I index, final ObjIntConsumer<I> add)
+    {
+        for(int slot = 0; slot < novels.slotCount(); slot++)
+        {
+            if(novels.isLive(slot))
+            {
+                add.accept(index, slot);
+            }
+        }
+        return index;
     }
 
 //    /**
@@ -398,7 +1824,7 @@ public class BookStore
     /**
      * Validate the Novel array.
      */
-    private void validateNovels(final List<Novel> novels)
+    private static void validateNovels(final List<Novel> novels)
     {
         if (novels == null) {
             throw new IllegalStateException("Novel list is null");
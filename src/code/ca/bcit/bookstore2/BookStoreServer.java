@@ -0,0 +1,318 @@
+package ca.bcit.bookstore2;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+/**
+ * Local HTTP server that answers bookstore queries as JSON.
+ *
+ * Every endpoint takes GET requests with its arguments in the query string:
+ * <pre>
+ *   /titles?contains=the         titles containing a word
+ *   /count?contains=heart        number of titles containing a word
+ *   /percent?first=1940&amp;last=1950 percentage of books from a range of years
+ *   /exists?year=1950            whether any book is from a year
+ *   /decade?start=2000           titles from a decade
+ *   /oldest                      the oldest book
+ *   /oldest?count=10             the oldest books
+ *   /length?n=15                 books whose title has a length
+ *   /longest                     the longest title
+ *   /indexes                     which indexes are ready, and their build times
+ * </pre>
+ * Bad arguments get status 400 with an error message, unknown paths 404,
+ * and a query that fails for any other reason 500. The percentage of an
+ * empty bookstore is null rather than NaN, which JSON cannot express.
+ *
+ * Each request runs on its own virtual thread when the runtime has them,
+ * so many slow clients do not need as many platform threads. On older
+ * runtimes requests share a fixed pool of platform threads instead.
+ *
+ * The JDK server writes headers and body separately, which without
+ * TCP_NODELAY stalls each response on the client's delayed ACK. Launch
+ * with -Dsun.net.httpserver.nodelay=true to turn it on; the server reads
+ * the property once, when its first instance starts, so it is left to
+ * the command line rather than set here.
+ *
+ * @author Alex Lee
+ * @author Evan Tang
+ *
+ * @version 1.0
+ */
+public final class BookStoreServer implements AutoCloseable
+{
+    private static final int STATUS_OK = 200;
+    private static final int STATUS_BAD_REQUEST = 400;
+    private static final int STATUS_NOT_FOUND = 404;
+    private static final int STATUS_METHOD_NOT_ALLOWED = 405;
+    private static final int STATUS_CONFLICT = 409;
+    private static final int STATUS_INTERNAL_ERROR = 500;
+    private static final int BACKLOG = 4096;
+    private static final int FALLBACK_THREADS_PER_CPU = 4;
+
+    private final BookStore bookStore;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final boolean virtualThreads;
+    private final Map<String, Function<Map<String, String>, String>> routes;
+
+    /**
+     * Creates a server for a bookstore and binds it to an address. The
+     * bookstore must not be changed while the server is running.
+     *
+     * @param bookStore the bookstore to query
+     * @param address where to listen; port 0 picks a free port
+     *
+     * @throws IOException if the address cannot be bound
+     */
+    public BookStoreServer(final BookStore bookStore, final InetSocketAddress address) throws IOException
+    {
+        if(bookStore == null)
+        {
+            throw new IllegalArgumentException("bookStore must be provided");
+        }
+
+        if(address == null)
+        {
+            throw new IllegalArgumentException("address must be provided");
+        }
+
+        final ExecutorService virtual;
+        virtual = newVirtualThreadExecutor();
+
+        this.bookStore = bookStore;
+        this.virtualThreads = virtual != null;
+        this.executor = virtual != null ? virtual : Executors.newFixedThreadPool(
+                FALLBACK_THREADS_PER_CPU * Runtime.getRuntime().availableProcessors());
+        this.routes = routes();
+        this.server = HttpServer.create(address, BACKLOG);
+
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+    }
+
+    /**
+     * Starts answering requests.
+     */
+    public void start()
+    {
+        server.start();
+    }
+
+    /**
+     * Returns the address the server listens on.
+     *
+     * @return the bound address
+     */
+    public InetSocketAddress getAddress()
+    {
+        return server.getAddress();
+    }
+
+    /**
+     * Tells whether requests run on virtual threads.
+     *
+     * @return true for virtual threads, false for a platform thread pool
+     */
+    public boolean usesVirtualThreads()
+    {
+        return virtualThreads;
+    }
+
+    /**
+     * Stops the server, abandoning requests still in progress.
+     */
+    @Override
+    public void close()
+    {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Lists the endpoints and the queries behind them.
+     */
+    private Map<String, Function<Map<String, String>, String>> routes()
+    {
+        final Map<String, Function<Map<String, String>, String>> endpoints;
+        endpoints = new HashMap<>();
+
+        endpoints.put("/titles", params ->
+                Json.strings(new StringBuilder(), bookStore.getBookTitles(text(params, "contains"))).toString());
+        endpoints.put("/count", params ->
+                "{\"count\":" + bookStore.howManyBooksContain(text(params, "contains")) + "}");
+        endpoints.put("/percent", params ->
+                "{\"percent\":" + percent(bookStore.whichPercentWrittenBetween(number(params, "first"),
+                        number(params, "last"))) + "}");
+        endpoints.put("/exists", params ->
+                "{\"exists\":" + bookStore.isThereABookWrittenBetween(number(params, "year")) + "}");
+        endpoints.put("/decade", params ->
+                Json.strings(new StringBuilder(), bookStore.getTitlesByDecade(number(params, "start"))).toString());
+        endpoints.put("/oldest", params -> params.containsKey("count") ?
+                Json.novels(new StringBuilder(), bookStore.getOldestBooks(number(params, "count"))).toString() :
+                Json.novel(new StringBuilder(), bookStore.getOldestBook()).toString());
+        endpoints.put("/length", params ->
+                Json.novels(new StringBuilder(), bookStore.getBooksThisLength(number(params, "n"))).toString());
+        endpoints.put("/longest", params ->
+                Json.string(new StringBuilder("{\"title\":"), bookStore.getLongestTitle()).append('}').toString());
+        endpoints.put("/indexes", params ->
+                Json.indexStatuses(new StringBuilder(), bookStore.getIndexStatus()).toString());
+
+        return endpoints;
+    }
+
+    /**
+     * Answers one request.
+     */
+    private void handle(final HttpExchange exchange) throws IOException
+    {
+        try
+        {
+            final Function<Map<String, String>, String> route;
+            route = routes.get(exchange.getRequestURI().getPath());
+
+            if(!"GET".equals(exchange.getRequestMethod()))
+            {
+                respond(exchange, STATUS_METHOD_NOT_ALLOWED, error("only GET is supported"));
+            }
+            else if(route == null)
+            {
+                respond(exchange, STATUS_NOT_FOUND, error("no such query"));
+            }
+            else
+            {
+                respond(exchange, STATUS_OK, route.apply(parameters(exchange.getRequestURI().getRawQuery())));
+            }
+        }
+        catch(final IllegalArgumentException e)
+        {
+            respond(exchange, STATUS_BAD_REQUEST, error(e.getMessage()));
+        }
+        catch(final IllegalStateException e)
+        {
+            respond(exchange, STATUS_CONFLICT, error(e.getMessage()));
+        }
+        catch(final RuntimeException e)
+        {
+            respond(exchange, STATUS_INTERNAL_ERROR, error("query failed: " + e));
+        }
+        finally
+        {
+            exchange.close();
+        }
+    }
+
+    private static void respond(final HttpExchange exchange, final int status, final String json) throws IOException
+    {
+        final byte[] body;
+        body = json.getBytes(StandardCharsets.UTF_8);
+
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+
+        try(OutputStream out = exchange.getResponseBody())
+        {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Writes a percentage as a JSON number, or null when there were no books
+     * to take it of.
+     */
+    private static String percent(final double percentage)
+    {
+        return Double.isNaN(percentage) ? "null" : Double.toString(percentage);
+    }
+
+    private static String error(final String message)
+    {
+        return Json.string(new StringBuilder("{\"error\":"), message).append('}').toString();
+    }
+
+    /**
+     * Splits a raw query string into decoded names and values.
+     */
+    private static Map<String, String> parameters(final String rawQuery)
+    {
+        final Map<String, String> params;
+        params = new HashMap<>();
+
+        if(rawQuery == null || rawQuery.isEmpty())
+        {
+            return params;
+        }
+
+        for(final String pair : rawQuery.split("&"))
+        {
+            final int equals;
+            equals = pair.indexOf('=');
+
+            if(equals < 0)
+            {
+                params.put(decode(pair), "");
+            }
+            else
+            {
+                params.put(decode(pair.substring(0, equals)), decode(pair.substring(equals + 1)));
+            }
+        }
+        return params;
+    }
+
+    private static String decode(final String raw)
+    {
+        return URLDecoder.decode(raw, StandardCharsets.UTF_8);
+    }
+
+    private static String text(final Map<String, String> params, final String name)
+    {
+        final String value;
+        value = params.get(name);
+
+        if(value == null)
+        {
+            throw new IllegalArgumentException("missing parameter " + name);
+        }
+        return value;
+    }
+
+    private static int number(final Map<String, String> params, final String name)
+    {
+        try
+        {
+            return Integer.parseInt(text(params, name));
+        }
+        catch(final NumberFormatException e)
+        {
+            throw new IllegalArgumentException(name + " must be a whole number");
+        }
+    }
+
+    /**
+     * Creates an executor that starts a virtual thread per task, or returns
+     * null if this runtime has no virtual threads. It is looked up by name
+     * so the class still loads on runtimes before virtual threads.
+     */
+    private static ExecutorService newVirtualThreadExecutor()
+    {
+        try
+        {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch(final ReflectiveOperationException e)
+        {
+            return null;
+        }
+    }
+}
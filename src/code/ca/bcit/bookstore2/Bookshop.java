@@ -1,9 +1,30 @@
 package ca.bcit.bookstore2;
 
-import java.util.*;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.function.Consumer;
 
 /**
- * Represents the Bookshop.
+ * Represents the Bookshop, a service for looking novels up by title.
+ *
+ * Titles are held once, in a TitleDictionary, and everything else refers
+ * to them by dictionary id, so the bookshop keeps no title strings and no
+ * Novel objects: each edition is a title id, an author and a year, and a
+ * Novel is built when a lookup returns one. An exact lookup is a binary
+ * search of the dictionary; a lookup that ignores case goes through an
+ * open-addressing hash table of plain ints with no boxed entries. Novels
+ * that share a title are kept as editions of that title rather than
+ * replacing each other. Sorted views that leave out titles containing a
+ * word are read in order from the dictionary the first time they are
+ * asked for, kept as ids, and reused. The dictionary can be shared with a
+ * BookStore over the same novels, such as an off-heap one, which keeps
+ * its titles the same way. The bookshop does not change once it is built
+ * and may be shared between threads.
  *
  * @author Alex Lee
  * @author Evan Tang
@@ -12,42 +33,582 @@ import java.util.*;
  */
 public class Bookshop
 {
-    final Map<String, Novel> novelMap;
-    final Set<String> keyset;
-    final Iterator<String> it;
-    final List<String> sortedTitles;
+    private static final int EMPTY = 0;
+    private static final int NONE = -1;
+    private static final int MIN_TABLE_SIZE = 2;
+
+    // each cached listing holds every title, so only the most recent stop words are kept
+    private static final int MAX_CACHED_STOP_WORDS = 16;
+
+    // the bookshop never changes, so every cached listing belongs to one version
+    private static final long VERSION = 0;
+
+    private final TitleDictionary titleDictionary;
+
+    // each edition's title id, author and year, in catalog order
+    private final int[] editionTitles;
+    private final String[] editionAuthors;
+    private final int[] editionYears;
+    private final int[] nextEdition;
+
+    // indexed by title id; a title the bookshop does not have has no first edition
+    private final int[] firstEdition;
+    private final int[] foldedHashes;
+    private final int[] nextFoldedTitle;
+
+    // title ids in the order they first appear in the catalog
+    private final int[] titleOrder;
+
+    private final int[] foldedTable;
+    private final int mask;
+
+    private final QueryCache sortedTitlesWithout;
+    private volatile QueryMetrics metrics;
+
+    /**
+     * Creates the bookshop and indexes its novels by title.
+     *
+     * @param novelList novels in the bookshop
+     */
+    public Bookshop(final List<Novel> novelList)
+    {
+        this(null, novelList);
+    }
+
+    /**
+     * Creates the bookshop over a dictionary that holds every title of its
+     * novels, and may hold others.
+     *
+     * @param novelList novels in the bookshop
+     * @param titleDictionary sorted titles to share
+     */
+    public Bookshop(final List<Novel> novelList, final TitleDictionary titleDictionary)
+    {
+        this(validateTitleDictionary(titleDictionary), novelList);
+    }
+
+    /**
+     * Indexes the novels by title, building a dictionary of their titles
+     * if none is given.
+     */
+    private Bookshop(final TitleDictionary titleDictionary, final List<Novel> novelList)
+    {
+        if(novelList == null)
+        {
+            throw new IllegalArgumentException("novelList must be provided");
+        }
+
+        final int novelCount;
+        final int titleIds;
+        final int[] lastEdition;
+        final int[] order;
+
+        novelCount = novelList.size();
+        editionTitles = new int[novelCount];
+
+        if(titleDictionary == null)
+        {
+            this.titleDictionary = TitleDictionary.of(titlesOf(novelList), editionTitles);
+        }
+        else
+        {
+            this.titleDictionary = titleDictionary;
+            findTitles(titleDictionary, novelList, editionTitles);
+        }
+        titleIds = this.titleDictionary.size();
+
+        editionAuthors = new String[novelCount];
+        editionYears = new int[novelCount];
+        nextEdition = new int[novelCount];
+        firstEdition = new int[titleIds];
+        foldedHashes = new int[titleIds];
+        nextFoldedTitle = new int[titleIds];
+        lastEdition = new int[titleIds];
+        order = new int[Math.min(novelCount, titleIds)];
+
+        foldedTable = new int[tableSize(order.length)];
+        mask = foldedTable.length - 1;
+
+        Arrays.fill(firstEdition, NONE);
+
+        int edition = 0;
+        int distinct = 0;
+
+        for(final Novel novel : novelList)
+        {
+            final String title;
+            final int titleId;
+
+            title = novel.getTitle();
+            titleId = editionTitles[edition];
+
+            editionAuthors[edition] = novel.getAuthorName();
+            editionYears[edition] = novel.getYearPublished();
+            nextEdition[edition] = NONE;
+
+            if(firstEdition[titleId] == NONE)
+            {
+                firstEdition[titleId] = edition;
+                lastEdition[titleId] = edition;
+                foldedHashes[titleId] = foldedHash(title);
+                nextFoldedTitle[titleId] = NONE;
+                insertFolded(titleId, title);
+                order[distinct++] = titleId;
+            }
+            else
+            {
+                nextEdition[lastEdition[titleId]] = edition;
+                lastEdition[titleId] = edition;
+            }
+            edition++;
+        }
+
+        titleOrder = Arrays.copyOf(order, distinct);
+        sortedTitlesWithout = new QueryCache(MAX_CACHED_STOP_WORDS);
+    }
+
+    /**
+     * Looks up the id of every novel's title in a dictionary.
+     */
+    private static void findTitles(final TitleDictionary titleDictionary,
+                                   final List<Novel> novelList,
+                                   final int[] titleIds)
+    {
+        int edition = 0;
+
+        for(final Novel novel : novelList)
+        {
+            if(novel == null)
+            {
+                throw new IllegalArgumentException("novelList must not contain null");
+            }
+
+            titleIds[edition] = titleDictionary.indexOf(novel.getTitle());
+
+            if(titleIds[edition] < 0)
+            {
+                throw new IllegalArgumentException("titleDictionary does not hold " + novel.getTitle());
+            }
+            edition++;
+        }
+    }
+
+    private static TitleDictionary validateTitleDictionary(final TitleDictionary titleDictionary)
+    {
+        if(titleDictionary == null)
+        {
+            throw new IllegalArgumentException("titleDictionary must be provided");
+        }
+        return titleDictionary;
+    }
+
+    /**
+     * Returns the titles of the novels, checking that there is no null novel.
+     */
+    private static List<String> titlesOf(final List<Novel> novelList)
+    {
+        final List<String> titles;
+        titles = new ArrayList<>(novelList.size());
+
+        for(final Novel novel : novelList)
+        {
+            if(novel == null)
+            {
+                throw new IllegalArgumentException("novelList must not contain null");
+            }
+            titles.add(novel.getTitle());
+        }
+        return titles;
+    }
+
+    /**
+     * Returns every edition with exactly this title.
+     *
+     * @param title the title to look up
+     *
+     * @return the editions in catalog order, empty if there are none
+     */
+    public List<Novel> findByTitle(final String title)
+    {
+        final long start = QueryMetrics.start(metrics);
+
+        if(title == null)
+        {
+            throw new IllegalArgumentException("title must be provided");
+        }
+
+        final int titleId;
+        final List<Novel> found;
+
+        titleId = findExact(title);
+        found = new ArrayList<>();
+
+        if(titleId != NONE)
+        {
+            addEditions(titleId, title, found);
+        }
+        return QueryMetrics.stop(metrics, "findByTitle", start,
+                Collections.unmodifiableList(found));
+    }
+
+    /**
+     * Returns every edition whose title matches this one, ignoring case.
+     *
+     * @param title the title to look up
+     *
+     * @return the editions, grouped by title in catalog order, empty if there are none
+     */
+    public List<Novel> findByTitleIgnoreCase(final String title)
+    {
+        final long start = QueryMetrics.start(metrics);
+
+        if(title == null)
+        {
+            throw new IllegalArgumentException("title must be provided");
+        }
+
+        final List<Novel> found;
+        found = new ArrayList<>();
+
+        for(int titleId = findFolded(title); titleId != NONE; titleId = nextFoldedTitle[titleId])
+        {
+            addEditions(titleId, titleDictionary.get(titleId), found);
+        }
+        return QueryMetrics.stop(metrics, "findByTitleIgnoreCase", start,
+                Collections.unmodifiableList(found));
+    }
+
+    /**
+     * Checks whether the bookshop has a novel with exactly this title.
+     *
+     * @param title the title to look for
+     *
+     * @return true if there is one, false otherwise
+     */
+    public boolean containsTitle(final String title)
+    {
+        final long start = QueryMetrics.start(metrics);
+
+        if(title == null)
+        {
+            throw new IllegalArgumentException("title must be provided");
+        }
+        return QueryMetrics.stop(metrics, "containsTitle", start, findExact(title) != NONE);
+    }
+
+    /**
+     * Returns the number of different titles in the bookshop.
+     *
+     * @return number of titles
+     */
+    public int getTitleCount()
+    {
+        return titleOrder.length;
+    }
+
+    /**
+     * Returns the number of novels in the bookshop, counting every edition.
+     *
+     * @return number of novels
+     */
+    public int getNovelCount()
+    {
+        return editionYears.length;
+    }
+
+    /**
+     * Returns each title once, in the order it first appears in the catalog.
+     *
+     * @return unmodifiable list of the titles
+     */
+    public List<String> getTitles()
+    {
+        final long start = QueryMetrics.start(metrics);
+
+        return QueryMetrics.stop(metrics, "getTitles", start,
+                new DictionaryTitles(titleDictionary, titleOrder));
+    }
+
+    /**
+     * Returns the titles that do not contain a word, ignoring case, sorted
+     * A-Z. The list is built the first time a word is asked for and reused.
+     *
+     * @param stopWord word whose titles are left out
+     *
+     * @return unmodifiable sorted list of the remaining titles
+     */
+    public List<String> getSortedTitlesWithout(final String stopWord)
+    {
+        final long start = QueryMetrics.start(metrics);
+
+        return QueryMetrics.stop(metrics, "getSortedTitlesWithout", start,
+                cachedTitlesWithout(stopWord));
+    }
+
+    /**
+     * Starts recording call counts, latencies and result sizes for every
+     * lookup. Recording again after it was stopped starts afresh.
+     *
+     * @return the metrics being recorded
+     */
+    public QueryMetrics enableMetrics()
+    {
+        final QueryMetrics enabled;
+        enabled = new QueryMetrics(() -> editionYears.length);
+
+        metrics = enabled;
+        return enabled;
+    }
+
+    /**
+     * Stops recording metrics.
+     */
+    public void disableMetrics()
+    {
+        metrics = null;
+    }
+
+    /**
+     * Returns the metrics being recorded.
+     *
+     * @return the metrics, or null if they are not enabled
+     */
+    public QueryMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+    /**
+     * Prints each title once, in the order it first appears in the catalog.
+     */
+    public void printAllTitles()
+    {
+        printToStandardOut(this::printAllTitles);
+    }
+
+    /**
+     * Writes each title once, in the order it first appears in the catalog, to a sink.
+     *
+     * @param sink where to write the titles
+     */
+    public void printAllTitles(final LineSink sink)
+    {
+        final long start = QueryMetrics.start(metrics);
+
+        for(final int titleId : titleOrder)
+        {
+            sink.line(titleDictionary.get(titleId));
+        }
+        QueryMetrics.stop(metrics, "printAllTitles", start);
+    }
+
+    /**
+     * Prints every edition whose title does not contain a word, sorted by title.
+     *
+     * @param stopWord word whose titles are left out
+     */
+    public void printSortedTitlesWithout(final String stopWord)
+    {
+        printToStandardOut(sink -> printSortedTitlesWithout(stopWord, sink));
+    }
+
+    /**
+     * Writes every edition whose title does not contain a word, sorted by
+     * title, to a sink.
+     *
+     * @param stopWord word whose titles are left out
+     * @param sink where to write the novels
+     */
+    public void printSortedTitlesWithout(final String stopWord, final LineSink sink)
+    {
+        final long start = QueryMetrics.start(metrics);
+
+        final DictionaryTitles titles;
+        titles = cachedTitlesWithout(stopWord);
+
+        for(int i = 0; i < titles.size(); i++)
+        {
+            final String title;
+            title = titles.get(i);
+
+            for(int edition = firstEdition[titles.ids[i]]; edition != NONE; edition = nextEdition[edition])
+            {
+                sink.line(String.valueOf(novel(edition, title)));
+            }
+        }
+        QueryMetrics.stop(metrics, "printSortedTitlesWithout", start);
+    }
+
+    private DictionaryTitles cachedTitlesWithout(final String stopWord)
+    {
+        if(stopWord == null)
+        {
+            throw new IllegalArgumentException("stopWord must be provided");
+        }
 
-    public Bookshop(List<Novel> novelList)
+        final String foldedStopWord;
+        foldedStopWord = stopWord.toLowerCase();
+
+        return sortedTitlesWithout.get(VERSION, () -> sortTitlesWithout(foldedStopWord),
+                "sortedTitlesWithout", foldedStopWord);
+    }
+
+    /**
+     * Reads the dictionary in order, keeping the ids of this bookshop's
+     * titles that do not contain the word.
+     */
+    private DictionaryTitles sortTitlesWithout(final String foldedStopWord)
     {
-        novelMap = new HashMap<>();
+        final IntList kept;
+        int titleId = 0;
+
+        kept = new IntList();
+
+        for(final String title : titleDictionary.asList())
+        {
+            if(firstEdition[titleId] != NONE && !title.toLowerCase().contains(foldedStopWord))
+            {
+                kept.add(titleId);
+            }
+            titleId++;
+        }
+        return new DictionaryTitles(titleDictionary, kept.toArray());
+    }
 
-        for (Novel novel : novelList)
+    private void addEditions(final int titleId, final String title, final List<Novel> found)
+    {
+        for(int edition = firstEdition[titleId]; edition != NONE; edition = nextEdition[edition])
         {
-            novelMap.put(novel.getTitle(), novel);
+            found.add(novel(edition, title));
         }
+    }
+
+    private Novel novel(final int edition, final String title)
+    {
+        return new Novel(title, editionAuthors[edition], editionYears[edition]);
+    }
+
+    /**
+     * Finds the id of a title, matching exactly.
+     */
+    private int findExact(final String title)
+    {
+        final int titleId;
+        titleId = titleDictionary.indexOf(title);
+
+        return titleId >= 0 && firstEdition[titleId] != NONE ? titleId : NONE;
+    }
 
-        keyset = novelMap.keySet();
+    /**
+     * Finds the id of the first title that matches, ignoring case. Later
+     * matches are chained from it through nextFoldedTitle.
+     */
+    private int findFolded(final String title)
+    {
+        final int hash;
+        hash = foldedHash(title);
 
-        it = keyset.iterator();
+        for(int i = spread(hash) & mask; foldedTable[i] != EMPTY; i = (i + 1) & mask)
+        {
+            final int titleId = foldedTable[i] - 1;
 
-        System.out.println("All titles:");
-        while (it.hasNext()) {
-            System.out.println(it.next());
+            if(foldedHashes[titleId] == hash && titleDictionary.get(titleId).equalsIgnoreCase(title))
+            {
+                return titleId;
+            }
         }
+        return NONE;
+    }
+
+    private void insertFolded(final int titleId, final String title)
+    {
+        final int first;
+        first = findFolded(title);
 
-        sortedTitles = new ArrayList<>();
+        if(first != NONE)
+        {
+            int last = first;
 
-        for (String key : keyset) {
-            if (!key.toLowerCase().contains("the")) {
-                sortedTitles.add(key);
+            while(nextFoldedTitle[last] != NONE)
+            {
+                last = nextFoldedTitle[last];
             }
+            nextFoldedTitle[last] = titleId;
+            return;
+        }
+
+        int i = spread(foldedHashes[titleId]) & mask;
+
+        while(foldedTable[i] != EMPTY)
+        {
+            i = (i + 1) & mask;
+        }
+        foldedTable[i] = titleId + 1;
+    }
+
+    /**
+     * Hashes a title so that titles equal ignoring case hash the same, folding
+     * each character the way String.equalsIgnoreCase compares it.
+     */
+    private static int foldedHash(final String title)
+    {
+        int hash = 0;
+
+        for(int i = 0; i < title.length(); i++)
+        {
+            hash = 31 * hash + Character.toLowerCase(Character.toUpperCase(title.charAt(i)));
+        }
+        return hash;
+    }
+
+    private static int spread(final int hash)
+    {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Returns a power of two at least twice the number of entries, keeping
+     * the tables at most half full.
+     */
+    private static int tableSize(final int entries)
+    {
+        return Math.max(MIN_TABLE_SIZE, Integer.highestOneBit(Math.max(1, entries) * 2 - 1) << 1);
+    }
+
+    private static void printToStandardOut(final Consumer<LineSink> printer)
+    {
+        final LineSink sink;
+        sink = LineSink.of(System.out);
+
+        printer.accept(sink);
+        sink.flush();
+    }
+
+    /**
+     * Titles listed by dictionary id, decoded when read.
+     */
+    private static final class DictionaryTitles extends AbstractList<String> implements RandomAccess
+    {
+        private final TitleDictionary titleDictionary;
+        private final int[] ids;
+
+        private DictionaryTitles(final TitleDictionary titleDictionary, final int[] ids)
+        {
+            this.titleDictionary = titleDictionary;
+            this.ids = ids;
         }
 
-        Collections.sort(sortedTitles);
+        @Override
+        public String get(final int index)
+        {
+            Objects.checkIndex(index, ids.length);
+            return titleDictionary.get(ids[index]);
+        }
 
-        System.out.println("\nSorted titles:");
-        for (String title : sortedTitles) {
-            System.out.println(novelMap.get(title));
+        @Override
+        public int size()
+        {
+            return ids.length;
         }
     }
 }
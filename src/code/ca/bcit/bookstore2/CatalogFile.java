@@ -0,0 +1,384 @@
+package ca.bcit.bookstore2;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * Reads and writes the binary catalog file format.
+ *
+ * A catalog file is little-endian and laid out as:
+ * <pre>
+ *   header      magic, version, row count, name length, arena length,
+ *               column checksum, arena checksum, header checksum
+ *   name        UTF-8 bookstore name, padded to a multiple of four bytes
+ *   columns     year, title offset, title length, author offset and
+ *               author length, each an int per row
+ *   arena       UTF-8 titles and author names
+ * </pre>
+ * Loading maps the columns and the arena straight into an off-heap
+ * storage, so no record is decoded until a query asks for it.
+ *
+ * @author Alex Lee
+ * @author Evan Tang
+ *
+ * @version 1.0
+ */
+public final class CatalogFile
+{
+    private static final int MAGIC = 0x424B5354;
+    private static final int VERSION = 1;
+
+    private static final int HEADER_BYTES = 40;
+    private static final int HEADER_CHECKSUMMED_BYTES = 32;
+
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int ROW_COUNT_OFFSET = 8;
+    private static final int NAME_LENGTH_OFFSET = 12;
+    private static final int ARENA_LENGTH_OFFSET = 16;
+    private static final int COLUMN_CHECKSUM_OFFSET = 24;
+    private static final int ARENA_CHECKSUM_OFFSET = 28;
+    private static final int HEADER_CHECKSUM_OFFSET = 32;
+
+    private static final int ALIGNMENT = Integer.BYTES;
+    private static final int WRITE_CHUNK_BYTES = 1 << 16;
+
+    private CatalogFile()
+    {
+    }
+
+    /**
+     * Writes a bookstore to a catalog file, replacing any existing file.
+     *
+     * @param bookStore the bookstore to write
+     * @param path where to write the catalog
+     *
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(final BookStore bookStore, final Path path) throws IOException
+    {
+        final OffHeapNovelStorage storage;
+        final byte[] name;
+        final IntBuffer[] columns;
+        final ByteBuffer arena;
+
+        storage = bookStore.columnarStorage();
+        name = bookStore.getBookStoreName().getBytes(StandardCharsets.UTF_8);
+        columns = storage.columns();
+        arena = storage.arena();
+
+        try(FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            final CRC32C columnChecksum;
+            final CRC32C arenaChecksum;
+
+            columnChecksum = new CRC32C();
+            arenaChecksum = new CRC32C();
+
+            channel.position(HEADER_BYTES);
+            writeFully(channel, ByteBuffer.wrap(name));
+            writeFully(channel, ByteBuffer.allocate(padding(name.length)));
+
+            for(final IntBuffer column : columns)
+            {
+                writeColumn(channel, column, columnChecksum);
+            }
+
+            arenaChecksum.update(arena.duplicate());
+            writeFully(channel, arena.duplicate());
+
+            final ByteBuffer header;
+            header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+            header.putInt(MAGIC_OFFSET, MAGIC);
+            header.putInt(VERSION_OFFSET, VERSION);
+            header.putInt(ROW_COUNT_OFFSET, storage.slotCount());
+            header.putInt(NAME_LENGTH_OFFSET, name.length);
+            header.putLong(ARENA_LENGTH_OFFSET, arena.remaining());
+            header.putInt(COLUMN_CHECKSUM_OFFSET, (int) columnChecksum.getValue());
+            header.putInt(ARENA_CHECKSUM_OFFSET, (int) arenaChecksum.getValue());
+            header.putInt(HEADER_CHECKSUM_OFFSET, headerChecksum(header));
+
+            channel.position(0);
+            writeFully(channel, header);
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Maps a catalog file into a bookstore, checking only the header.
+     *
+     * @param path the catalog to load
+     *
+     * @return the bookstore, backed by the mapped file
+     *
+     * @throws IOException if the file cannot be read or is not a valid catalog
+     */
+    public static BookStore load(final Path path) throws IOException
+    {
+        return load(path, false);
+    }
+
+    /**
+     * Maps a catalog file into a bookstore.
+     *
+     * @param path the catalog to load
+     * @param verifyChecksums whether to check the column and arena checksums
+     *                        and that every row holds a valid novel, which
+     *                        reads the whole file
+     *
+     * @return the bookstore, backed by the mapped file
+     *
+     * @throws IOException if the file cannot be read or is not a valid catalog
+     */
+    public static BookStore load(final Path path, final boolean verifyChecksums) throws IOException
+    {
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            final ByteBuffer header;
+            final int rowCount;
+            final int nameLength;
+            final long arenaLength;
+
+            header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            while(header.hasRemaining() && channel.read(header) >= 0)
+            {
+                // keep reading until the header is complete or the file ends
+            }
+            validateHeader(header, channel.size());
+
+            rowCount = header.getInt(ROW_COUNT_OFFSET);
+            nameLength = header.getInt(NAME_LENGTH_OFFSET);
+            arenaLength = header.getLong(ARENA_LENGTH_OFFSET);
+
+            final ByteBuffer name;
+            final IntBuffer[] columns;
+            final ByteBuffer arena;
+            long position;
+
+            position = HEADER_BYTES;
+            name = map(channel, position, nameLength);
+            position += nameLength + padding(nameLength);
+
+            columns = new IntBuffer[OffHeapNovelStorage.COLUMN_COUNT];
+            for(int i = 0; i < columns.length; i++)
+            {
+                final ByteBuffer column;
+                column = map(channel, position, (long) rowCount * Integer.BYTES);
+
+                columns[i] = column.asIntBuffer();
+                position += (long) rowCount * Integer.BYTES;
+            }
+
+            arena = map(channel, position, arenaLength);
+
+            if(verifyChecksums)
+            {
+                verifySections(header, channel, rowCount, nameLength, arena);
+                verifyRows(columns, arenaLength, rowCount);
+            }
+
+            arena.position(arena.limit());
+
+            try
+            {
+                return new BookStore(StandardCharsets.UTF_8.decode(name).toString(),
+                        new OffHeapNovelStorage(columns, arena, rowCount));
+            }
+            catch(final IllegalArgumentException e)
+            {
+                // the name is outside every checksum
+                throw new IOException("catalog file holds an invalid bookstore name", e);
+            }
+        }
+    }
+
+    /**
+     * Checks the magic number, version, header checksum and file length.
+     */
+    private static void validateHeader(final ByteBuffer header, final long fileSize) throws IOException
+    {
+        if(header.hasRemaining())
+        {
+            throw new IOException("catalog file is shorter than its header");
+        }
+
+        if(header.getInt(MAGIC_OFFSET) != MAGIC)
+        {
+            throw new IOException("not a catalog file");
+        }
+
+        if(header.getInt(VERSION_OFFSET) != VERSION)
+        {
+            throw new IOException("unsupported catalog version " + header.getInt(VERSION_OFFSET));
+        }
+
+        if(header.getInt(HEADER_CHECKSUM_OFFSET) != headerChecksum(header))
+        {
+            throw new IOException("catalog header checksum mismatch");
+        }
+
+        final int rowCount;
+        final int nameLength;
+        final long arenaLength;
+
+        rowCount = header.getInt(ROW_COUNT_OFFSET);
+        nameLength = header.getInt(NAME_LENGTH_OFFSET);
+        arenaLength = header.getLong(ARENA_LENGTH_OFFSET);
+
+        if(rowCount < 0 || nameLength < 0 || arenaLength < 0 || arenaLength > Integer.MAX_VALUE)
+        {
+            throw new IOException("catalog header is corrupt");
+        }
+
+        final long expectedSize;
+        expectedSize = HEADER_BYTES + nameLength + padding(nameLength) +
+                (long) OffHeapNovelStorage.COLUMN_COUNT * rowCount * Integer.BYTES + arenaLength;
+
+        if(fileSize != expectedSize)
+        {
+            throw new IOException("catalog file is " + fileSize + " bytes, expected " + expectedSize);
+        }
+    }
+
+    /**
+     * Recomputes the column and arena checksums and compares them with the header.
+     */
+    private static void verifySections(final ByteBuffer header,
+                                       final FileChannel channel,
+                                       final int rowCount,
+                                       final int nameLength,
+                                       final ByteBuffer arena) throws IOException
+    {
+        final CRC32C columnChecksum;
+        final CRC32C arenaChecksum;
+
+        columnChecksum = new CRC32C();
+        arenaChecksum = new CRC32C();
+
+        columnChecksum.update(map(channel,
+                HEADER_BYTES + nameLength + padding(nameLength),
+                (long) OffHeapNovelStorage.COLUMN_COUNT * rowCount * Integer.BYTES));
+        arenaChecksum.update(arena.duplicate());
+
+        if((int) columnChecksum.getValue() != header.getInt(COLUMN_CHECKSUM_OFFSET))
+        {
+            throw new IOException("catalog column checksum mismatch");
+        }
+
+        if((int) arenaChecksum.getValue() != header.getInt(ARENA_CHECKSUM_OFFSET))
+        {
+            throw new IOException("catalog arena checksum mismatch");
+        }
+    }
+
+    /**
+     * Checks that every row has a year a novel can have and strings that
+     * lie inside the arena, so that a file which matches its checksums but
+     * was written wrongly is still refused.
+     */
+    private static void verifyRows(final IntBuffer[] columns,
+                                   final long arenaLength,
+                                   final int rowCount) throws IOException
+    {
+        for(int row = 0; row < rowCount; row++)
+        {
+            final int year;
+            year = columns[OffHeapNovelStorage.YEAR_COLUMN].get(row);
+
+            if(year < Novel.INITIAL_YEAR || year > Novel.CURRENT_YEAR)
+            {
+                throw new IOException("catalog row " + row + " has invalid year " + year);
+            }
+
+            if(!insideArena(columns[OffHeapNovelStorage.TITLE_OFFSET_COLUMN].get(row),
+                            columns[OffHeapNovelStorage.TITLE_LENGTH_COLUMN].get(row), arenaLength) ||
+               !insideArena(columns[OffHeapNovelStorage.AUTHOR_OFFSET_COLUMN].get(row),
+                            columns[OffHeapNovelStorage.AUTHOR_LENGTH_COLUMN].get(row), arenaLength))
+            {
+                throw new IOException("catalog row " + row + " points outside the string arena");
+            }
+        }
+    }
+
+    private static boolean insideArena(final int offset, final int length, final long arenaLength)
+    {
+        return offset >= 0 && length > 0 && (long) offset + length <= arenaLength;
+    }
+
+    /**
+     * Writes an int column in little-endian order, updating a checksum.
+     */
+    private static void writeColumn(final FileChannel channel,
+                                    final IntBuffer column,
+                                    final CRC32C checksum) throws IOException
+    {
+        final ByteBuffer chunk;
+        chunk = ByteBuffer.allocate(WRITE_CHUNK_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+        while(column.hasRemaining())
+        {
+            chunk.clear();
+            while(column.hasRemaining() && chunk.remaining() >= Integer.BYTES)
+            {
+                chunk.putInt(column.get());
+            }
+            chunk.flip();
+
+            checksum.update(chunk.duplicate());
+            writeFully(channel, chunk);
+        }
+    }
+
+    /**
+     * Writes every remaining byte of a buffer.
+     */
+    private static void writeFully(final FileChannel channel, final ByteBuffer buffer) throws IOException
+    {
+        while(buffer.hasRemaining())
+        {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Maps a read-only little-endian section of the file.
+     */
+    private static ByteBuffer map(final FileChannel channel,
+                                  final long position,
+                                  final long length) throws IOException
+    {
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, length)
+                .order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Computes the checksum of the header fields that precede it.
+     */
+    private static int headerChecksum(final ByteBuffer header)
+    {
+        final CRC32C checksum;
+        checksum = new CRC32C();
+
+        checksum.update(header.duplicate().position(0).limit(HEADER_CHECKSUMMED_BYTES));
+        return (int) checksum.getValue();
+    }
+
+    /**
+     * Returns how many bytes pad a length up to the column alignment.
+     */
+    private static int padding(final int length)
+    {
+        return (ALIGNMENT - length % ALIGNMENT) % ALIGNMENT;
+    }
+}
@@ -0,0 +1,415 @@
+package ca.bcit.bookstore2;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only log of the novels added to and removed from a catalog.
+ *
+ * A log file is little-endian and laid out as:
+ * <pre>
+ *   header      magic, version
+ *   records     payload length, payload checksum, payload
+ *   payload     operation, year, title length, UTF-8 title,
+ *               author length, UTF-8 author name
+ * </pre>
+ * Records are gathered in a buffer and written in large pieces, and the
+ * file is only forced to disk once a batch of records has built up or
+ * when asked, so a crash loses at most the records since the last sync.
+ * A crash in the middle of a write leaves a torn last record, which
+ * replaying detects by its length or checksum and cuts off. A crash while
+ * the log was being created can leave it shorter than its header; such a
+ * log holds no records, so replaying it writes the header again.
+ *
+ * @author Alex Lee
+ * @author Evan Tang
+ *
+ * @version 1.0
+ */
+final class CatalogLog implements AutoCloseable
+{
+    static final byte ADD = 1;
+    static final byte REMOVE = 2;
+
+    private static final int MAGIC = 0x424B4C47;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 8;
+    private static final int RECORD_HEADER_BYTES = 8;
+    private static final int FIXED_PAYLOAD_BYTES = 1 + 3 * Integer.BYTES;
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final CRC32C checksum;
+    private final int syncEvery;
+    private int unsyncedRecords;
+    private long recordCount;
+
+    /**
+     * Handles one record read back from a log.
+     */
+    interface Replayer
+    {
+        /**
+         * Applies one record.
+         *
+         * @param operation ADD or REMOVE
+         * @param novel the novel added or removed
+         */
+        void apply(byte operation, Novel novel);
+    }
+
+    private CatalogLog(final FileChannel channel, final int syncEvery, final long recordCount)
+    {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocate(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        this.checksum = new CRC32C();
+        this.syncEvery = syncEvery;
+        this.unsyncedRecords = 0;
+        this.recordCount = recordCount;
+    }
+
+    /**
+     * Creates an empty log, replacing any existing file.
+     *
+     * @param path where to create the log
+     * @param syncEvery number of records to gather before forcing them to disk
+     *
+     * @return the log, ready for appending
+     *
+     * @throws IOException if the file cannot be created
+     */
+    static CatalogLog create(final Path path, final int syncEvery) throws IOException
+    {
+        final FileChannel channel;
+
+        channel = FileChannel.open(path,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+
+        try
+        {
+            writeHeader(channel);
+        }
+        catch(final IOException | RuntimeException e)
+        {
+            channel.close();
+            throw e;
+        }
+        return new CatalogLog(channel, syncEvery, 0);
+    }
+
+    /**
+     * Replays every intact record of an existing log, cuts off a torn tail,
+     * and opens the log for appending after the last intact record. A log
+     * too short to hold its header is taken as empty and started again.
+     *
+     * @param path the log to open
+     * @param syncEvery number of records to gather before forcing them to disk
+     * @param replayer receives each record in the order it was written
+     *
+     * @return the log, ready for appending
+     *
+     * @throws IOException if the file cannot be read or is not a catalog log
+     */
+    static CatalogLog replay(final Path path, final int syncEvery, final Replayer replayer) throws IOException
+    {
+        final FileChannel channel;
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        try
+        {
+            final long fileSize;
+            final CRC32C recordChecksum;
+            ByteBuffer log;
+            long intactEnd;
+            long records;
+
+            fileSize = channel.size();
+
+            // a crash while creating the log leaves an empty or partial header
+            if(fileSize < HEADER_BYTES)
+            {
+                channel.truncate(0);
+                writeHeader(channel);
+                return new CatalogLog(channel, syncEvery, 0);
+            }
+
+            // read rather than mapped, so that the file can be truncated afterwards
+            log = ByteBuffer.allocate(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN).flip();
+            recordChecksum = new CRC32C();
+            records = 0;
+
+            fill(channel, log, HEADER_BYTES);
+
+            if(log.getInt() != MAGIC)
+            {
+                throw new IOException("not a catalog log");
+            }
+
+            if(log.getInt() != VERSION)
+            {
+                throw new IOException("unsupported catalog log version " + log.getInt(Integer.BYTES));
+            }
+            intactEnd = HEADER_BYTES;
+
+            while(fill(channel, log, RECORD_HEADER_BYTES))
+            {
+                final int length;
+                final int expected;
+
+                length = log.getInt(log.position());
+                expected = log.getInt(log.position() + Integer.BYTES);
+
+                if(length < FIXED_PAYLOAD_BYTES || length > fileSize - intactEnd - RECORD_HEADER_BYTES)
+                {
+                    break;
+                }
+
+                if(log.capacity() < RECORD_HEADER_BYTES + length)
+                {
+                    log = ByteBuffer.allocate(RECORD_HEADER_BYTES + length).order(ByteOrder.LITTLE_ENDIAN)
+                            .put(log).flip();
+                }
+
+                if(!fill(channel, log, RECORD_HEADER_BYTES + length))
+                {
+                    break;
+                }
+
+                final ByteBuffer payload;
+                payload = log.slice(log.position() + RECORD_HEADER_BYTES, length).order(ByteOrder.LITTLE_ENDIAN);
+
+                recordChecksum.reset();
+                recordChecksum.update(payload.duplicate());
+
+                if((int) recordChecksum.getValue() != expected)
+                {
+                    break;
+                }
+
+                replayer.apply(payload.get(), readNovel(payload));
+                log.position(log.position() + RECORD_HEADER_BYTES + length);
+                intactEnd += RECORD_HEADER_BYTES + length;
+                records++;
+            }
+
+            // anything after the last intact record is a torn write
+            if(intactEnd < fileSize)
+            {
+                channel.truncate(intactEnd);
+                channel.force(true);
+            }
+
+            channel.position(intactEnd);
+            return new CatalogLog(channel, syncEvery, records);
+        }
+        catch(final IOException | RuntimeException e)
+        {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Appends a record, forcing the log to disk once enough records have
+     * gathered since the last sync.
+     *
+     * @param operation ADD or REMOVE
+     * @param novel the novel added or removed
+     *
+     * @throws IOException if the log cannot be written
+     */
+    void append(final byte operation, final Novel novel) throws IOException
+    {
+        final byte[] title;
+        final byte[] author;
+        final int payloadLength;
+        final ByteBuffer target;
+
+        title = novel.getTitle().getBytes(StandardCharsets.UTF_8);
+        author = novel.getAuthorName().getBytes(StandardCharsets.UTF_8);
+        payloadLength = FIXED_PAYLOAD_BYTES + title.length + author.length;
+
+        if(buffer.remaining() < RECORD_HEADER_BYTES + payloadLength)
+        {
+            flush();
+        }
+
+        target = buffer.remaining() < RECORD_HEADER_BYTES + payloadLength ?
+                ByteBuffer.allocate(RECORD_HEADER_BYTES + payloadLength).order(ByteOrder.LITTLE_ENDIAN) :
+                buffer;
+
+        final int payloadStart;
+
+        target.putInt(payloadLength);
+        target.putInt(0);
+        payloadStart = target.position();
+
+        target.put(operation);
+        target.putInt(novel.getYearPublished());
+        target.putInt(title.length);
+        target.put(title);
+        target.putInt(author.length);
+        target.put(author);
+
+        checksum.reset();
+        checksum.update(target.duplicate().position(payloadStart).limit(target.position()));
+        target.putInt(payloadStart - Integer.BYTES, (int) checksum.getValue());
+
+        if(target != buffer)
+        {
+            target.flip();
+            writeFully(channel, target);
+        }
+
+        recordCount++;
+        unsyncedRecords++;
+
+        if(unsyncedRecords >= syncEvery)
+        {
+            sync();
+        }
+    }
+
+    /**
+     * Writes the buffered records and forces them to disk.
+     *
+     * @throws IOException if the log cannot be written
+     */
+    void sync() throws IOException
+    {
+        flush();
+        channel.force(false);
+        unsyncedRecords = 0;
+    }
+
+    /**
+     * Returns the number of records in the log, including any not yet synced.
+     *
+     * @return number of records
+     */
+    long recordCount()
+    {
+        return recordCount;
+    }
+
+    /**
+     * Syncs the buffered records and closes the file.
+     *
+     * @throws IOException if the log cannot be written
+     */
+    @Override
+    public void close() throws IOException
+    {
+        try
+        {
+            sync();
+        }
+        finally
+        {
+            channel.close();
+        }
+    }
+
+    /**
+     * Writes the buffered records without forcing them to disk.
+     */
+    private void flush() throws IOException
+    {
+        buffer.flip();
+        writeFully(channel, buffer);
+        buffer.clear();
+    }
+
+    /**
+     * Writes the header at the start of an empty log and forces it to disk.
+     */
+    private static void writeHeader(final FileChannel channel) throws IOException
+    {
+        final ByteBuffer header;
+        header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+        header.putInt(MAGIC).putInt(VERSION).flip();
+        channel.position(0);
+        writeFully(channel, header);
+        channel.force(true);
+    }
+
+    private static Novel readNovel(final ByteBuffer payload)
+    {
+        final int year;
+        final String title;
+        final String author;
+
+        year = payload.getInt();
+        title = readString(payload);
+        author = readString(payload);
+
+        return new Novel(title, author, year);
+    }
+
+    private static String readString(final ByteBuffer payload)
+    {
+        final int length;
+        final byte[] bytes;
+
+        length = payload.getInt();
+        bytes = new byte[length];
+        payload.get(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes every remaining byte of a buffer.
+     */
+    /**
+     * Reads from the channel until a buffer, in read mode, has a number of
+     * bytes left to read, which it must have room for.
+     *
+     * @return false if the file ended first
+     */
+    private static boolean fill(final FileChannel channel,
+                                final ByteBuffer buffer,
+                                final int needed) throws IOException
+    {
+        if(buffer.remaining() >= needed)
+        {
+            return true;
+        }
+
+        buffer.compact();
+
+        try
+        {
+            while(buffer.position() < needed)
+            {
+                if(channel.read(buffer) < 0)
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+        finally
+        {
+            buffer.flip();
+        }
+    }
+
+    private static void writeFully(final FileChannel channel, final ByteBuffer buffer) throws IOException
+    {
+        while(buffer.hasRemaining())
+        {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package ca.bcit.bookstore2;
+
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * A bookstore that can be changed while other threads query it.
+ *
+ * Two identical bookstores are kept. Readers always use the one that is
+ * currently published and never wait. A writer applies its change to the
+ * unpublished copy, publishes it, waits for readers still on the old copy
+ * to leave, and then applies the same change to the old copy. Readers
+ * therefore always see a complete catalog, either before or after a
+ * change, never half of one. This is the left-right technique; it costs
+ * twice the memory of one bookstore and serialises writers.
+ *
+ * @author Alex Lee
+ * @author Evan Tang
+ *
+ * @version 1.0
+ */
+public final class ConcurrentBookStore
+{
+    private final BookStore[] copies;
+    private final ReadIndicator[] readIndicators;
+    private final Object writeLock;
+
+    private volatile int publishedCopy;
+    private volatile int readIndicatorInUse;
+
+    /**
+     * Creates the bookstore, keeping the novels on the heap.
+     *
+     * @param bookStoreName name of the bookstore
+     * @param novels novels in the bookstore
+     */
+    public ConcurrentBookStore(final String bookStoreName, final List<Novel> novels)
+    {
+        this(bookStoreName, novels, StorageMode.HEAP);
+    }
+
+    /**
+     * Creates the bookstore with the chosen storage.
+     *
+     * @param bookStoreName name of the bookstore
+     * @param novels novels in the bookstore
+     * @param storageMode where to keep the novels
+     */
+    public ConcurrentBookStore(final String bookStoreName,
+                               final List<Novel> novels,
+                               final StorageMode storageMode)
+    {
+        copies = new BookStore[] {
+                new BookStore(bookStoreName, novels, storageMode),
+                new BookStore(bookStoreName, novels, storageMode)
+        };
+        readIndicators = new ReadIndicator[] {new ReadIndicator(), new ReadIndicator()};
+        writeLock = new Object();
+        publishedCopy = 0;
+        readIndicatorInUse = 0;
+    }
+
+    /**
+     * Runs a query against the current catalog without blocking. The query
+     * must only read from the bookstore it is given.
+     *
+     * @param query the query to run
+     * @param <R> type of the result
+     *
+     * @return the result of the query
+     */
+    public <R> R read(final Function<BookStore, R> query)
+    {
+        final ReadIndicator indicator;
+        indicator = readIndicators[readIndicatorInUse];
+
+        indicator.arrive();
+        try
+        {
+            return query.apply(copies[publishedCopy]);
+        }
+        finally
+        {
+            indicator.depart();
+        }
+    }
+
+    /**
+     * Applies a change to the catalog. Readers see either none of the change
+     * or all of it. The change is applied to both copies, so it must do the
+     * same thing each time it runs.
+     *
+     * @param change the change to apply
+     */
+    public void update(final Consumer<BookStore> change)
+    {
+        synchronized(writeLock)
+        {
+            final int published;
+            published = publishedCopy;
+
+            change.accept(copies[1 - published]);
+            publishedCopy = 1 - published;
+
+            waitForReadersToLeave();
+            change.accept(copies[published]);
+        }
+    }
+
+    /**
+     * Adds a novel to the bookstore.
+     *
+     * @param novel the novel to add
+     */
+    public void addNovel(final Novel novel)
+    {
+        if(novel == null)
+        {
+            throw new IllegalArgumentException("novel must be provided");
+        }
+
+        update(store -> store.addNovel(novel));
+    }
+
+    /**
+     * Removes one copy of a novel from the bookstore.
+     *
+     * @param novel the novel to remove
+     *
+     * @return true if a copy was removed, false if the bookstore did not have it
+     */
+    public boolean removeNovel(final Novel novel)
+    {
+        if(novel == null)
+        {
+            throw new IllegalArgumentException("novel must be provided");
+        }
+
+        final boolean[] removed = new boolean[1];
+
+        update(store -> removed[0] = store.removeNovel(novel));
+        return removed[0];
+    }
+
+    /**
+     * Reclaims the slots of removed novels in both copies. Removing novels
+     * already does this once removed slots outnumber live ones.
+     */
+    public void compact()
+    {
+        update(BookStore::compact);
+    }
+
+    /**
+     * Returns all novels as they stood at one moment.
+     *
+     * @return unmodifiable snapshot of the novels
+     */
+    public List<Novel> getAllNovels()
+    {
+        return read(BookStore::getAllNovels);
+    }
+
+    /**
+     * Counts how many books contain specific word.
+     *
+     * @param word specific word to be found
+     *
+     * @return number of books containing the word
+     */
+    public int howManyBooksContain(final String word)
+    {
+        return read(store -> store.howManyBooksContain(word));
+    }
+
+    /**
+     * Calculate the percentage of the book were written between these two years.
+     *
+     * @param first left bound of the year
+     * @param last right bound of the year
+     *
+     * @return percentage of the book
+     */
+    public double whichPercentWrittenBetween(final int first, final int last)
+    {
+        return read(store -> store.whichPercentWrittenBetween(first, last));
+    }
+
+    /**
+     * Checks if there is a book that is written in specific year.
+     *
+     * @param year specific year the book is published
+     *
+     * @return true if there is one, false otherwise
+     */
+    public boolean isThereABookWrittenBetween(final int year)
+    {
+        return read(store -> store.isThereABookWrittenBetween(year));
+    }
+
+    /**
+     * Returns the oldest book in the bookstore.
+     *
+     * @return the oldest book, or null if there are none
+     */
+    public Novel getOldestBook()
+    {
+        return read(BookStore::getOldestBook);
+    }
+
+    /**
+     * Returns a List of all books whose title is this length
+     *
+     * @param titleLength desired length of the title
+     *
+     * @return desired list of novel
+     */
+    public List<Novel> getBooksThisLength(final int titleLength)
+    {
+        return read(store -> store.getBooksThisLength(titleLength));
+    }
+
+    /**
+     * Moves new readers to the other read indicator and waits until no reader
+     * can still be using the copy that was just unpublished.
+     */
+    private void waitForReadersToLeave()
+    {
+        final int previous;
+        final int next;
+
+        previous = readIndicatorInUse;
+        next = 1 - previous;
+
+        waitUntilEmpty(readIndicators[next]);
+        readIndicatorInUse = next;
+        waitUntilEmpty(readIndicators[previous]);
+    }
+
+    private static void waitUntilEmpty(final ReadIndicator indicator)
+    {
+        while(!indicator.isEmpty())
+        {
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Counts readers in and out without contention between them.
+     */
+    private static final class ReadIndicator
+    {
+        private final LongAdder arrivals = new LongAdder();
+        private final LongAdder departures = new LongAdder();
+
+        private void arrive()
+        {
+            arrivals.increment();
+        }
+
+        private void depart()
+        {
+            departures.increment();
+        }
+
+        private boolean isEmpty()
+        {
+            // read departures first so a reader passing through is never missed
+            final long departed = departures.sum();
+            return departed == arrivals.sum();
+        }
+    }
+}
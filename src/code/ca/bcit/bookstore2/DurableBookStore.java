@@ -0,0 +1,513 @@
+package ca.bcit.bookstore2;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A bookstore whose changes survive a restart.
+ *
+ * The catalog lives in a directory as a snapshot, written as a catalog
+ * file, and a log of the novels added and removed since that snapshot.
+ * Each change is appended to the log before it is applied, and the log is
+ * forced to disk once every syncEvery changes, so a crash loses at most
+ * the changes since the last sync. Once the log holds snapshotEvery
+ * changes, the catalog is written out as a new, compacted snapshot and the
+ * log starts again empty. Opening the directory maps the newest snapshot,
+ * checks it against its checksums, and replays its log.
+ * <pre>
+ *   catalog-6.snapshot    catalog as of the sixth snapshot
+ *   catalog-6.log         changes made after the sixth snapshot
+ *   catalog-7.snapshot    catalog as of the seventh snapshot
+ *   catalog-7.log         changes made after the seventh snapshot
+ * </pre>
+ * A snapshot only appears under its final name once it is complete, and
+ * files of older generations are deleted only after that, so a crash at
+ * any point leaves one complete snapshot and the log that goes with it.
+ * The generation before the newest is kept as well, which costs a second
+ * copy of the catalog on disk: if the newest snapshot fails its checks,
+ * the previous one and both logs rebuild the catalog, which is then
+ * written out as a fresh snapshot. If no snapshot passes, opening fails
+ * rather than serving a damaged catalog.
+ *
+ * Like BookStore, a DurableBookStore is not safe for concurrent changes.
+ * Queries go to the bookstore returned by getBookStore; changes must go
+ * through this class so that they are logged.
+ *
+ * @author Alex Lee
+ * @author Evan Tang
+ *
+ * @version 1.0
+ */
+public final class DurableBookStore implements AutoCloseable
+{
+    /**
+     * Default number of changes gathered before the log is forced to disk.
+     */
+    public static final int DEFAULT_SYNC_EVERY = 64;
+
+    /**
+     * Default number of logged changes that triggers a new snapshot.
+     */
+    public static final int DEFAULT_SNAPSHOT_EVERY = 1_000_000;
+
+    private static final Pattern FILE_NAME = Pattern.compile("catalog-(\\d+)\\.(snapshot|log)");
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    private final Path directory;
+    private final int syncEvery;
+    private final int snapshotEvery;
+    private final BookStore bookStore;
+    private final long replayedRecords;
+    private long generation;
+    private CatalogLog log;
+
+    private DurableBookStore(final Path directory,
+                             final int syncEvery,
+                             final int snapshotEvery,
+                             final BookStore bookStore,
+                             final long generation,
+                             final CatalogLog log,
+                             final long replayedRecords)
+    {
+        this.directory = directory;
+        this.syncEvery = syncEvery;
+        this.snapshotEvery = snapshotEvery;
+        this.bookStore = bookStore;
+        this.generation = generation;
+        this.log = log;
+        this.replayedRecords = replayedRecords;
+    }
+
+    /**
+     * Opens the catalog in a directory with the default sync and snapshot
+     * intervals, creating it from a list of novels if the directory holds
+     * no snapshot yet.
+     *
+     * @param directory directory holding the catalog
+     * @param bookStoreName name of a new bookstore
+     * @param initialNovels novels of a new bookstore
+     *
+     * @return the bookstore
+     *
+     * @throws IOException if the catalog cannot be read or created
+     */
+    public static DurableBookStore open(final Path directory,
+                                        final String bookStoreName,
+                                        final List<Novel> initialNovels) throws IOException
+    {
+        return open(directory, bookStoreName, initialNovels, DEFAULT_SYNC_EVERY, DEFAULT_SNAPSHOT_EVERY);
+    }
+
+    /**
+     * Opens the catalog in a directory, creating it from a list of novels
+     * if the directory holds no snapshot yet.
+     *
+     * @param directory directory holding the catalog
+     * @param bookStoreName name of a new bookstore
+     * @param initialNovels novels of a new bookstore
+     * @param syncEvery number of changes gathered before the log is forced
+     *                  to disk; 1 makes every change durable before it returns
+     * @param snapshotEvery number of logged changes that triggers a new snapshot
+     *
+     * @return the bookstore
+     *
+     * @throws IOException if the catalog cannot be read or created
+     */
+    public static DurableBookStore open(final Path directory,
+                                        final String bookStoreName,
+                                        final List<Novel> initialNovels,
+                                        final int syncEvery,
+                                        final int snapshotEvery) throws IOException
+    {
+        if(directory == null)
+        {
+            throw new IllegalArgumentException("directory must be provided");
+        }
+
+        if(syncEvery < 1 || snapshotEvery < 1)
+        {
+            throw new IllegalArgumentException("syncEvery and snapshotEvery must be positive");
+        }
+
+        Files.createDirectories(directory);
+        deleteTemporaryFiles(directory);
+
+        final List<Long> snapshots;
+        snapshots = snapshotGenerations(directory);
+
+        if(snapshots.isEmpty())
+        {
+            final BookStore created;
+            created = new BookStore(bookStoreName, initialNovels);
+
+            writeSnapshot(directory, created, 1);
+            return new DurableBookStore(directory, syncEvery, snapshotEvery, created, 1,
+                    CatalogLog.create(logPath(directory, 1), syncEvery), 0);
+        }
+
+        final long newest;
+        final IOException refused;
+
+        newest = snapshots.get(0);
+        refused = new IOException("no snapshot in " + directory + " passes its checks");
+
+        for(final long candidate : snapshots)
+        {
+            final Path snapshotPath;
+            final BookStore loaded;
+
+            snapshotPath = snapshotPath(directory, candidate);
+
+            try
+            {
+                loaded = CatalogFile.load(snapshotPath, true);
+            }
+            catch(final IOException e)
+            {
+                refused.addSuppressed(new IOException(snapshotPath + ": " + e.getMessage(), e));
+                continue;
+            }
+            return recover(directory, syncEvery, snapshotEvery, loaded, candidate, newest);
+        }
+        throw refused;
+    }
+
+    /**
+     * Brings a loaded snapshot up to date by replaying its log and those of
+     * every newer generation, and opens the newest log for appending. A
+     * catalog rebuilt from an older snapshot is written out at once, so that
+     * the damaged one is no longer the newest.
+     */
+    private static DurableBookStore recover(final Path directory,
+                                            final int syncEvery,
+                                            final int snapshotEvery,
+                                            final BookStore loaded,
+                                            final long loadedGeneration,
+                                            final long newest) throws IOException
+    {
+        final Path newestLog;
+        final CatalogLog log;
+        long replayed;
+
+        replayed = 0;
+
+        for(long older = loadedGeneration; older < newest; older++)
+        {
+            final Path olderLog;
+            olderLog = logPath(directory, older);
+
+            if(!Files.exists(olderLog))
+            {
+                throw new IOException(snapshotPath(directory, newest) + " failed its checks and "
+                        + olderLog + " is missing, so the catalog cannot be rebuilt");
+            }
+
+            try(CatalogLog replayedLog = CatalogLog.replay(olderLog, syncEvery,
+                    (operation, novel) -> apply(loaded, operation, novel)))
+            {
+                replayed += replayedLog.recordCount();
+            }
+        }
+
+        newestLog = logPath(directory, newest);
+
+        if(Files.exists(newestLog))
+        {
+            log = CatalogLog.replay(newestLog, syncEvery, (operation, novel) -> apply(loaded, operation, novel));
+        }
+        else
+        {
+            log = CatalogLog.create(newestLog, syncEvery);
+        }
+        replayed += log.recordCount();
+
+        final DurableBookStore durable;
+        durable = new DurableBookStore(directory, syncEvery, snapshotEvery, loaded, newest, log, replayed);
+
+        if(loadedGeneration < newest)
+        {
+            try
+            {
+                durable.snapshot();
+                deleteGenerationsBefore(directory, durable.generation);
+            }
+            catch(final IOException | RuntimeException e)
+            {
+                durable.close();
+                throw e;
+            }
+        }
+        else
+        {
+            deleteGenerationsBefore(directory, newest - 1);
+        }
+        return durable;
+    }
+
+    /**
+     * Returns the bookstore to query. Changing it directly bypasses the log.
+     *
+     * @return the bookstore
+     */
+    public BookStore getBookStore()
+    {
+        return bookStore;
+    }
+
+    /**
+     * Logs and adds a novel.
+     *
+     * @param novel the novel to add
+     *
+     * @throws IOException if the change cannot be logged
+     */
+    public void addNovel(final Novel novel) throws IOException
+    {
+        if(novel == null)
+        {
+            throw new IllegalArgumentException("novel must be provided");
+        }
+
+        log.append(CatalogLog.ADD, novel);
+        bookStore.addNovel(novel);
+        snapshotIfDue();
+    }
+
+    /**
+     * Logs and removes one copy of a novel.
+     *
+     * @param novel the novel to remove
+     *
+     * @return true if a copy was removed, false if the bookstore did not have it
+     *
+     * @throws IOException if the change cannot be logged
+     */
+    public boolean removeNovel(final Novel novel) throws IOException
+    {
+        if(novel == null)
+        {
+            throw new IllegalArgumentException("novel must be provided");
+        }
+
+        final boolean removed;
+
+        log.append(CatalogLog.REMOVE, novel);
+        removed = bookStore.removeNovel(novel);
+        snapshotIfDue();
+
+        return removed;
+    }
+
+    /**
+     * Forces every logged change to disk.
+     *
+     * @throws IOException if the log cannot be written
+     */
+    public void sync() throws IOException
+    {
+        log.sync();
+    }
+
+    /**
+     * Writes the catalog as a new snapshot, leaving out removed novels, and
+     * starts an empty log. The generation before the new one is kept.
+     *
+     * @throws IOException if the snapshot cannot be written
+     */
+    public void snapshot() throws IOException
+    {
+        final long next;
+        next = generation + 1;
+
+        // until the new snapshot is in place the current log must stay complete
+        log.sync();
+        writeSnapshot(directory, bookStore, next);
+        log.close();
+        log = CatalogLog.create(logPath(directory, next), syncEvery);
+        generation = next;
+
+        // the bookstore may still map the snapshot it was opened from
+        bookStore.detachStorage();
+        deleteGenerationsBefore(directory, next - 1);
+    }
+
+    /**
+     * Returns the number of changes replayed from the log when the catalog
+     * was opened.
+     *
+     * @return number of replayed changes
+     */
+    public long getReplayedRecords()
+    {
+        return replayedRecords;
+    }
+
+    /**
+     * Returns the number of changes logged since the last snapshot.
+     *
+     * @return number of logged changes
+     */
+    public long getLogRecords()
+    {
+        return log.recordCount();
+    }
+
+    /**
+     * Returns the generation of the current snapshot.
+     *
+     * @return the generation, counting from one
+     */
+    public long getGeneration()
+    {
+        return generation;
+    }
+
+    /**
+     * Forces every logged change to disk and closes the log.
+     *
+     * @throws IOException if the log cannot be written
+     */
+    @Override
+    public void close() throws IOException
+    {
+        log.close();
+    }
+
+    private void snapshotIfDue() throws IOException
+    {
+        if(log.recordCount() >= snapshotEvery)
+        {
+            snapshot();
+        }
+    }
+
+    private static void apply(final BookStore bookStore, final byte operation, final Novel novel)
+    {
+        if(operation == CatalogLog.ADD)
+        {
+            bookStore.addNovel(novel);
+        }
+        else if(operation == CatalogLog.REMOVE)
+        {
+            bookStore.removeNovel(novel);
+        }
+        else
+        {
+            throw new IllegalStateException("unknown catalog log operation " + operation);
+        }
+    }
+
+    /**
+     * Writes a snapshot under a temporary name, then renames it into place
+     * so that it only appears once it is complete.
+     */
+    private static void writeSnapshot(final Path directory,
+                                      final BookStore bookStore,
+                                      final long generation) throws IOException
+    {
+        final Path finished;
+        final Path temporary;
+
+        finished = snapshotPath(directory, generation);
+        temporary = directory.resolve(finished.getFileName() + TEMPORARY_SUFFIX);
+
+        CatalogFile.write(bookStore, temporary);
+        Files.move(temporary, finished, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory(directory);
+    }
+
+    /**
+     * Forces the directory entry of a rename to disk. Some platforms cannot
+     * open a directory, and there the rename is left to the file system.
+     */
+    private static void syncDirectory(final Path directory)
+    {
+        try(FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ))
+        {
+            channel.force(true);
+        }
+        catch(final IOException e)
+        {
+            // not supported on this platform
+        }
+    }
+
+    /**
+     * Returns the generations of every snapshot, newest first.
+     */
+    private static List<Long> snapshotGenerations(final Path directory) throws IOException
+    {
+        final List<Long> generations;
+        generations = new ArrayList<>();
+
+        try(DirectoryStream<Path> files = Files.newDirectoryStream(directory))
+        {
+            for(final Path file : files)
+            {
+                final Matcher matcher;
+                matcher = FILE_NAME.matcher(file.getFileName().toString());
+
+                if(matcher.matches() && "snapshot".equals(matcher.group(2)))
+                {
+                    generations.add(Long.parseLong(matcher.group(1)));
+                }
+            }
+        }
+        generations.sort(Comparator.reverseOrder());
+        return generations;
+    }
+
+    /**
+     * Deletes the snapshots and logs of every generation before one.
+     */
+    private static void deleteGenerationsBefore(final Path directory, final long generation) throws IOException
+    {
+        try(DirectoryStream<Path> files = Files.newDirectoryStream(directory))
+        {
+            for(final Path file : files)
+            {
+                final Matcher matcher;
+                matcher = FILE_NAME.matcher(file.getFileName().toString());
+
+                if(matcher.matches() && Long.parseLong(matcher.group(1)) < generation)
+                {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Deletes snapshots left half written by a crash.
+     */
+    private static void deleteTemporaryFiles(final Path directory) throws IOException
+    {
+        try(DirectoryStream<Path> files = Files.newDirectoryStream(directory, "catalog-*" + TEMPORARY_SUFFIX))
+        {
+            for(final Path file : files)
+            {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private static Path snapshotPath(final Path directory, final long generation)
+    {
+        return directory.resolve("catalog-" + generation + ".snapshot");
+    }
+
+    private static Path logPath(final Path directory, final long generation)
+    {
+        return directory.resolve("catalog-" + generation + ".log");
+    }
+}
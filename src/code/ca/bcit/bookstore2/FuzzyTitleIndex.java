@@ -0,0 +1,697 @@
+package ca.bcit.bookstore2;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Typo-tolerant index over the words of the titles.
+ *
+ * Titles are case-folded and split into terms at every character that is
+ * not a letter or digit, so "Catch-22" holds the terms "catch" and "22".
+ * Each distinct term is kept once in a trie with a posting list of the
+ * slots whose title contains it. A query term is matched against the
+ * dictionary by walking the trie with one row of the edit distance table
+ * per node, abandoning a branch once no extension of it can come within
+ * the allowed number of edits. Insertions, deletions, substitutions and
+ * swaps of two neighbouring letters each count as one edit, so "grate"
+ * is one edit from "great". The cost depends on the size of the dictionary
+ * and the query, not on the number of titles.
+ *
+ * Before the walk, a Bloom filter rules out query terms that cannot match.
+ * It holds every string made by deleting up to two letters of a dictionary
+ * term, together with how many were deleted. Each edit deletes at most one
+ * letter from either side, so a term within n edits of a dictionary term
+ * shares a string with it that takes at most n deletions on both sides;
+ * when none of the query term's deletions is in the filter, no term is.
+ *
+ * The query word with the fewest matching titles drives the search. Its
+ * matches are read closest first, so the first time a title is seen gives
+ * its closest match for that word, and the search stops once the titles
+ * left cannot outscore the ones already kept.
+ *
+ * Titles are ranked by the sum over query terms of 1 - edits / (length + 1)
+ * for the closest matching term in the title, so exact words count most.
+ *
+ * @author Alex Lee
+ * @author Evan Tang
+ *
+ * @version 1.0
+ */
+final class FuzzyTitleIndex
+{
+    private static final int EXACT_ONLY_LENGTH = 2;
+    private static final int ONE_EDIT_LENGTH = 5;
+    private static final int MAX_EDITS = 2;
+    private static final int INITIAL_DELETION_CAPACITY = 1 << 16;
+    private static final double DELETION_FALSE_POSITIVE_RATE = 0.001;
+    private static final long DELETION_HASH_MULTIPLIER = 0x100000001B3L;
+    private static final int NO_DELETION = -1;
+    private static final int INITIAL_SLOTS = 64;
+    private static final int NO_TERM = -1;
+    private static final char NO_LABEL = 0;
+
+    private final Map<String, Integer> termIds;
+    private final List<IntList> postings;
+    private final TrieNode root;
+    private int[] titleLengths;
+    private BloomFilter deletions;
+    private int longestTerm;
+
+    /**
+     * Creates an empty index.
+     */
+    FuzzyTitleIndex()
+    {
+        termIds = new HashMap<>();
+        postings = new ArrayList<>();
+        root = new TrieNode();
+        titleLengths = new int[INITIAL_SLOTS];
+        deletions = new BloomFilter(INITIAL_DELETION_CAPACITY, DELETION_FALSE_POSITIVE_RATE);
+        longestTerm = 0;
+    }
+
+    /**
+     * Adds a title to the index. Slots must be added in increasing order.
+     *
+     * @param slot catalog slot of the novel
+     * @param title title of the novel
+     */
+    void add(final int slot, final String title)
+    {
+        if(slot >= titleLengths.length)
+        {
+            titleLengths = Arrays.copyOf(titleLengths, Math.max(slot + 1, titleLengths.length * 2));
+        }
+        titleLengths[slot] = title.length();
+
+        for(final String term : terms(title))
+        {
+            Integer termId = termIds.get(term);
+
+            if(termId == null)
+            {
+                termId = postings.size();
+                termIds.put(term, termId);
+                postings.add(new IntList());
+                root.insert(term, termId);
+                addDeletions(term);
+                longestTerm = Math.max(longestTerm, term.length());
+            }
+            postings.get(termId).add(slot);
+        }
+    }
+
+    /**
+     * Removes a title from the index. Its terms stay in the dictionary
+     * with empty posting lists.
+     *
+     * @param slot catalog slot of the novel
+     * @param title title of the novel
+     */
+    void remove(final int slot, final String title)
+    {
+        for(final String term : terms(title))
+        {
+            final Integer termId = termIds.get(term);
+
+            if(termId != null)
+            {
+                postings.get(termId).removeSorted(slot);
+            }
+        }
+    }
+
+    /**
+     * Finds the titles that best match a query, allowing a few typing
+     * mistakes in each word. Candidates come from the query word with the
+     * fewest matching titles; the other words only add to their scores.
+     *
+     * @param query words to look for
+     * @param limit most slots to return
+     * @param slotCount number of catalog slots
+     *
+     * @return matching slots, best first; ties go to shorter titles, then earlier ones
+     */
+    List<Integer> search(final String query,
+                         final int limit,
+                         final int slotCount)
+    {
+        final List<String> queryTerms;
+        final List<IntList[]> matches;
+
+        queryTerms = new ArrayList<>(terms(query));
+        matches = new ArrayList<>(queryTerms.size());
+
+        int rarest = NO_TERM;
+        long rarestPostings = Long.MAX_VALUE;
+
+        for(final String term : queryTerms)
+        {
+            final IntList[] termMatches;
+            long termPostings = 0;
+
+            termMatches = matchTerm(term);
+            matches.add(termMatches);
+
+            for(final IntList termIdsAtEdits : termMatches)
+            {
+                for(int i = 0; i < termIdsAtEdits.size(); i++)
+                {
+                    termPostings += postings.get(termIdsAtEdits.get(i)).size();
+                }
+            }
+
+            if(termPostings > 0 && termPostings < rarestPostings)
+            {
+                rarest = matches.size() - 1;
+                rarestPostings = termPostings;
+            }
+        }
+
+        if(rarest == NO_TERM || limit == 0)
+        {
+            return new ArrayList<>();
+        }
+
+        final PriorityQueue<Hit> best;
+        final BitSet seen;
+        final IntList[] driver;
+        final boolean mayRepeat;
+
+        best = new PriorityQueue<>(Hit.BEST_FIRST.reversed());
+        seen = new BitSet(slotCount);
+        driver = matches.get(rarest);
+        mayRepeat = matchCount(driver) > 1;
+
+        for(int edits = 0; edits <= MAX_EDITS; edits++)
+        {
+            final double driverScore;
+            driverScore = termScore(queryTerms.get(rarest), edits);
+
+            // every other word adds at most 1, so no title left can make it in
+            if(best.size() == limit && driverScore + queryTerms.size() - 1 < best.peek().score)
+            {
+                break;
+            }
+
+            for(int i = 0; i < driver[edits].size(); i++)
+            {
+                final IntList slots;
+                slots = postings.get(driver[edits].get(i));
+
+                for(int j = 0; j < slots.size(); j++)
+                {
+                    final int slot;
+                    slot = slots.get(j);
+
+                    if(mayRepeat)
+                    {
+                        if(seen.get(slot))
+                        {
+                            continue;
+                        }
+                        seen.set(slot);
+                    }
+
+                    offer(best, limit, slot, rarest, edits, queryTerms, matches);
+                }
+            }
+        }
+
+        final List<Hit> ranked;
+        final List<Integer> slots;
+
+        ranked = new ArrayList<>(best);
+        ranked.sort(Hit.BEST_FIRST);
+        slots = new ArrayList<>(ranked.size());
+
+        for(final Hit hit : ranked)
+        {
+            slots.add(hit.slot);
+        }
+        return slots;
+    }
+
+    /**
+     * Finds the dictionary terms close enough to a query term, as lists of
+     * term ids indexed by their edit distance.
+     */
+    private IntList[] matchTerm(final String term)
+    {
+        final int edits;
+        final IntList[] found;
+
+        edits = allowedEdits(term);
+        found = new IntList[MAX_EDITS + 1];
+
+        for(int i = 0; i < found.length; i++)
+        {
+            found[i] = new IntList();
+        }
+
+        if(edits == 0)
+        {
+            final Integer termId = termIds.get(term);
+
+            if(termId != null && !postings.get(termId).isEmpty())
+            {
+                found[0].add(termId);
+            }
+            return found;
+        }
+
+        if(term.length() - edits > longestTerm || !deletionsMayMatch(term, edits))
+        {
+            return found;
+        }
+
+        final int[] firstRow;
+        firstRow = new int[term.length() + 1];
+
+        for(int i = 0; i < firstRow.length; i++)
+        {
+            firstRow[i] = i;
+        }
+
+        for(int i = 0; i < root.labels.length; i++)
+        {
+            walk(root.children[i], root.labels[i], NO_LABEL, term, null, firstRow, edits, found);
+        }
+        return found;
+    }
+
+    /**
+     * Extends the edit distance table by one trie node and recurses into its
+     * children while some extension can still be within the allowed edits.
+     * A swap reaches back two rows, so a branch is only abandoned once both
+     * of its last two rows are out of reach.
+     */
+    private void walk(final TrieNode node,
+                      final char label,
+                      final char previousLabel,
+                      final String term,
+                      final int[] rowBefore,
+                      final int[] previousRow,
+                      final int edits,
+                      final IntList[] found)
+    {
+        final int[] row;
+        int smallest;
+        int previousSmallest;
+
+        row = new int[previousRow.length];
+        row[0] = previousRow[0] + 1;
+        smallest = row[0];
+        previousSmallest = previousRow[0];
+
+        for(int i = 1; i < row.length; i++)
+        {
+            final int substitution;
+            substitution = previousRow[i - 1] + (term.charAt(i - 1) == label ? 0 : 1);
+
+            row[i] = Math.min(substitution, Math.min(row[i - 1], previousRow[i]) + 1);
+
+            if(rowBefore != null && i > 1 && term.charAt(i - 1) == previousLabel && term.charAt(i - 2) == label)
+            {
+                row[i] = Math.min(row[i], rowBefore[i - 2] + 1);
+            }
+            smallest = Math.min(smallest, row[i]);
+            previousSmallest = Math.min(previousSmallest, previousRow[i]);
+        }
+
+        if(smallest > edits && previousSmallest >= edits)
+        {
+            return;
+        }
+
+        if(node.termId != NO_TERM && row[term.length()] <= edits && !postings.get(node.termId).isEmpty())
+        {
+            found[row[term.length()]].add(node.termId);
+        }
+
+        for(int i = 0; i < node.labels.length; i++)
+        {
+            walk(node.children[i], node.labels[i], label, term, previousRow, row, edits, found);
+        }
+    }
+
+    /**
+     * Scores a slot against every query term from the posting lists and
+     * keeps it if it ranks among the best. The driving term's closest
+     * match is already known.
+     */
+    private void offer(final PriorityQueue<Hit> best,
+                       final int limit,
+                       final int slot,
+                       final int driver,
+                       final int driverEdits,
+                       final List<String> queryTerms,
+                       final List<IntList[]> matches)
+    {
+        double score = termScore(queryTerms.get(driver), driverEdits);
+        int totalEdits = driverEdits;
+
+        for(int i = 0; i < queryTerms.size(); i++)
+        {
+            final int closest;
+
+            if(i == driver)
+            {
+                continue;
+            }
+            closest = closestEdits(matches.get(i), slot);
+
+            if(closest != NO_TERM)
+            {
+                score += termScore(queryTerms.get(i), closest);
+                totalEdits += closest;
+            }
+        }
+
+        if(best.size() < limit)
+        {
+            best.add(new Hit(slot, score, totalEdits, titleLengths[slot]));
+        }
+        else if(Hit.compare(score, totalEdits, titleLengths[slot], slot, best.peek()) < 0)
+        {
+            // only allocate for the few slots that make it in
+            best.poll();
+            best.add(new Hit(slot, score, totalEdits, titleLengths[slot]));
+        }
+    }
+
+    /**
+     * Returns the fewest edits of any match in a slot's title, or NO_TERM
+     * if the title has none.
+     */
+    private int closestEdits(final IntList[] termMatches, final int slot)
+    {
+        for(int edits = 0; edits < termMatches.length; edits++)
+        {
+            for(int i = 0; i < termMatches[edits].size(); i++)
+            {
+                if(postings.get(termMatches[edits].get(i)).containsSorted(slot))
+                {
+                    return edits;
+                }
+            }
+        }
+        return NO_TERM;
+    }
+
+    private static double termScore(final String queryTerm, final int edits)
+    {
+        return 1.0 - (double) edits / (queryTerm.length() + 1);
+    }
+
+    private static int matchCount(final IntList[] termMatches)
+    {
+        int count = 0;
+
+        for(final IntList termIdsAtEdits : termMatches)
+        {
+            count += termIdsAtEdits.size();
+        }
+        return count;
+    }
+
+    /**
+     * Checks the query term's deletions against the dictionary's. False
+     * means no dictionary term can be within the allowed edits.
+     */
+    private boolean deletionsMayMatch(final String term, final int edits)
+    {
+        return forEachDeletion(term, edits, (hash, deleted) -> {
+            for(int termDeletions = 0; termDeletions <= edits; termDeletions++)
+            {
+                if(deletions.mightContain(deletionKey(hash, termDeletions)))
+                {
+                    return true;
+                }
+            }
+            return false;
+        });
+    }
+
+    private void addDeletions(final String term)
+    {
+        if(deletions.isFull())
+        {
+            rebuildDeletions();
+        }
+
+        forEachDeletion(term, MAX_EDITS, (hash, deleted) -> {
+            deletions.add(deletionKey(hash, deleted));
+            return false;
+        });
+    }
+
+    /**
+     * Replaces the deletion filter with one twice as large, keeping its
+     * false-positive rate down as the dictionary grows.
+     */
+    private void rebuildDeletions()
+    {
+        deletions = new BloomFilter(deletions.capacity() * 2, DELETION_FALSE_POSITIVE_RATE);
+
+        for(final String term : termIds.keySet())
+        {
+            forEachDeletion(term, MAX_EDITS, (hash, deleted) -> {
+                deletions.add(deletionKey(hash, deleted));
+                return false;
+            });
+        }
+    }
+
+    /**
+     * Visits the hash of every string made by deleting no more than the
+     * given number of letters of a term, up to two, until the visitor
+     * asks to stop.
+     *
+     * @return true if the visitor asked to stop
+     */
+    private static boolean forEachDeletion(final String term,
+                                           final int maxDeletions,
+                                           final DeletionVisitor visitor)
+    {
+        if(visitor.visit(deletionHash(term, NO_DELETION, NO_DELETION), 0))
+        {
+            return true;
+        }
+
+        for(int first = 0; first < term.length() && maxDeletions >= 1; first++)
+        {
+            if(visitor.visit(deletionHash(term, first, NO_DELETION), 1))
+            {
+                return true;
+            }
+
+            for(int second = first + 1; second < term.length() && maxDeletions >= 2; second++)
+            {
+                if(visitor.visit(deletionHash(term, first, second), 2))
+                {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Hashes a term with the letters at up to two positions left out.
+     */
+    private static long deletionHash(final String term, final int first, final int second)
+    {
+        long hash = 0;
+
+        for(int i = 0; i < term.length(); i++)
+        {
+            if(i != first && i != second)
+            {
+                hash = hash * DELETION_HASH_MULTIPLIER + term.charAt(i);
+            }
+        }
+        return hash;
+    }
+
+    private static long deletionKey(final long hash, final int deleted)
+    {
+        return hash * (MAX_EDITS + 1) + deleted;
+    }
+
+    /**
+     * Returns how many edits a query term of this length may have: none for
+     * very short terms, where one edit would match almost anything.
+     */
+    private static int allowedEdits(final String term)
+    {
+        if(term.length() <= EXACT_ONLY_LENGTH)
+        {
+            return 0;
+        }
+        return term.length() <= ONE_EDIT_LENGTH ? 1 : MAX_EDITS;
+    }
+
+    /**
+     * Splits text into its distinct case-folded terms, in order.
+     */
+    private static Set<String> terms(final String text)
+    {
+        final String folded;
+        final Set<String> terms;
+        int start = -1;
+
+        folded = TitleIndex.fold(text);
+        terms = new LinkedHashSet<>();
+
+        for(int i = 0; i <= folded.length(); i++)
+        {
+            final boolean inTerm;
+            inTerm = i < folded.length() && Character.isLetterOrDigit(folded.charAt(i));
+
+            if(inTerm && start < 0)
+            {
+                start = i;
+            }
+            else if(!inTerm && start >= 0)
+            {
+                terms.add(folded.substring(start, i));
+                start = -1;
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * Receives the strings made by deleting letters of a term.
+     */
+    private interface DeletionVisitor
+    {
+        /**
+         * Handles one string.
+         *
+         * @param hash hash of the string
+         * @param deleted number of letters deleted to make it
+         *
+         * @return true to stop visiting
+         */
+        boolean visit(long hash, int deleted);
+    }
+
+    /**
+     * One node of the term trie, with its children kept in label order.
+     */
+    private static final class TrieNode
+    {
+        private static final char[] NO_LABELS = new char[0];
+        private static final TrieNode[] NO_CHILDREN = new TrieNode[0];
+
+        private char[] labels = NO_LABELS;
+        private TrieNode[] children = NO_CHILDREN;
+        private int termId = NO_TERM;
+
+        /**
+         * Adds a term below this node.
+         */
+        private void insert(final String term, final int id)
+        {
+            TrieNode node = this;
+
+            for(int i = 0; i < term.length(); i++)
+            {
+                node = node.child(term.charAt(i));
+            }
+            node.termId = id;
+        }
+
+        /**
+         * Returns the child for a label, creating it if needed.
+         */
+        private TrieNode child(final char label)
+        {
+            final int index;
+            index = Arrays.binarySearch(labels, label);
+
+            if(index >= 0)
+            {
+                return children[index];
+            }
+
+            final int insertAt;
+            final TrieNode created;
+
+            insertAt = -index - 1;
+            created = new TrieNode();
+
+            final char[] grownLabels = new char[labels.length + 1];
+            final TrieNode[] grownChildren = new TrieNode[children.length + 1];
+
+            System.arraycopy(labels, 0, grownLabels, 0, insertAt);
+            System.arraycopy(labels, insertAt, grownLabels, insertAt + 1, labels.length - insertAt);
+            System.arraycopy(children, 0, grownChildren, 0, insertAt);
+            System.arraycopy(children, insertAt, grownChildren, insertAt + 1, children.length - insertAt);
+            grownLabels[insertAt] = label;
+            grownChildren[insertAt] = created;
+
+            labels = grownLabels;
+            children = grownChildren;
+            return created;
+        }
+    }
+
+    /**
+     * A scored title.
+     */
+    private static final class Hit
+    {
+        private static final Comparator<Hit> BEST_FIRST =
+                (first, second) -> compare(first.score, first.edits, first.length, first.slot, second);
+
+        private final int slot;
+        private final double score;
+        private final int edits;
+        private final int length;
+
+        private Hit(final int slot, final double score, final int edits, final int length)
+        {
+            this.slot = slot;
+            this.score = score;
+            this.edits = edits;
+            this.length = length;
+        }
+
+        /**
+         * Compares a scored slot with a hit, negative if the slot ranks first.
+         */
+        private static int compare(final double score,
+                                   final int edits,
+                                   final int length,
+                                   final int slot,
+                                   final Hit other)
+        {
+            if(score != other.score)
+            {
+                return score > other.score ? -1 : 1;
+            }
+
+            if(edits != other.edits)
+            {
+                return Integer.compare(edits, other.edits);
+            }
+
+            if(length != other.length)
+            {
+                return Integer.compare(length, other.length);
+            }
+            return Integer.compare(slot, other.slot);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package ca.bcit.bookstore2;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stores novels as objects in a list on the heap.
+ *
+ * @author Alex Lee
+ * @author Evan Tang
+ *
+ * @version 1.0
+ */
+final class HeapNovelStorage implements NovelStorage
+{
+    private final List<Novel> novels;
+    private int liveCount;
+
+    /**
+     * Creates a storage holding a copy of the given novels.
+     *
+     * @param novels the initial novels
+     */
+    HeapNovelStorage(final List<Novel> novels)
+    {
+        this.novels = new ArrayList<>(novels);
+        this.liveCount = novels.size();
+    }
+
+    @Override
+    public int add(final Novel novel)
+    {
+        novels.add(novel);
+        liveCount++;
+        return novels.size() - 1;
+    }
+
+    @Override
+    public void remove(final int slot)
+    {
+        if(novels.set(slot, null) != null)
+        {
+            liveCount--;
+        }
+    }
+
+    @Override
+    public int slotCount()
+    {
+        return novels.size();
+    }
+
+    @Override
+    public int liveCount()
+    {
+        return liveCount;
+    }
+
+    @Override
+    public boolean isLive(final int slot)
+    {
+        return novels.get(slot) != null;
+    }
+
+    @Override
+    public Novel get(final int slot)
+    {
+        return novels.get(slot);
+    }
+
+    @Override
+    public String getTitle(final int slot)
+    {
+        return novels.get(slot).getTitle();
+    }
+
+    @Override
+    public String getAuthorName(final int slot)
+    {
+        return novels.get(slot).getAuthorName();
+    }
+
+    @Override
+    public int getYearPublished(final int slot)
+    {
+        return novels.get(slot).getYearPublished();
+    }
+
+    @Override
+    public List<Novel> asList()
+    {
+        final List<Novel> live;
+        live = new ArrayList<>(liveCount);
+
+        for(final Novel novel : novels)
+        {
+            if(novel != null)
+            {
+                live.add(novel);
+            }
+        }
+        return live;
+    }
+}
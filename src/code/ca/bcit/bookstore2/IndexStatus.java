@@ -0,0 +1,102 @@
+package ca.bcit.bookstore2;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Snapshot of whether one of a bookstore's indexes is ready, and how long
+ * it took to build.
+ *
+ * @author Alex Lee
+ * @author Evan Tang
+ *
+ * @version 1.0
+ */
+public final class IndexStatus
+{
+    private final String name;
+    private final State state;
+    private final long buildNanos;
+
+    /**
+     * The stages an index goes through.
+     */
+    public enum State
+    {
+        /**
+         * Not built yet; the first query that needs it builds it.
+         */
+        NOT_BUILT,
+
+        /**
+         * Being built in the background; queries scan the catalog or wait.
+         */
+        BUILDING,
+
+        /**
+         * Built and answering queries.
+         */
+        READY
+    }
+
+    /**
+     * Creates the snapshot.
+     *
+     * @param name name of the index
+     * @param state how far the index has got
+     * @param buildNanos how long the build took, or -1 if it is not ready
+     */
+    IndexStatus(final String name, final State state, final long buildNanos)
+    {
+        this.name = name;
+        this.state = state;
+        this.buildNanos = buildNanos;
+    }
+
+    /**
+     * Getter for name.
+     *
+     * @return name of the index
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Getter for state.
+     *
+     * @return how far the index has got
+     */
+    public State getState()
+    {
+        return state;
+    }
+
+    /**
+     * Tells whether the index is answering queries.
+     *
+     * @return true if the index is ready
+     */
+    public boolean isReady()
+    {
+        return state == State.READY;
+    }
+
+    /**
+     * Getter for the build time.
+     *
+     * @return how long the build took in milliseconds, or -1 if it is not ready
+     */
+    public long getBuildMillis()
+    {
+        return buildNanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(buildNanos);
+    }
+
+    @Override
+    public String toString()
+    {
+        return state == State.READY ?
+                name + " ready, built in " + getBuildMillis() + " ms" :
+                name + " " + state.name().toLowerCase().replace('_', ' ');
+    }
+}
@@ -0,0 +1,69 @@
+package ca.bcit.bookstore2;
+
+/**
+ * Outcome of loading novels from delimited text.
+ *
+ * @author Alex Lee
+ * @author Evan Tang
+ *
+ * @version 1.0
+ */
+public final class IngestResult
+{
+    private final BookStore bookStore;
+    private final long acceptedRows;
+    private final long rejectedRows;
+
+    /**
+     * Creates the result.
+     *
+     * @param bookStore the bookstore holding the accepted novels
+     * @param acceptedRows number of rows loaded
+     * @param rejectedRows number of rows written to the reject report
+     */
+    IngestResult(final BookStore bookStore, final long acceptedRows, final long rejectedRows)
+    {
+        this.bookStore = bookStore;
+        this.acceptedRows = acceptedRows;
+        this.rejectedRows = rejectedRows;
+    }
+
+    /**
+     * Getter for the loaded bookstore.
+     *
+     * @return bookstore
+     */
+    public BookStore getBookStore()
+    {
+        return bookStore;
+    }
+
+    /**
+     * Getter for the number of rows loaded.
+     *
+     * @return accepted rows
+     */
+    public long getAcceptedRows()
+    {
+        return acceptedRows;
+    }
+
+    /**
+     * Getter for the number of rows rejected.
+     *
+     * @return rejected rows
+     */
+    public long getRejectedRows()
+    {
+        return rejectedRows;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "IngestResult{" +
+                "acceptedRows=" + acceptedRows +
+                ", rejectedRows=" + rejectedRows +
+                '}';
+    }
+}
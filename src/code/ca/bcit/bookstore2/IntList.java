@@ -0,0 +1,183 @@
+package ca.bcit.bookstore2;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of primitive ints, used for index posting lists.
+ *
+ * @author Alex Lee
+ * @author Evan Tang
+ *
+ * @version 1.0
+ */
+final class IntList
+{
+    private static final int INITIAL_CAPACITY = 4;
+
+    private int[] values;
+    private int size;
+
+    /**
+     * Creates an empty list.
+     */
+    IntList()
+    {
+        values = new int[INITIAL_CAPACITY];
+        size = 0;
+    }
+
+    /**
+     * Appends a value to the end of the list.
+     *
+     * @param value the value to append
+     */
+    void add(final int value)
+    {
+        if(size == values.length)
+        {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = value;
+    }
+
+    /**
+     * Returns the value at a position.
+     *
+     * @param index position in the list
+     *
+     * @return the value
+     */
+    int get(final int index)
+    {
+        return values[index];
+    }
+
+    /**
+     * Inserts a value at a position, shifting later values along.
+     *
+     * @param index position to insert at, from 0 to the size
+     * @param value the value to insert
+     */
+    void insert(final int index, final int value)
+    {
+        if(size == values.length)
+        {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        System.arraycopy(values, index, values, index + 1, size - index);
+        values[index] = value;
+        size++;
+    }
+
+    /**
+     * Removes the value at a position, shifting later values back.
+     *
+     * @param index position of the value to remove
+     */
+    void removeAt(final int index)
+    {
+        System.arraycopy(values, index + 1, values, index, size - index - 1);
+        size--;
+    }
+
+    /**
+     * Appends every value of another list.
+     *
+     * @param other the list to append
+     *
+     * @return this list
+     */
+    IntList addAll(final IntList other)
+    {
+        if(size + other.size > values.length)
+        {
+            values = Arrays.copyOf(values, Math.max(size * 2, size + other.size));
+        }
+        System.arraycopy(other.values, 0, values, size, other.size);
+        size += other.size;
+        return this;
+    }
+
+    /**
+     * Copies the values into a new array.
+     *
+     * @return the values, in list order
+     */
+    int[] toArray()
+    {
+        return Arrays.copyOf(values, size);
+    }
+
+    /**
+     * Returns a cursor over the values, in list order.
+     *
+     * @return the cursor
+     */
+    SlotCursor cursor()
+    {
+        return new SlotCursor()
+        {
+            private int position;
+
+            @Override
+            public int next()
+            {
+                return position < size ? values[position++] : END;
+            }
+        };
+    }
+
+    /**
+     * Returns the number of values in the list.
+     *
+     * @return number of values
+     */
+    int size()
+    {
+        return size;
+    }
+
+    /**
+     * Checks whether the list is empty.
+     *
+     * @return true if there are no values, false otherwise
+     */
+    boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    /**
+     * Checks whether a sorted list contains a value.
+     *
+     * @param value the value to look for
+     *
+     * @return true if the value is present, false otherwise
+     */
+    boolean containsSorted(final int value)
+    {
+        return Arrays.binarySearch(values, 0, size, value) >= 0;
+    }
+
+    /**
+     * Removes a value from a sorted list, keeping it sorted.
+     *
+     * @param value the value to remove
+     *
+     * @return true if the value was removed, false if it was not present
+     */
+    boolean removeSorted(final int value)
+    {
+        final int index;
+        index = Arrays.binarySearch(values, 0, size, value);
+
+        if(index < 0)
+        {
+            return false;
+        }
+
+        System.arraycopy(values, index + 1, values, index, size - index - 1);
+        size--;
+        return true;
+    }
+}
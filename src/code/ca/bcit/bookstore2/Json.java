@@ -0,0 +1,179 @@
+package ca.bcit.bookstore2;
+
+import java.util.List;
+
+/**
+ * Writes query results as JSON text.
+ *
+ * Only what the query server sends is supported: strings, numbers,
+ * booleans, novels, index statuses and lists of them.
+ *
+ * @author Alex Lee
+ * @author Evan Tang
+ *
+ * @version 1.0
+ */
+final class Json
+{
+    private static final int CONTROL_CHARACTER_LIMIT = 0x20;
+
+    private Json()
+    {
+    }
+
+    /**
+     * Writes a string as a quoted, escaped JSON string.
+     *
+     * @param out where to write
+     * @param value the string, or null
+     *
+     * @return out
+     */
+    static StringBuilder string(final StringBuilder out, final String value)
+    {
+        if(value == null)
+        {
+            return out.append("null");
+        }
+
+        out.append('"');
+
+        for(int i = 0; i < value.length(); i++)
+        {
+            final char c;
+            c = value.charAt(i);
+
+            switch(c)
+            {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if(c < CONTROL_CHARACTER_LIMIT)
+                    {
+                        out.append(String.format("\\u%04x", (int) c));
+                    }
+                    else
+                    {
+                        out.append(c);
+                    }
+            }
+        }
+        return out.append('"');
+    }
+
+    /**
+     * Writes a novel as an object with title, author and year fields.
+     *
+     * @param out where to write
+     * @param novel the novel, or null
+     *
+     * @return out
+     */
+    static StringBuilder novel(final StringBuilder out, final Novel novel)
+    {
+        if(novel == null)
+        {
+            return out.append("null");
+        }
+
+        out.append("{\"title\":");
+        string(out, novel.getTitle());
+        out.append(",\"author\":");
+        string(out, novel.getAuthorName());
+        return out.append(",\"year\":").append(novel.getYearPublished()).append('}');
+    }
+
+    /**
+     * Writes a list of strings as an array.
+     *
+     * @param out where to write
+     * @param values the strings
+     *
+     * @return out
+     */
+    static StringBuilder strings(final StringBuilder out, final List<String> values)
+    {
+        out.append('[');
+
+        for(int i = 0; i < values.size(); i++)
+        {
+            if(i > 0)
+            {
+                out.append(',');
+            }
+            string(out, values.get(i));
+        }
+        return out.append(']');
+    }
+
+    /**
+     * Writes a list of novels as an array.
+     *
+     * @param out where to write
+     * @param novels the novels
+     *
+     * @return out
+     */
+    static StringBuilder novels(final StringBuilder out, final List<Novel> novels)
+    {
+        out.append('[');
+
+        for(int i = 0; i < novels.size(); i++)
+        {
+            if(i > 0)
+            {
+                out.append(',');
+            }
+            novel(out, novels.get(i));
+        }
+        return out.append(']');
+    }
+
+    /**
+     * Writes index statuses as an object holding whether every index is
+     * ready and an array of each index's name, state and build time.
+     *
+     * @param out where to write
+     * @param statuses the statuses
+     *
+     * @return out
+     */
+    static StringBuilder indexStatuses(final StringBuilder out, final List<IndexStatus> statuses)
+    {
+        boolean fullyIndexed = true;
+
+        out.append("{\"indexes\":[");
+
+        for(int i = 0; i < statuses.size(); i++)
+        {
+            final IndexStatus status;
+            status = statuses.get(i);
+            fullyIndexed &= status.isReady();
+
+            if(i > 0)
+            {
+                out.append(',');
+            }
+
+            out.append("{\"name\":");
+            string(out, status.getName());
+            out.append(",\"state\":");
+            string(out, status.getState().name());
+            out.append(",\"buildMillis\":").append(status.getBuildMillis()).append('}');
+        }
+        return out.append("],\"fullyIndexed\":").append(fullyIndexed).append('}');
+    }
+}
@@ -0,0 +1,173 @@
+package ca.bcit.bookstore2;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of latencies in nanoseconds.
+ *
+ * Values are counted in log-linear buckets in the style of an HDR
+ * histogram: every power of two is split into sixteen equal buckets, so a
+ * reported percentile is within about six percent of the true value while
+ * the whole range from a nanosecond to centuries fits in under a thousand
+ * counters. Recording is a few atomic increments and never blocks, so
+ * many threads can record at once.
+ *
+ * @author Alex Lee
+ * @author Evan Tang
+ *
+ * @version 1.0
+ */
+final class LatencyHistogram
+{
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR_BUCKETS = 2 * SUB_BUCKETS;
+    private static final int BUCKET_COUNT = LINEAR_BUCKETS + (Long.SIZE - SUB_BUCKET_BITS - 2) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets;
+    private final LongAdder count;
+    private final LongAdder total;
+    private final AtomicLong max;
+
+    /**
+     * Creates an empty histogram.
+     */
+    LatencyHistogram()
+    {
+        buckets = new AtomicLongArray(BUCKET_COUNT);
+        count = new LongAdder();
+        total = new LongAdder();
+        max = new AtomicLong();
+    }
+
+    /**
+     * Records one latency.
+     *
+     * @param nanos the latency in nanoseconds; negative values count as zero
+     */
+    void record(final long nanos)
+    {
+        final long value;
+        value = Math.max(0, nanos);
+
+        buckets.incrementAndGet(bucketOf(value));
+        count.increment();
+        total.add(value);
+
+        if(value > max.get())
+        {
+            max.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    /**
+     * Returns the number of recorded latencies.
+     *
+     * @return the count
+     */
+    long count()
+    {
+        return count.sum();
+    }
+
+    /**
+     * Returns the mean latency.
+     *
+     * @return the mean in nanoseconds, or 0 if nothing was recorded
+     */
+    double mean()
+    {
+        final long recorded;
+        recorded = count.sum();
+
+        return recorded == 0 ? 0 : (double) total.sum() / recorded;
+    }
+
+    /**
+     * Returns the largest latency recorded.
+     *
+     * @return the maximum in nanoseconds
+     */
+    long max()
+    {
+        return max.get();
+    }
+
+    /**
+     * Returns the latency at a percentile, as the highest value of the
+     * bucket holding it.
+     *
+     * @param percentile percentage of recorded latencies, from 0 to 100
+     *
+     * @return the latency in nanoseconds, or 0 if nothing was recorded
+     */
+    long percentile(final double percentile)
+    {
+        final long[] snapshot;
+        long recorded = 0;
+
+        snapshot = new long[BUCKET_COUNT];
+
+        for(int i = 0; i < BUCKET_COUNT; i++)
+        {
+            snapshot[i] = buckets.get(i);
+            recorded += snapshot[i];
+        }
+
+        if(recorded == 0)
+        {
+            return 0;
+        }
+
+        final long rank;
+        rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * recorded));
+
+        long seen = 0;
+
+        for(int i = 0; i < BUCKET_COUNT; i++)
+        {
+            seen += snapshot[i];
+
+            if(seen >= rank)
+            {
+                return Math.min(highestValueIn(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Finds the bucket for a value. Values below 32 get a bucket each; above
+     * that, the top five bits of the value pick the bucket.
+     */
+    private static int bucketOf(final long value)
+    {
+        if(value < LINEAR_BUCKETS)
+        {
+            return (int) value;
+        }
+
+        final int shift;
+        shift = Long.SIZE - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS - 1;
+
+        return LINEAR_BUCKETS + (shift - 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    private static long highestValueIn(final int bucket)
+    {
+        if(bucket < LINEAR_BUCKETS)
+        {
+            return bucket;
+        }
+
+        final int shift;
+        final long subBucket;
+
+        shift = (bucket - LINEAR_BUCKETS) / SUB_BUCKETS + 1;
+        subBucket = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
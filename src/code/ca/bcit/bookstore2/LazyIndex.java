@@ -0,0 +1,266 @@
+package ca.bcit.bookstore2;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * One of a bookstore's indexes, built when it is first needed or ahead of
+ * time on a background executor.
+ *
+ * A background build reads the catalog without holding the lock, so
+ * queries keep running while it works; the finished index is published
+ * with a single volatile write. Until then a query can ask for the index
+ * only if it is ready and scan the catalog instead, or wait for it.
+ * The time each build took is kept for IndexStatus.
+ *
+ * @param <I> type of the index
+ *
+ * @author Alex Lee
+ * @author Evan Tang
+ *
+ * @version 1.0
+ */
+final class LazyIndex<I>
+{
+    private static final long NOT_BUILT = -1L;
+
+    private final String name;
+    private final Supplier<I> builder;
+    private volatile I index;
+    private volatile CompletableFuture<Void> building;
+    private volatile long buildNanos;
+
+    /**
+     * Creates an index that has not been built.
+     *
+     * @param name name of the index, as reported in its status
+     * @param builder builds the index over the whole catalog
+     */
+    LazyIndex(final String name, final Supplier<I> builder)
+    {
+        this.name = name;
+        this.builder = builder;
+        this.buildNanos = NOT_BUILT;
+    }
+
+    /**
+     * Returns the index, waiting for a background build in progress or
+     * building it now if none has started.
+     *
+     * @return the index
+     */
+    I get()
+    {
+        I built = index;
+
+        if(built != null)
+        {
+            return built;
+        }
+
+        final CompletableFuture<Void> pending;
+        pending = building;
+
+        if(pending != null)
+        {
+            // a failed build leaves the index unset and is retried below
+            pending.exceptionally(failure -> null).join();
+        }
+
+        synchronized(this)
+        {
+            built = index;
+
+            if(built == null)
+            {
+                built = build();
+            }
+        }
+        return built;
+    }
+
+    /**
+     * Returns the index unless a background build is still running, so the
+     * caller can scan instead of waiting. An index nobody has started is
+     * built now, as get would.
+     *
+     * @return the index, or null while it is being built in the background
+     */
+    I ifReady()
+    {
+        final I built;
+        built = index;
+
+        if(built != null || building != null)
+        {
+            return built;
+        }
+        return get();
+    }
+
+    /**
+     * Returns the index if it has been built, without building it. Changes
+     * to the catalog are applied to the index only once it exists.
+     *
+     * @return the index, or null if it has not been built
+     */
+    I ifBuilt()
+    {
+        return index;
+    }
+
+    /**
+     * Applies a change to the index if it has been built. One built later
+     * reads the catalog as changed.
+     *
+     * @param change the change to apply
+     */
+    void update(final Consumer<I> change)
+    {
+        final I built;
+        built = index;
+
+        if(built != null)
+        {
+            change.accept(built);
+        }
+    }
+
+    /**
+     * Builds the index again over the catalog as it is now, if it had been
+     * built, for when the catalog's slots have been renumbered. No
+     * background build may be in progress.
+     */
+    synchronized void rebuild()
+    {
+        if(index != null)
+        {
+            index = null;
+            build();
+        }
+    }
+
+    /**
+     * Starts building the index on an executor, unless it is built or
+     * already being built.
+     *
+     * @param executor executor to build on
+     */
+    void buildIn(final Executor executor)
+    {
+        final CompletableFuture<Void> pending;
+
+        synchronized(this)
+        {
+            if(index != null || building != null)
+            {
+                return;
+            }
+            pending = new CompletableFuture<>();
+            building = pending;
+        }
+
+        try
+        {
+            executor.execute(() -> {
+                try
+                {
+                    final I built;
+                    final long started;
+
+                    started = System.nanoTime();
+                    built = builder.get();
+                    publish(built, System.nanoTime() - started);
+                }
+                catch(final RuntimeException | Error failure)
+                {
+                    pending.completeExceptionally(failure);
+                    throw failure;
+                }
+                finally
+                {
+                    finish(pending);
+                    pending.complete(null);
+                }
+            });
+        }
+        catch(final RejectedExecutionException rejected)
+        {
+            finish(pending);
+            pending.completeExceptionally(rejected);
+            throw rejected;
+        }
+    }
+
+    /**
+     * Waits for a background build in progress to end.
+     */
+    void await()
+    {
+        final CompletableFuture<Void> pending;
+        pending = building;
+
+        if(pending != null)
+        {
+            pending.exceptionally(failure -> null).join();
+        }
+    }
+
+    /**
+     * Reports whether the index is ready and how long it took to build.
+     *
+     * @return the status
+     */
+    IndexStatus status()
+    {
+        final CompletableFuture<Void> pending;
+        final I built;
+
+        // a build publishes its index before it stops counting as running
+        pending = building;
+        built = index;
+
+        if(built != null)
+        {
+            return new IndexStatus(name, IndexStatus.State.READY, buildNanos);
+        }
+        return new IndexStatus(name, pending == null ? IndexStatus.State.NOT_BUILT : IndexStatus.State.BUILDING,
+                NOT_BUILT);
+    }
+
+    /**
+     * Builds the index on the calling thread. Called holding the lock.
+     */
+    private I build()
+    {
+        final I built;
+        final long started;
+
+        started = System.nanoTime();
+        built = builder.get();
+        publish(built, System.nanoTime() - started);
+
+        return built;
+    }
+
+    private synchronized void publish(final I built, final long nanos)
+    {
+        if(index == null)
+        {
+            // the time is written first so that a reader seeing the index sees it too
+            buildNanos = nanos;
+            index = built;
+        }
+    }
+
+    private synchronized void finish(final CompletableFuture<Void> pending)
+    {
+        if(building == pending)
+        {
+            building = null;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package ca.bcit.bookstore2;
+
+import java.util.function.IntConsumer;
+
+/**
+ * Catalog slots bucketed by title length.
+ *
+ * Titles are at most Novel.MAX_BOOK_NAME characters, so the index keeps one
+ * sorted slot list per possible length. Finding the books of a length is a
+ * bucket read, and the longest length in use is kept up to date as books
+ * come and go, so finding the longest titles never scans the catalog.
+ *
+ * @author Alex Lee
+ * @author Evan Tang
+ *
+ * @version 1.0
+ */
+final class LengthIndex
+{
+    private static final int LENGTH_SLOTS = Novel.MAX_BOOK_NAME + 1;
+
+    private final IntList[] slotsByLength;
+    private int longestLength;
+
+    /**
+     * Creates an empty index.
+     */
+    LengthIndex()
+    {
+        slotsByLength = new IntList[LENGTH_SLOTS];
+        longestLength = 0;
+    }
+
+    /**
+     * Adds a title to the index. Slots must be added in increasing order.
+     *
+     * @param slot catalog slot of the novel
+     * @param length length of the title
+     */
+    void add(final int slot, final int length)
+    {
+        if(slotsByLength[length] == null)
+        {
+            slotsByLength[length] = new IntList();
+        }
+        slotsByLength[length].add(slot);
+        longestLength = Math.max(longestLength, length);
+    }
+
+    /**
+     * Removes a title from the index.
+     *
+     * @param slot catalog slot of the novel
+     * @param length length of the title
+     */
+    void remove(final int slot, final int length)
+    {
+        if(slotsByLength[length] == null || !slotsByLength[length].removeSorted(slot))
+        {
+            return;
+        }
+
+        // at most MAX_BOOK_NAME steps, however large the catalog
+        while(longestLength > 0 && count(longestLength) == 0)
+        {
+            longestLength--;
+        }
+    }
+
+    /**
+     * Returns the length of the longest title, or 0 if there are no titles.
+     *
+     * @return the longest length
+     */
+    int longestLength()
+    {
+        return longestLength;
+    }
+
+    /**
+     * Counts the titles of a length.
+     *
+     * @param length the length
+     *
+     * @return number of titles of that length
+     */
+    int count(final int length)
+    {
+        if(length < 0 || length >= LENGTH_SLOTS || slotsByLength[length] == null)
+        {
+            return 0;
+        }
+        return slotsByLength[length].size();
+    }
+
+    /**
+     * Returns the first slot, in catalog order, with a title of a length.
+     *
+     * @param length the length
+     *
+     * @return the slot, or -1 if there is none
+     */
+    int first(final int length)
+    {
+        return count(length) == 0 ? -1 : slotsByLength[length].get(0);
+    }
+
+    /**
+     * Returns a cursor over the slots with a title of a length, in catalog order.
+     *
+     * @param length the length
+     *
+     * @return the cursor
+     */
+    SlotCursor slots(final int length)
+    {
+        return count(length) == 0 ? SlotCursor.EMPTY : slotsByLength[length].cursor();
+    }
+
+    /**
+     * Visits the slots with a title of a length, in catalog order.
+     *
+     * @param length the length
+     * @param action called with each slot
+     */
+    void forEach(final int length, final IntConsumer action)
+    {
+        final int count;
+        count = count(length);
+
+        for(int i = 0; i < count; i++)
+        {
+            action.accept(slotsByLength[length].get(i));
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package ca.bcit.bookstore2;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Buffered destination for listings, one line at a time.
+ *
+ * Lines are gathered in memory and handed to the target in large batches,
+ * so printing a long listing takes a handful of writes instead of one
+ * locked, flushed write per line. The target can be anything Appendable,
+ * such as a Writer, a PrintStream or a StringBuilder, or a byte channel
+ * such as a file or socket, which receives UTF-8. Call flush when the
+ * listing is done.
+ *
+ * @author Alex Lee
+ * @author Evan Tang
+ *
+ * @version 1.0
+ */
+public final class LineSink implements Flushable
+{
+    private static final int BUFFER_CHARS = 64 * 1024;
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private final Appendable appendable;
+    private final WritableByteChannel channel;
+    private final StringBuilder buffer;
+
+    private LineSink(final Appendable appendable, final WritableByteChannel channel)
+    {
+        this.appendable = appendable;
+        this.channel = channel;
+        this.buffer = new StringBuilder(BUFFER_CHARS);
+    }
+
+    /**
+     * Creates a sink that writes to an Appendable.
+     *
+     * @param target where to write the lines
+     *
+     * @return the sink
+     */
+    public static LineSink of(final Appendable target)
+    {
+        if(target == null)
+        {
+            throw new IllegalArgumentException("target must be provided");
+        }
+        return new LineSink(target, null);
+    }
+
+    /**
+     * Creates a sink that writes UTF-8 to a byte channel.
+     *
+     * @param target where to write the lines
+     *
+     * @return the sink
+     */
+    public static LineSink of(final WritableByteChannel target)
+    {
+        if(target == null)
+        {
+            throw new IllegalArgumentException("target must be provided");
+        }
+        return new LineSink(null, target);
+    }
+
+    /**
+     * Adds a line, writing out the buffer once it is full.
+     *
+     * @param line the line, without a line separator
+     *
+     * @throws UncheckedIOException if the target cannot be written
+     */
+    public void line(final CharSequence line)
+    {
+        buffer.append(line).append(LINE_SEPARATOR);
+
+        if(buffer.length() >= BUFFER_CHARS)
+        {
+            drain();
+        }
+    }
+
+    /**
+     * Writes out every buffered line and flushes the target if it can be flushed.
+     *
+     * @throws UncheckedIOException if the target cannot be written
+     */
+    @Override
+    public void flush()
+    {
+        drain();
+
+        try
+        {
+            if(appendable instanceof Flushable)
+            {
+                ((Flushable) appendable).flush();
+            }
+        }
+        catch(final IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Hands the buffered lines to the target in one write.
+     */
+    private void drain()
+    {
+        if(buffer.length() == 0)
+        {
+            return;
+        }
+
+        try
+        {
+            if(appendable != null)
+            {
+                appendable.append(buffer);
+            }
+            else
+            {
+                final ByteBuffer bytes;
+                bytes = StandardCharsets.UTF_8.encode(CharBuffer.wrap(buffer));
+
+                while(bytes.hasRemaining())
+                {
+                    channel.write(bytes);
+                }
+            }
+        }
+        catch(final IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+        buffer.setLength(0);
+    }
+}
@@ -171,6 +171,12 @@ public class Main
         System.out.println();
 
         shop = new Bookshop(bookstore.getAllNovels());
+
+        System.out.println("All titles:");
+        shop.printAllTitles();
+
+        System.out.println("\nSorted titles:");
+        shop.printSortedTitlesWithout("the");
         System.out.println("hi");
     }
 }
@@ -1,5 +1,7 @@
 package ca.bcit.bookstore2;
 
+import java.util.Objects;
+
 /**
  * Represents the Novel.
  *
@@ -11,10 +13,9 @@ package ca.bcit.bookstore2;
 public class Novel
 {
     private static final int MAX_NAME_LENGTH = 50;
-    private static final int MAX_BOOK_NAME = 50;
-
-    private static final int INITIAL_YEAR = 1;
-    private static final int CURRENT_YEAR = 2026;
+    static final int MAX_BOOK_NAME = 50;
+    static final int INITIAL_YEAR = 1;
+    static final int CURRENT_YEAR = 2026;
 
     private final String title;
     private final String authorName;
@@ -115,6 +116,38 @@ public class Novel
         }
     }
 
+    /**
+     * Two novels are equal when their title, author and year are equal.
+     *
+     * @param o the object to compare with
+     *
+     * @return true if the novels are equal, false otherwise
+     */
+    @Override
+    public boolean equals(final Object o)
+    {
+        if(this == o)
+        {
+            return true;
+        }
+
+        if(!(o instanceof Novel))
+        {
+            return false;
+        }
+
+        final Novel novel = (Novel) o;
+        return yearPublished == novel.yearPublished &&
+                title.equals(novel.title) &&
+                authorName.equals(novel.authorName);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(title, authorName, yearPublished);
+    }
+
     /**
      * ToString method to show all the instance variables for novel.
      *
@@ -0,0 +1,357 @@
+package ca.bcit.bookstore2;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Loads novels from delimited text such as CSV or TSV.
+ *
+ * Lines are read in fixed-size chunks. Each chunk is parsed and validated
+ * on a pool of workers while the next chunks are read, and finished chunks
+ * are appended to the storage in input order. Only a few chunks are in
+ * flight at once, so memory use does not depend on the size of the input.
+ * Rows that fail to parse or that a Novel rejects are written to a reject
+ * report and the load carries on.
+ *
+ * Each row holds a title, an author name and a year, in that order.
+ * Fields may be wrapped in double quotes, with a doubled quote standing
+ * for a literal one.
+ *
+ * @author Alex Lee
+ * @author Evan Tang
+ *
+ * @version 1.0
+ */
+public final class NovelIngester
+{
+    private static final int CHUNK_LINES = 8192;
+    private static final int CHUNKS_PER_WORKER = 2;
+    private static final int FIELD_COUNT = 3;
+    private static final int FIRST_LINE = 1;
+
+    private static final char QUOTE = '"';
+    private static final String REJECT_SEPARATOR = "\t";
+
+    private final char delimiter;
+    private final boolean hasHeader;
+    private final int workerCount;
+
+    /**
+     * Creates an ingester.
+     *
+     * @param delimiter character between fields, such as ',' or '\t'
+     * @param hasHeader whether the first line names the columns and should be skipped
+     * @param workerCount number of threads parsing and validating chunks
+     */
+    public NovelIngester(final char delimiter, final boolean hasHeader, final int workerCount)
+    {
+        if(delimiter == QUOTE || delimiter == '\n' || delimiter == '\r')
+        {
+            throw new IllegalArgumentException("delimiter cannot be a quote or line break");
+        }
+
+        if(workerCount < 1)
+        {
+            throw new IllegalArgumentException("worker count must be at least 1");
+        }
+
+        this.delimiter = delimiter;
+        this.hasHeader = hasHeader;
+        this.workerCount = workerCount;
+    }
+
+    /**
+     * Reads every row of the input into a new bookstore.
+     *
+     * @param input delimited text to read
+     * @param bookStoreName name of the bookstore to create
+     * @param storageMode where the bookstore keeps its novels
+     * @param rejects receives one line per rejected row: line number, reason and the raw row
+     *
+     * @return the bookstore and the number of accepted and rejected rows
+     *
+     * @throws IOException if the input cannot be read or the report cannot be written
+     */
+    public IngestResult ingest(final Reader input,
+                               final String bookStoreName,
+                               final StorageMode storageMode,
+                               final Appendable rejects) throws IOException
+    {
+        if(input == null || rejects == null)
+        {
+            throw new IllegalArgumentException("input and reject report must be provided");
+        }
+
+        final NovelStorage storage;
+        storage = storageMode == StorageMode.OFF_HEAP ?
+                new OffHeapNovelStorage(new ArrayList<>()) : new HeapNovelStorage(new ArrayList<>());
+
+        final BufferedReader reader;
+        final ExecutorService workers;
+        final Deque<Future<ParsedChunk>> inFlight;
+        final int maxInFlight;
+
+        reader = input instanceof BufferedReader ? (BufferedReader) input : new BufferedReader(input);
+        workers = Executors.newFixedThreadPool(workerCount);
+        inFlight = new ArrayDeque<>();
+        maxInFlight = workerCount * CHUNKS_PER_WORKER;
+
+        long accepted = 0;
+        long rejected = 0;
+
+        try
+        {
+            long lineNumber = FIRST_LINE;
+
+            if(hasHeader && reader.readLine() != null)
+            {
+                lineNumber++;
+            }
+
+            while(true)
+            {
+                final List<String> lines;
+                lines = readChunk(reader);
+
+                if(lines.isEmpty())
+                {
+                    break;
+                }
+
+                final long firstLine = lineNumber;
+                inFlight.addLast(workers.submit(() -> parseChunk(lines, firstLine)));
+                lineNumber += lines.size();
+
+                if(inFlight.size() >= maxInFlight)
+                {
+                    final ParsedChunk chunk;
+                    chunk = append(inFlight.removeFirst(), storage, rejects);
+
+                    accepted += chunk.novels.size();
+                    rejected += chunk.rejectCount;
+                }
+            }
+
+            while(!inFlight.isEmpty())
+            {
+                final ParsedChunk chunk;
+                chunk = append(inFlight.removeFirst(), storage, rejects);
+
+                accepted += chunk.novels.size();
+                rejected += chunk.rejectCount;
+            }
+        }
+        finally
+        {
+            workers.shutdownNow();
+        }
+
+        return new IngestResult(new BookStore(bookStoreName, storage), accepted, rejected);
+    }
+
+    /**
+     * Reads up to one chunk of lines.
+     */
+    private static List<String> readChunk(final BufferedReader reader) throws IOException
+    {
+        final List<String> lines;
+        lines = new ArrayList<>(CHUNK_LINES);
+
+        String line;
+        while(lines.size() < CHUNK_LINES && (line = reader.readLine()) != null)
+        {
+            lines.add(line);
+        }
+        return lines;
+    }
+
+    /**
+     * Waits for a chunk, then appends its novels and reports its rejects.
+     *
+     * @return the appended chunk
+     */
+    private static ParsedChunk append(final Future<ParsedChunk> pending,
+                                      final NovelStorage storage,
+                                      final Appendable rejects) throws IOException
+    {
+        final ParsedChunk chunk;
+
+        try
+        {
+            chunk = pending.get();
+        }
+        catch(final InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("ingestion was interrupted", e);
+        }
+        catch(final ExecutionException e)
+        {
+            throw new IOException("failed to parse chunk", e.getCause());
+        }
+
+        for(final Novel novel : chunk.novels)
+        {
+            storage.add(novel);
+        }
+
+        rejects.append(chunk.rejects);
+        return chunk;
+    }
+
+    /**
+     * Parses and validates a chunk of lines.
+     */
+    private ParsedChunk parseChunk(final List<String> lines, final long firstLine)
+    {
+        final ParsedChunk chunk;
+        chunk = new ParsedChunk(lines.size());
+
+        for(int i = 0; i < lines.size(); i++)
+        {
+            final String line;
+            line = lines.get(i);
+
+            if(line.isBlank())
+            {
+                continue;
+            }
+
+            try
+            {
+                chunk.novels.add(parseRow(line, chunk.authors));
+            }
+            catch(final IllegalArgumentException e)
+            {
+                chunk.rejects.append(firstLine + i)
+                        .append(REJECT_SEPARATOR)
+                        .append(e.getMessage())
+                        .append(REJECT_SEPARATOR)
+                        .append(line)
+                        .append(System.lineSeparator());
+                chunk.rejectCount++;
+            }
+        }
+        return chunk;
+    }
+
+    /**
+     * Splits a row into fields and builds a Novel from them, which applies
+     * the usual title, name and year rules. Author names repeat often, so
+     * each name is kept once per chunk and shared by the novels using it.
+     *
+     * @throws IllegalArgumentException if the row is malformed or the novel is invalid
+     */
+    private Novel parseRow(final String line, final Map<String, String> authors)
+    {
+        final List<String> fields;
+        fields = splitFields(line);
+
+        if(fields.size() != FIELD_COUNT)
+        {
+            throw new IllegalArgumentException(
+                    "expected " + FIELD_COUNT + " fields but found " + fields.size());
+        }
+
+        final int year;
+
+        try
+        {
+            year = Integer.parseInt(fields.get(2).trim());
+        }
+        catch(final NumberFormatException e)
+        {
+            throw new IllegalArgumentException("year is not a number");
+        }
+
+        return new Novel(fields.get(0), authors.computeIfAbsent(fields.get(1), name -> name), year);
+    }
+
+    /**
+     * Splits a row on the delimiter, honouring double-quoted fields.
+     */
+    private List<String> splitFields(final String line)
+    {
+        final List<String> fields;
+        final StringBuilder field;
+        boolean quoted;
+
+        fields = new ArrayList<>(FIELD_COUNT);
+        field = new StringBuilder();
+        quoted = false;
+
+        for(int i = 0; i < line.length(); i++)
+        {
+            final char c;
+            c = line.charAt(i);
+
+            if(quoted)
+            {
+                if(c != QUOTE)
+                {
+                    field.append(c);
+                }
+                else if(i + 1 < line.length() && line.charAt(i + 1) == QUOTE)
+                {
+                    field.append(QUOTE);
+                    i++;
+                }
+                else
+                {
+                    quoted = false;
+                }
+            }
+            else if(c == QUOTE && field.length() == 0)
+            {
+                quoted = true;
+            }
+            else if(c == delimiter)
+            {
+                fields.add(field.toString());
+                field.setLength(0);
+            }
+            else
+            {
+                field.append(c);
+            }
+        }
+
+        if(quoted)
+        {
+            throw new IllegalArgumentException("unterminated quoted field");
+        }
+
+        fields.add(field.toString());
+        return fields;
+    }
+
+    /**
+     * Novels and reject lines produced from one chunk.
+     */
+    private static final class ParsedChunk
+    {
+        private final List<Novel> novels;
+        private final StringBuilder rejects;
+        private final Map<String, String> authors;
+        private long rejectCount;
+
+        private ParsedChunk(final int lineCount)
+        {
+            novels = new ArrayList<>(lineCount);
+            rejects = new StringBuilder();
+            authors = new HashMap<>();
+            rejectCount = 0;
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package ca.bcit.bookstore2;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A query combining several conditions on the books of one bookstore.
+ *
+ * Conditions are added fluently and all must hold. Nothing runs until a
+ * result is asked for: then the bookstore plans the query, reading one
+ * index for the condition it expects to match the fewest books and
+ * checking the others on those books only, so a narrow condition keeps a
+ * broad one from scanning the catalog.
+ * <pre>
+ *   List&lt;Novel&gt; found = bookStore.query()
+ *           .titleContains("heart")
+ *           .publishedBetween(1940, 1960)
+ *           .titleLength(15)
+ *           .toList();
+ * </pre>
+ * Books come out in catalog order. As with the iterators of a
+ * collection, the bookstore must not change while a stream from a query
+ * is being read.
+ *
+ * @author Alex Lee
+ * @author Evan Tang
+ *
+ * @version 1.0
+ */
+public final class NovelQuery
+{
+    private final BookStore bookStore;
+    private final List<Condition> conditions;
+
+    /**
+     * Creates a query with no conditions, which matches every book.
+     *
+     * @param bookStore the bookstore to query
+     */
+    NovelQuery(final BookStore bookStore)
+    {
+        this.bookStore = bookStore;
+        this.conditions = new ArrayList<>();
+    }
+
+    /**
+     * Keeps the books whose title contains a word, ignoring case.
+     *
+     * @param word the word to look for
+     *
+     * @return this query
+     */
+    public NovelQuery titleContains(final String word)
+    {
+        if(word == null)
+        {
+            throw new IllegalArgumentException("word must be provided");
+        }
+        return add(new Condition(Kind.TITLE_CONTAINS, TitleIndex.fold(word), 0, 0, null));
+    }
+
+    /**
+     * Keeps the books published in an inclusive range of years.
+     *
+     * @param first first year of the range
+     * @param last last year of the range
+     *
+     * @return this query
+     */
+    public NovelQuery publishedBetween(final int first, final int last)
+    {
+        if(first > last)
+        {
+            throw new IllegalArgumentException("first year must be less than or equal to last year");
+        }
+
+        if(first < Novel.INITIAL_YEAR || last > Novel.CURRENT_YEAR)
+        {
+            throw new IllegalArgumentException(
+                    "Year must be between " + Novel.INITIAL_YEAR + " and " + Novel.CURRENT_YEAR);
+        }
+        return add(new Condition(Kind.PUBLISHED_BETWEEN, null, first, last, null));
+    }
+
+    /**
+     * Keeps the books published in a year.
+     *
+     * @param year the year
+     *
+     * @return this query
+     */
+    public NovelQuery publishedIn(final int year)
+    {
+        return publishedBetween(year, year);
+    }
+
+    /**
+     * Keeps the books whose title is this length.
+     *
+     * @param titleLength length of the title
+     *
+     * @return this query
+     */
+    public NovelQuery titleLength(final int titleLength)
+    {
+        return add(new Condition(Kind.TITLE_LENGTH, null, titleLength, titleLength, null));
+    }
+
+    /**
+     * Keeps the books by an author, matching the name exactly.
+     *
+     * @param authorName name of the author
+     *
+     * @return this query
+     */
+    public NovelQuery writtenBy(final String authorName)
+    {
+        if(authorName == null)
+        {
+            throw new IllegalArgumentException("authorName must be provided");
+        }
+        return add(new Condition(Kind.WRITTEN_BY, authorName, 0, 0, null));
+    }
+
+    /**
+     * Keeps the books that pass a test. No index can answer a test, so it
+     * is only checked on the books the other conditions leave.
+     *
+     * @param test the test
+     *
+     * @return this query
+     */
+    public NovelQuery where(final Predicate<Novel> test)
+    {
+        if(test == null)
+        {
+            throw new IllegalArgumentException("test must be provided");
+        }
+        return add(new Condition(Kind.TEST, null, 0, 0, test));
+    }
+
+    /**
+     * Returns a lazy stream of the matching books, in catalog order. The
+     * query is planned when the stream's terminal operation starts.
+     *
+     * @return stream of the matching books
+     */
+    public Stream<Novel> stream()
+    {
+        final List<Condition> planned;
+        planned = List.copyOf(conditions);
+
+        return StreamSupport.stream(() -> bookStore.plan(planned).spliterator(),
+                Spliterator.ORDERED | Spliterator.NONNULL, false);
+    }
+
+    /**
+     * Returns the matching books, in catalog order.
+     *
+     * @return list of the matching books
+     */
+    public List<Novel> toList()
+    {
+        return stream().collect(Collectors.toList());
+    }
+
+    /**
+     * Counts the matching books without building them.
+     *
+     * @return number of matching books
+     */
+    public int count()
+    {
+        return bookStore.plan(List.copyOf(conditions)).count();
+    }
+
+    /**
+     * Describes how the query would run now: the access path chosen, the
+     * number of books it is expected to read, and the order in which the
+     * other conditions are checked.
+     *
+     * @return description of the plan
+     */
+    public String explain()
+    {
+        return bookStore.plan(List.copyOf(conditions)).toString();
+    }
+
+    private NovelQuery add(final Condition condition)
+    {
+        conditions.add(condition);
+        return this;
+    }
+
+    /**
+     * The kinds of condition a query can hold.
+     */
+    enum Kind
+    {
+        TITLE_CONTAINS,
+        PUBLISHED_BETWEEN,
+        TITLE_LENGTH,
+        WRITTEN_BY,
+        TEST
+    }
+
+    /**
+     * One condition of a query. Which fields are used depends on the kind:
+     * text for a folded word or an author name, first and last for a year
+     * range or a title length, and test for a test.
+     */
+    static final class Condition
+    {
+        private final Kind kind;
+        private final String text;
+        private final int first;
+        private final int last;
+        private final Predicate<Novel> test;
+
+        private Condition(final Kind kind,
+                          final String text,
+                          final int first,
+                          final int last,
+                          final Predicate<Novel> test)
+        {
+            this.kind = kind;
+            this.text = text;
+            this.first = first;
+            this.last = last;
+            this.test = test;
+        }
+
+        Kind kind()
+        {
+            return kind;
+        }
+
+        String text()
+        {
+            return text;
+        }
+
+        int first()
+        {
+            return first;
+        }
+
+        int last()
+        {
+            return last;
+        }
+
+        Predicate<Novel> test()
+        {
+            return test;
+        }
+
+        @Override
+        public String toString()
+        {
+            switch(kind)
+            {
+                case TITLE_CONTAINS:
+                    return "titleContains(" + text + ")";
+                case PUBLISHED_BETWEEN:
+                    return "publishedBetween(" + first + ", " + last + ")";
+                case TITLE_LENGTH:
+                    return "titleLength(" + first + ")";
+                case WRITTEN_BY:
+                    return "writtenBy(" + text + ")";
+                default:
+                    return "where(test)";
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package ca.bcit.bookstore2;
+
+import java.util.List;
+
+/**
+ * Backing storage for the novels of a bookstore, addressed by slot.
+ *
+ * Slots are handed out in increasing order and never reused. Removing a
+ * novel leaves its slot empty, so every other slot keeps its number and
+ * the indexes built over slots stay valid.
+ *
+ * @author Alex Lee
+ * @author Evan Tang
+ *
+ * @version 1.0
+ */
+interface NovelStorage
+{
+    /**
+     * Appends a novel.
+     *
+     * @param novel the novel to store
+     *
+     * @return slot the novel was stored in
+     */
+    int add(Novel novel);
+
+    /**
+     * Empties a slot.
+     *
+     * @param slot the slot to empty
+     */
+    void remove(int slot);
+
+    /**
+     * Returns the number of slots handed out, including empty ones.
+     *
+     * @return number of slots
+     */
+    int slotCount();
+
+    /**
+     * Returns the number of stored novels.
+     *
+     * @return number of novels
+     */
+    int liveCount();
+
+    /**
+     * Checks whether a slot holds a novel.
+     *
+     * @param slot the slot to check
+     *
+     * @return true if the slot holds a novel, false if it was emptied
+     */
+    boolean isLive(int slot);
+
+    /**
+     * Returns the novel in a slot.
+     *
+     * @param slot the slot to read
+     *
+     * @return the novel
+     */
+    Novel get(int slot);
+
+    /**
+     * Returns the title of the novel in a slot.
+     *
+     * @param slot the slot to read
+     *
+     * @return the title
+     */
+    String getTitle(int slot);
+
+    /**
+     * Returns the author name of the novel in a slot.
+     *
+     * @param slot the slot to read
+     *
+     * @return the author name
+     */
+    String getAuthorName(int slot);
+
+    /**
+     * Returns the publication year of the novel in a slot.
+     *
+     * @param slot the slot to read
+     *
+     * @return the year published
+     */
+    int getYearPublished(int slot);
+
+    /**
+     * Returns a new list of the stored novels, in slot order.
+     *
+     * @return list of novels
+     */
+    List<Novel> asList();
+}
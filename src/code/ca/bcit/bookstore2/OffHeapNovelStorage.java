@@ -0,0 +1,644 @@
+package ca.bcit.bookstore2;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Stores novels column by column in direct memory.
+ *
+ * Years live in an int column. Titles are kept once each in a
+ * TitleDictionary built from the initial novels, and a row holds its
+ * title's dictionary id in the title offset column, marked by a title
+ * length of DICTIONARY_TITLE. Author names, and titles added later that
+ * the dictionary does not hold, are packed as UTF-8 into one byte arena
+ * and located through offset and length columns. Books by an author
+ * already stored point at that author's bytes rather than copying them
+ * again, so a prolific author costs one copy. Authors are found through
+ * an open-addressing table of rows, hashed on the name's bytes and
+ * compared against the arena. None of this, the table included, is on the
+ * Java heap apart from the dictionary, two primitive arrays the garbage
+ * collector does not look inside. Novel objects are only built when a
+ * caller asks for one. An emptied slot is marked with a year of zero,
+ * which no Novel can have.
+ *
+ * @author Alex Lee
+ * @author Evan Tang
+ *
+ * @version 1.0
+ */
+final class OffHeapNovelStorage implements NovelStorage
+{
+    private static final int INITIAL_ROWS = 64;
+    private static final int INITIAL_ARENA_BYTES = 4096;
+    private static final int GROWTH_FACTOR = 2;
+    private static final int REMOVED_YEAR = 0;
+
+    // title length of a row whose title offset is a dictionary id
+    private static final int DICTIONARY_TITLE = -1;
+
+    // a direct buffer is indexed by int, which bounds the arena and every column
+    private static final long MAX_BUFFER_BYTES = Integer.MAX_VALUE;
+    private static final int MAX_ROWS = (int) (MAX_BUFFER_BYTES / Integer.BYTES);
+
+    private static final int INITIAL_AUTHOR_BUCKETS = 64;
+    private static final int NO_ROW = -1;
+    private static final int NOT_IN_DICTIONARY = -1;
+    private static final byte[] NO_BYTES = new byte[0];
+    private static final int HASH_MULTIPLIER = 31;
+    private static final int MIX_MULTIPLIER = 0x9E3779B9;
+    private static final int MIX_SHIFT = 16;
+
+    static final int YEAR_COLUMN = 0;
+    static final int TITLE_OFFSET_COLUMN = 1;
+    static final int TITLE_LENGTH_COLUMN = 2;
+    static final int AUTHOR_OFFSET_COLUMN = 3;
+    static final int AUTHOR_LENGTH_COLUMN = 4;
+    static final int COLUMN_COUNT = 5;
+
+    private IntBuffer years;
+    private IntBuffer titleOffsets;
+    private IntBuffer titleLengths;
+    private IntBuffer authorOffsets;
+    private IntBuffer authorLengths;
+    private ByteBuffer arena;
+    private int size;
+    private int liveCount;
+
+    private final TitleDictionary titleDictionary;
+    private int arenaTitles;
+
+    // row of the first book by each author plus one, so that zero marks an empty bucket
+    private IntBuffer authorRows;
+    private int authorCount;
+
+    /**
+     * Creates a storage holding the given novels, with their titles in a
+     * dictionary.
+     *
+     * @param novels the initial novels
+     */
+    OffHeapNovelStorage(final List<Novel> novels)
+    {
+        this(novels, true);
+    }
+
+    /**
+     * Creates a storage holding the given novels.
+     *
+     * @param novels the initial novels
+     * @param useDictionary whether to keep the titles in a dictionary, or
+     *                      in the arena as a catalog file lays them out
+     */
+    OffHeapNovelStorage(final List<Novel> novels, final boolean useDictionary)
+    {
+        final int rows;
+        final int[] titleIds;
+
+        rows = Math.max(INITIAL_ROWS, novels.size());
+        titleIds = new int[novels.size()];
+
+        if(useDictionary)
+        {
+            final List<String> titles;
+            titles = new ArrayList<>(novels.size());
+
+            for(final Novel novel : novels)
+            {
+                titles.add(novel.getTitle());
+            }
+            titleDictionary = TitleDictionary.of(titles, titleIds);
+        }
+        else
+        {
+            titleDictionary = null;
+            Arrays.fill(titleIds, NOT_IN_DICTIONARY);
+        }
+
+        years = allocateColumn(rows);
+        titleOffsets = allocateColumn(rows);
+        titleLengths = allocateColumn(rows);
+        authorOffsets = allocateColumn(rows);
+        authorLengths = allocateColumn(rows);
+        arena = ByteBuffer.allocateDirect(INITIAL_ARENA_BYTES);
+        size = 0;
+        liveCount = 0;
+        arenaTitles = 0;
+        authorRows = allocateColumn(INITIAL_AUTHOR_BUCKETS);
+        authorCount = 0;
+
+        for(final Novel novel : novels)
+        {
+            add(novel, titleIds[size]);
+        }
+    }
+
+    /**
+     * Creates a storage over columns and an arena that already exist, such
+     * as sections of a mapped catalog file. Every row must hold a novel.
+     * Nothing is copied until the first novel is added or removed, at which
+     * point the data moves to growable direct buffers and the authors of
+     * the existing rows are put in the author table, so that later books by
+     * them share their bytes.
+     *
+     * @param columns year, title offset, title length, author offset and
+     *                author length columns, each holding exactly size rows
+     * @param arena UTF-8 string bytes, positioned at the end of the data
+     * @param size number of stored novels
+     */
+    OffHeapNovelStorage(final IntBuffer[] columns, final ByteBuffer arena, final int size)
+    {
+        this.years = columns[YEAR_COLUMN];
+        this.titleOffsets = columns[TITLE_OFFSET_COLUMN];
+        this.titleLengths = columns[TITLE_LENGTH_COLUMN];
+        this.authorOffsets = columns[AUTHOR_OFFSET_COLUMN];
+        this.authorLengths = columns[AUTHOR_LENGTH_COLUMN];
+        this.arena = arena;
+        this.size = size;
+        this.liveCount = size;
+        this.authorRows = null;
+        this.authorCount = 0;
+        this.titleDictionary = null;
+        this.arenaTitles = size;
+    }
+
+    @Override
+    public int add(final Novel novel)
+    {
+        return add(novel, titleDictionary == null ? NOT_IN_DICTIONARY : titleDictionary.indexOf(novel.getTitle()));
+    }
+
+    /**
+     * Adds a novel whose title has a known dictionary id, or a negative id
+     * if the dictionary does not hold it.
+     */
+    private int add(final Novel novel, final int titleId)
+    {
+        final byte[] title;
+        final byte[] author;
+        final int authorHash;
+
+        title = titleId >= 0 ? NO_BYTES : novel.getTitle().getBytes(StandardCharsets.UTF_8);
+        author = novel.getAuthorName().getBytes(StandardCharsets.UTF_8);
+        authorHash = hash(author);
+
+        if(authorRows == null)
+        {
+            indexExistingAuthors();
+        }
+
+        if(size == years.capacity())
+        {
+            if(size == MAX_ROWS)
+            {
+                throw new IllegalStateException("storage cannot hold more than " + MAX_ROWS + " novels");
+            }
+            growColumns();
+        }
+
+        final int bucket;
+        final int authorRow;
+
+        bucket = findAuthor(author, authorHash);
+        authorRow = authorRows.get(bucket) - 1;
+
+        if(authorRow == NO_ROW)
+        {
+            ensureArenaCapacity(title.length + author.length);
+            authorOffsets.put(size, append(author));
+            authorLengths.put(size, author.length);
+            addAuthor(bucket, size);
+        }
+        else
+        {
+            ensureArenaCapacity(title.length);
+            authorOffsets.put(size, authorOffsets.get(authorRow));
+            authorLengths.put(size, authorLengths.get(authorRow));
+        }
+
+        years.put(size, novel.getYearPublished());
+
+        if(titleId >= 0)
+        {
+            titleOffsets.put(size, titleId);
+            titleLengths.put(size, DICTIONARY_TITLE);
+        }
+        else
+        {
+            titleOffsets.put(size, append(title));
+            titleLengths.put(size, title.length);
+            arenaTitles++;
+        }
+
+        liveCount++;
+        return size++;
+    }
+
+    @Override
+    public void remove(final int slot)
+    {
+        if(!isLive(slot))
+        {
+            return;
+        }
+
+        // mapped columns are read-only, so move them to direct memory first
+        if(years.isReadOnly())
+        {
+            growColumns();
+        }
+
+        years.put(slot, REMOVED_YEAR);
+        liveCount--;
+    }
+
+    @Override
+    public int slotCount()
+    {
+        return size;
+    }
+
+    @Override
+    public int liveCount()
+    {
+        return liveCount;
+    }
+
+    @Override
+    public boolean isLive(final int slot)
+    {
+        return years.get(slot) != REMOVED_YEAR;
+    }
+
+    @Override
+    public Novel get(final int slot)
+    {
+        return new Novel(getTitle(slot), getAuthorName(slot), getYearPublished(slot));
+    }
+
+    @Override
+    public String getTitle(final int slot)
+    {
+        final int length;
+        length = titleLengths.get(slot);
+
+        if(length == DICTIONARY_TITLE)
+        {
+            return titleDictionary.get(titleOffsets.get(slot));
+        }
+        return decode(titleOffsets.get(slot), length);
+    }
+
+    @Override
+    public String getAuthorName(final int slot)
+    {
+        return decode(authorOffsets.get(slot), authorLengths.get(slot));
+    }
+
+    @Override
+    public int getYearPublished(final int slot)
+    {
+        return years.get(slot);
+    }
+
+    @Override
+    public List<Novel> asList()
+    {
+        final List<Novel> novels;
+        novels = new ArrayList<>(liveCount);
+
+        for(int slot = 0; slot < size; slot++)
+        {
+            if(isLive(slot))
+            {
+                novels.add(get(slot));
+            }
+        }
+        return novels;
+    }
+
+    /**
+     * Returns the dictionary holding the title of every stored row, which
+     * may also hold titles no longer stored.
+     *
+     * @return the dictionary, or null if some titles are only in the arena
+     */
+    TitleDictionary titleDictionary()
+    {
+        return arenaTitles == 0 ? titleDictionary : null;
+    }
+
+    /**
+     * Checks whether every title is in the arena, as a catalog file lays
+     * the columns out.
+     *
+     * @return true if no row refers to the dictionary
+     */
+    boolean titlesInArena()
+    {
+        return arenaTitles == size;
+    }
+
+    /**
+     * Copies columns and an arena still mapped from a catalog file into
+     * direct memory, so that nothing refers to the file any more and it can
+     * be deleted, which some platforms refuse while a mapping is open.
+     */
+    void detach()
+    {
+        if(years.isReadOnly())
+        {
+            growColumns();
+        }
+
+        if(arena.isReadOnly())
+        {
+            final ByteBuffer copy;
+            copy = ByteBuffer.allocateDirect(Math.max(arena.position(), INITIAL_ARENA_BYTES));
+
+            arena.flip();
+            copy.put(arena);
+            arena = copy;
+        }
+    }
+
+    /**
+     * Returns read-only views of the filled part of every column, indexed by
+     * the column constants. The title columns only locate arena bytes if
+     * titlesInArena is true.
+     *
+     * @return the columns
+     */
+    IntBuffer[] columns()
+    {
+        return new IntBuffer[] {
+                columnView(years),
+                columnView(titleOffsets),
+                columnView(titleLengths),
+                columnView(authorOffsets),
+                columnView(authorLengths)
+        };
+    }
+
+    /**
+     * Returns a read-only view of the filled part of the arena.
+     *
+     * @return the arena bytes
+     */
+    ByteBuffer arena()
+    {
+        return arena.asReadOnlyBuffer().flip();
+    }
+
+    /**
+     * Limits a read-only view of a column to the stored rows.
+     */
+    private IntBuffer columnView(final IntBuffer column)
+    {
+        return column.asReadOnlyBuffer().position(0).limit(size);
+    }
+
+    /**
+     * Copies bytes to the end of the arena.
+     *
+     * @return arena offset the bytes were written at
+     */
+    private int append(final byte[] bytes)
+    {
+        final int offset;
+        offset = arena.position();
+
+        arena.put(bytes);
+        return offset;
+    }
+
+    /**
+     * Decodes a UTF-8 string out of the arena.
+     */
+    private String decode(final int offset, final int length)
+    {
+        final byte[] bytes;
+        bytes = new byte[length];
+
+        arena.get(offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Puts the author of every stored row in the author table. A storage
+     * over a mapped catalog starts without a table and builds it when the
+     * first novel is added.
+     */
+    private void indexExistingAuthors()
+    {
+        authorRows = allocateColumn(bucketsFor(size));
+        authorCount = 0;
+
+        for(int row = 0; row < size; row++)
+        {
+            final int bucket;
+            bucket = findStoredAuthor(authorOffsets.get(row), authorLengths.get(row));
+
+            if(authorRows.get(bucket) == 0)
+            {
+                addAuthor(bucket, row);
+            }
+        }
+    }
+
+    /**
+     * Finds the bucket holding an author's first row, or the empty bucket
+     * where the author belongs.
+     */
+    private int findAuthor(final byte[] author, final int authorHash)
+    {
+        final int mask;
+        int bucket;
+
+        mask = authorRows.capacity() - 1;
+        bucket = authorHash & mask;
+
+        while(true)
+        {
+            final int row;
+            row = authorRows.get(bucket) - 1;
+
+            if(row == NO_ROW || authorAt(row, author))
+            {
+                return bucket;
+            }
+            bucket = (bucket + 1) & mask;
+        }
+    }
+
+    /**
+     * Finds the bucket for an author name already in the arena.
+     */
+    private int findStoredAuthor(final int offset, final int length)
+    {
+        final byte[] author;
+        author = new byte[length];
+
+        arena.get(offset, author);
+        return findAuthor(author, hash(author));
+    }
+
+    /**
+     * Records a row as the first book by an author, growing the table to
+     * keep it at most half full.
+     */
+    private void addAuthor(final int bucket, final int row)
+    {
+        authorRows.put(bucket, row + 1);
+        authorCount++;
+
+        if(authorCount * GROWTH_FACTOR > authorRows.capacity())
+        {
+            final IntBuffer old;
+            old = authorRows;
+            authorRows = allocateColumn(old.capacity() * GROWTH_FACTOR);
+
+            for(int i = 0; i < old.capacity(); i++)
+            {
+                final int firstRow;
+                firstRow = old.get(i) - 1;
+
+                if(firstRow != NO_ROW)
+                {
+                    authorRows.put(findStoredAuthor(authorOffsets.get(firstRow), authorLengths.get(firstRow)),
+                            firstRow + 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks whether the author of a row has exactly these bytes.
+     */
+    private boolean authorAt(final int row, final byte[] author)
+    {
+        final int offset;
+        offset = authorOffsets.get(row);
+
+        if(authorLengths.get(row) != author.length)
+        {
+            return false;
+        }
+
+        for(int i = 0; i < author.length; i++)
+        {
+            if(arena.get(offset + i) != author[i])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Hashes an author name's bytes, spreading the bits so that the low
+     * ones pick the bucket.
+     */
+    private static int hash(final byte[] author)
+    {
+        int hash = 0;
+
+        for(final byte b : author)
+        {
+            hash = HASH_MULTIPLIER * hash + b;
+        }
+        hash *= MIX_MULTIPLIER;
+        return hash ^ (hash >>> MIX_SHIFT);
+    }
+
+    /**
+     * Returns a power of two number of buckets that keeps a number of
+     * authors at most half full.
+     */
+    private static int bucketsFor(final int authors)
+    {
+        final int wanted;
+        wanted = Math.max(INITIAL_AUTHOR_BUCKETS, authors * GROWTH_FACTOR);
+
+        return Integer.highestOneBit(wanted - 1) << 1;
+    }
+
+    /**
+     * Grows the arena so that it can take a number of extra bytes.
+     */
+    private void ensureArenaCapacity(final int extraBytes)
+    {
+        if(arena.remaining() >= extraBytes)
+        {
+            return;
+        }
+
+        final long needed;
+        needed = (long) arena.position() + extraBytes;
+
+        if(needed > MAX_BUFFER_BYTES)
+        {
+            throw new IllegalStateException("titles and author names do not fit in one arena of "
+                    + MAX_BUFFER_BYTES + " bytes");
+        }
+
+        long capacity = Math.max((long) arena.capacity() * GROWTH_FACTOR, INITIAL_ARENA_BYTES);
+        while(capacity < needed)
+        {
+            capacity *= GROWTH_FACTOR;
+        }
+
+        final ByteBuffer grown;
+        grown = ByteBuffer.allocateDirect((int) Math.min(capacity, MAX_BUFFER_BYTES));
+
+        arena.flip();
+        grown.put(arena);
+        arena = grown;
+    }
+
+    /**
+     * Doubles the capacity of every column, up to the most rows a column
+     * can hold.
+     */
+    private void growColumns()
+    {
+        final int rows;
+        rows = (int) Math.min(Math.max((long) years.capacity() * GROWTH_FACTOR, INITIAL_ROWS), MAX_ROWS);
+
+        years = copyColumn(years, rows);
+        titleOffsets = copyColumn(titleOffsets, rows);
+        titleLengths = copyColumn(titleLengths, rows);
+        authorOffsets = copyColumn(authorOffsets, rows);
+        authorLengths = copyColumn(authorLengths, rows);
+    }
+
+    /**
+     * Copies the filled part of a column into a larger one.
+     */
+    private IntBuffer copyColumn(final IntBuffer column, final int rows)
+    {
+        final IntBuffer copy;
+        copy = allocateColumn(rows);
+
+        copy.put(0, column, 0, size);
+        return copy;
+    }
+
+    /**
+     * Allocates a direct int column in native byte order.
+     */
+    private static IntBuffer allocateColumn(final int rows)
+    {
+        if(rows > MAX_ROWS)
+        {
+            throw new IllegalStateException("storage cannot hold more than " + MAX_ROWS + " novels");
+        }
+        return ByteBuffer.allocateDirect(rows * Integer.BYTES)
+                .order(ByteOrder.nativeOrder())
+                .asIntBuffer();
+    }
+}
@@ -0,0 +1,130 @@
+package ca.bcit.bookstore2;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BinaryOperator;
+
+/**
+ * Runs a scan over catalog slots as a fork-join task.
+ *
+ * The slot range is split in halves until the pieces are small enough,
+ * each piece is scanned on its own, and the partial results are combined
+ * left to right. Because the left result is always passed first, a
+ * combiner can keep catalog order and break ties in favour of the earlier
+ * slot, exactly as a sequential scan would.
+ *
+ * @author Alex Lee
+ * @author Evan Tang
+ *
+ * @version 1.0
+ */
+final class ParallelScanner
+{
+    private static final int MIN_RANGE = 4096;
+    private static final int RANGES_PER_THREAD = 4;
+
+    private final ForkJoinPool pool;
+    private final int threshold;
+
+    /**
+     * Creates a scanner.
+     *
+     * @param pool pool to run the scans on
+     * @param threshold smallest catalog size worth scanning in parallel
+     */
+    ParallelScanner(final ForkJoinPool pool, final int threshold)
+    {
+        this.pool = pool;
+        this.threshold = threshold;
+    }
+
+    /**
+     * Scans a slot range, in parallel if it is at least the threshold.
+     *
+     * @param size number of slots to scan, starting at slot 0
+     * @param scan scans one range of slots
+     * @param combiner merges the results of two adjacent ranges, left first
+     * @param <R> type of the scan result
+     *
+     * @return the result for the whole range
+     */
+    <R> R scan(final int size, final RangeScan<R> scan, final BinaryOperator<R> combiner)
+    {
+        if(size < threshold)
+        {
+            return scan.scan(0, size);
+        }
+
+        final int rangeSize;
+        rangeSize = Math.max(MIN_RANGE, size / (pool.getParallelism() * RANGES_PER_THREAD));
+
+        return pool.invoke(new ScanTask<>(0, size, rangeSize, scan, combiner));
+    }
+
+    /**
+     * Scans the slots of a half-open range.
+     *
+     * @param <R> type of the scan result
+     */
+    @FunctionalInterface
+    interface RangeScan<R>
+    {
+        /**
+         * Scans slots from one slot up to, but not including, another.
+         *
+         * @param from first slot to scan
+         * @param to slot after the last one to scan
+         *
+         * @return the result for the range
+         */
+        R scan(int from, int to);
+    }
+
+    /**
+     * Splits a range until it is small enough to scan directly.
+     */
+    private static final class ScanTask<R> extends RecursiveTask<R>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private final int rangeSize;
+        private final transient RangeScan<R> scan;
+        private final transient BinaryOperator<R> combiner;
+
+        private ScanTask(final int from,
+                         final int to,
+                         final int rangeSize,
+                         final RangeScan<R> scan,
+                         final BinaryOperator<R> combiner)
+        {
+            this.from = from;
+            this.to = to;
+            this.rangeSize = rangeSize;
+            this.scan = scan;
+            this.combiner = combiner;
+        }
+
+        @Override
+        protected R compute()
+        {
+            if(to - from <= rangeSize)
+            {
+                return scan.scan(from, to);
+            }
+
+            final int middle;
+            final ScanTask<R> left;
+            final ScanTask<R> right;
+
+            middle = (from + to) >>> 1;
+            left = new ScanTask<>(from, middle, rangeSize, scan, combiner);
+            right = new ScanTask<>(middle, to, rangeSize, scan, combiner);
+
+            left.fork();
+            final R rightResult = right.compute();
+            return combiner.apply(left.join(), rightResult);
+        }
+    }
+}
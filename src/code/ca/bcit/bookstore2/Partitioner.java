@@ -0,0 +1,80 @@
+package ca.bcit.bookstore2;
+
+import java.util.Arrays;
+
+/**
+ * Decides which shard holds a novel.
+ *
+ * The same novel must always go to the same shard, so that it can be
+ * removed again.
+ *
+ * @author Alex Lee
+ * @author Evan Tang
+ *
+ * @version 1.0
+ */
+public interface Partitioner
+{
+    /**
+     * Returns the shard for a novel.
+     *
+     * @param novel the novel
+     * @param shardCount number of shards
+     *
+     * @return shard index, from 0 to shardCount - 1
+     */
+    int shardFor(Novel novel, int shardCount);
+
+    /**
+     * Spreads novels evenly by a hash of their title. Every copy of a
+     * title lands on the same shard.
+     *
+     * @return the partitioner
+     */
+    static Partitioner byTitleHash()
+    {
+        return (novel, shardCount) -> Math.floorMod(novel.getTitle().hashCode(), shardCount);
+    }
+
+    /**
+     * Splits novels into ranges of years. Shard 0 holds novels before the
+     * first boundary, shard 1 those from the first boundary up to the
+     * second, and so on; the last shard holds everything from the last
+     * boundary on.
+     *
+     * @param boundaries first year of every shard after the first, increasing
+     *
+     * @return the partitioner
+     */
+    static Partitioner byYearRange(final int... boundaries)
+    {
+        if(boundaries == null)
+        {
+            throw new IllegalArgumentException("boundaries must be provided");
+        }
+
+        final int[] firstYears;
+        firstYears = boundaries.clone();
+
+        for(int i = 1; i < firstYears.length; i++)
+        {
+            if(firstYears[i] <= firstYears[i - 1])
+            {
+                throw new IllegalArgumentException("boundaries must be increasing");
+            }
+        }
+
+        return (novel, shardCount) -> {
+            if(shardCount != firstYears.length + 1)
+            {
+                throw new IllegalArgumentException(
+                        firstYears.length + " boundaries need " + (firstYears.length + 1) + " shards");
+            }
+
+            final int index;
+            index = Arrays.binarySearch(firstYears, novel.getYearPublished());
+
+            return index >= 0 ? index + 1 : -index - 1;
+        };
+    }
+}
@@ -0,0 +1,554 @@
+package ca.bcit.bookstore2;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * A set of queries answered together in one pass over the catalog.
+ *
+ * Each query added to the batch returns a handle, which is used to fetch
+ * its answer from the results. When the batch runs, every live book is
+ * read once, its title decoded and case-folded at most once, and offered
+ * to every query in turn, so a batch of ten queries reads the catalog
+ * once rather than ten times. This suits catalogs that are too large or
+ * change too often for the indexes to pay off; a query that already has
+ * a built index is usually faster on its own.
+ * <pre>
+ *   QueryBatch batch = new QueryBatch();
+ *   QueryBatch.Query&lt;Integer&gt; hearts = batch.countContaining("heart");
+ *   QueryBatch.Query&lt;Novel&gt; oldest = batch.oldestBook();
+ *   QueryBatch.Results results = bookStore.runBatch(batch);
+ *   int count = results.get(hearts);
+ * </pre>
+ *
+ * @author Alex Lee
+ * @author Evan Tang
+ *
+ * @version 1.0
+ */
+public final class QueryBatch
+{
+    private static final int DECADE_OFFSET = 9;
+    private static final double PERCENTAGE = 100.0;
+
+    private final List<Query<?>> queries;
+    private boolean needsTitle;
+    private boolean needsFoldedTitle;
+
+    /**
+     * Creates an empty batch.
+     */
+    public QueryBatch()
+    {
+        queries = new ArrayList<>();
+        needsTitle = false;
+        needsFoldedTitle = false;
+    }
+
+    /**
+     * Adds a query for the titles containing a word, in catalog order. As
+     * with BookStore.getBookTitles, titles are compared in lower case and
+     * the word as given.
+     *
+     * @param word the word to look for
+     *
+     * @return handle for the list of titles
+     */
+    public Query<List<String>> titlesContaining(final String word)
+    {
+        requireText(word);
+
+        return add(true, () -> new SlotCollector(false,
+                (slot, title, foldedTitle, year) -> foldedTitle.contains(word)));
+    }
+
+    /**
+     * Adds a query for the number of titles containing a word, ignoring case.
+     *
+     * @param word the word to look for
+     *
+     * @return handle for the count
+     */
+    public Query<Integer> countContaining(final String word)
+    {
+        final String folded;
+        folded = TitleIndex.fold(requireText(word));
+
+        return add(true, () -> new Counter(
+                (slot, title, foldedTitle, year) -> foldedTitle.contains(folded), false));
+    }
+
+    /**
+     * Adds a query for the titles published in a decade, in catalog order.
+     *
+     * @param decade first year of the decade
+     *
+     * @return handle for the list of titles
+     */
+    public Query<List<String>> titlesByDecade(final int decade)
+    {
+        final int last = decade + DECADE_OFFSET;
+
+        return add(false, () -> new SlotCollector(false,
+                (slot, title, foldedTitle, year) -> year >= decade && year <= last));
+    }
+
+    /**
+     * Adds a query for the longest title. Ties go to the earlier book.
+     *
+     * @return handle for the title, which is empty if there are no books
+     */
+    public Query<String> longestTitle()
+    {
+        needsTitle = true;
+        return add(false, Longest::new);
+    }
+
+    /**
+     * Adds a query for whether any book was published in a year.
+     *
+     * @param year the year
+     *
+     * @return handle for the answer
+     */
+    public Query<Boolean> bookWrittenIn(final int year)
+    {
+        requireYear(year);
+
+        return add(false, () -> new Counter(
+                (slot, title, foldedTitle, published) -> published == year, false)
+        {
+            @Override
+            Object result(final NovelStorage novels)
+            {
+                return count() > 0;
+            }
+        });
+    }
+
+    /**
+     * Adds a query for the percentage of books published in an inclusive
+     * range of years.
+     *
+     * @param first first year of the range
+     * @param last last year of the range
+     *
+     * @return handle for the percentage
+     */
+    public Query<Double> percentWrittenBetween(final int first, final int last)
+    {
+        if(first > last)
+        {
+            throw new IllegalArgumentException("first year must be less than or equal to last year");
+        }
+        requireYear(first);
+        requireYear(last);
+
+        return add(false, () -> new Counter(
+                (slot, title, foldedTitle, year) -> year >= first && year <= last, true));
+    }
+
+    /**
+     * Adds a query for the oldest book. Ties go to the earlier book.
+     *
+     * @return handle for the book, which is null if there are no books
+     */
+    public Query<Novel> oldestBook()
+    {
+        return add(false, Oldest::new);
+    }
+
+    /**
+     * Adds a query for the books whose title has a length, in catalog order.
+     *
+     * @param titleLength length of the title
+     *
+     * @return handle for the list of books
+     */
+    public Query<List<Novel>> booksThisLength(final int titleLength)
+    {
+        needsTitle = true;
+        return add(false, () -> new SlotCollector(true,
+                (slot, title, foldedTitle, year) -> title.length() == titleLength));
+    }
+
+    /**
+     * Returns the number of queries in the batch.
+     *
+     * @return number of queries
+     */
+    public int size()
+    {
+        return queries.size();
+    }
+
+    /**
+     * Reads a range of slots once, offering each live book to every query.
+     *
+     * @param novels the catalog
+     * @param from first slot
+     * @param to slot to stop before
+     *
+     * @return the partial answers for the range
+     */
+    Pass sweep(final NovelStorage novels, final int from, final int to)
+    {
+        final Accumulator[] accumulators;
+        accumulators = new Accumulator[queries.size()];
+
+        for(int i = 0; i < accumulators.length; i++)
+        {
+            accumulators[i] = queries.get(i).factory.get();
+        }
+
+        for(int slot = from; slot < to; slot++)
+        {
+            if(!novels.isLive(slot))
+            {
+                continue;
+            }
+
+            final int year;
+            final String title;
+            final String folded;
+
+            year = novels.getYearPublished(slot);
+            title = needsTitle ? novels.getTitle(slot) : null;
+            folded = needsFoldedTitle ? TitleIndex.fold(title) : null;
+
+            for(final Accumulator accumulator : accumulators)
+            {
+                accumulator.accept(slot, title, folded, year);
+            }
+        }
+        return new Pass(accumulators);
+    }
+
+    private <T> Query<T> add(final boolean foldsTitle, final Supplier<Accumulator> factory)
+    {
+        final Query<T> query;
+        query = new Query<>(this, queries.size(), factory);
+
+        if(foldsTitle)
+        {
+            needsTitle = true;
+            needsFoldedTitle = true;
+        }
+
+        queries.add(query);
+        return query;
+    }
+
+    private static String requireText(final String word)
+    {
+        if(word == null)
+        {
+            throw new IllegalArgumentException("word must be provided");
+        }
+        return word;
+    }
+
+    private static void requireYear(final int year)
+    {
+        if(year < Novel.INITIAL_YEAR || year > Novel.CURRENT_YEAR)
+        {
+            throw new IllegalArgumentException(
+                    "year must be between " + Novel.INITIAL_YEAR + " and " + Novel.CURRENT_YEAR);
+        }
+    }
+
+    /**
+     * Handle for one query in a batch.
+     *
+     * @param <T> type of the answer
+     */
+    public static final class Query<T>
+    {
+        private final QueryBatch batch;
+        private final int position;
+        private final Supplier<Accumulator> factory;
+
+        private Query(final QueryBatch batch, final int position, final Supplier<Accumulator> factory)
+        {
+            this.batch = batch;
+            this.position = position;
+            this.factory = factory;
+        }
+    }
+
+    /**
+     * Answers to every query of a batch.
+     */
+    public static final class Results
+    {
+        private final QueryBatch batch;
+        private final Object[] answers;
+
+        private Results(final QueryBatch batch, final Object[] answers)
+        {
+            this.batch = batch;
+            this.answers = answers;
+        }
+
+        /**
+         * Returns the answer to a query.
+         *
+         * @param query handle returned when the query was added
+         * @param <T> type of the answer
+         *
+         * @return the answer
+         */
+        @SuppressWarnings("unchecked")
+        public <T> T get(final Query<T> query)
+        {
+            if(query == null || query.batch != batch || query.position >= answers.length)
+            {
+                throw new IllegalArgumentException("query is not part of this batch run");
+            }
+            return (T) answers[query.position];
+        }
+    }
+
+    /**
+     * Partial answers for one range of slots.
+     */
+    final class Pass
+    {
+        private final Accumulator[] accumulators;
+
+        private Pass(final Accumulator[] accumulators)
+        {
+            this.accumulators = accumulators;
+        }
+
+        /**
+         * Folds in the answers for the range that follows this one.
+         *
+         * @param later answers for the following range
+         *
+         * @return this pass
+         */
+        Pass merge(final Pass later)
+        {
+            for(int i = 0; i < accumulators.length; i++)
+            {
+                accumulators[i].merge(later.accumulators[i]);
+            }
+            return this;
+        }
+
+        /**
+         * Turns the partial answers into the final ones.
+         *
+         * @param novels the catalog
+         *
+         * @return the results
+         */
+        Results results(final NovelStorage novels)
+        {
+            final Object[] answers;
+            answers = new Object[accumulators.length];
+
+            for(int i = 0; i < answers.length; i++)
+            {
+                answers[i] = accumulators[i].result(novels);
+            }
+            return new Results(QueryBatch.this, answers);
+        }
+    }
+
+    /**
+     * Tests one book for a query.
+     */
+    private interface BookTest
+    {
+        boolean matches(int slot, String title, String foldedTitle, int year);
+    }
+
+    /**
+     * Running answer to one query over part of the catalog.
+     */
+    private abstract static class Accumulator
+    {
+        abstract void accept(int slot, String title, String foldedTitle, int year);
+
+        abstract void merge(Accumulator later);
+
+        abstract Object result(NovelStorage novels);
+    }
+
+    /**
+     * Collects the matching slots and returns their titles or novels.
+     */
+    private static final class SlotCollector extends Accumulator
+    {
+        private final boolean asNovels;
+        private final BookTest test;
+        private final IntList slots;
+
+        private SlotCollector(final boolean asNovels, final BookTest test)
+        {
+            this.asNovels = asNovels;
+            this.test = test;
+            this.slots = new IntList();
+        }
+
+        @Override
+        void accept(final int slot, final String title, final String foldedTitle, final int year)
+        {
+            if(test.matches(slot, title, foldedTitle, year))
+            {
+                slots.add(slot);
+            }
+        }
+
+        @Override
+        void merge(final Accumulator later)
+        {
+            final IntList laterSlots;
+            laterSlots = ((SlotCollector) later).slots;
+
+            for(int i = 0; i < laterSlots.size(); i++)
+            {
+                slots.add(laterSlots.get(i));
+            }
+        }
+
+        @Override
+        Object result(final NovelStorage novels)
+        {
+            final List<Object> found;
+            found = new ArrayList<>(slots.size());
+
+            for(int i = 0; i < slots.size(); i++)
+            {
+                found.add(asNovels ? novels.get(slots.get(i)) : novels.getTitle(slots.get(i)));
+            }
+            return found;
+        }
+    }
+
+    /**
+     * Counts the matching books, as a number or a percentage of all books.
+     */
+    private static class Counter extends Accumulator
+    {
+        private final BookTest test;
+        private final boolean asPercentage;
+        private int count;
+
+        private Counter(final BookTest test, final boolean asPercentage)
+        {
+            this.test = test;
+            this.asPercentage = asPercentage;
+            this.count = 0;
+        }
+
+        @Override
+        void accept(final int slot, final String title, final String foldedTitle, final int year)
+        {
+            if(test.matches(slot, title, foldedTitle, year))
+            {
+                count++;
+            }
+        }
+
+        @Override
+        void merge(final Accumulator later)
+        {
+            count += ((Counter) later).count;
+        }
+
+        int count()
+        {
+            return count;
+        }
+
+        @Override
+        Object result(final NovelStorage novels)
+        {
+            if(asPercentage)
+            {
+                return count * PERCENTAGE / novels.liveCount();
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Keeps the first book with the longest title.
+     */
+    private static final class Longest extends Accumulator
+    {
+        private int slot = -1;
+        private int length = -1;
+
+        @Override
+        void accept(final int slot, final String title, final String foldedTitle, final int year)
+        {
+            if(title.length() > length)
+            {
+                this.slot = slot;
+                this.length = title.length();
+            }
+        }
+
+        @Override
+        void merge(final Accumulator later)
+        {
+            final Longest other;
+            other = (Longest) later;
+
+            if(other.length > length)
+            {
+                slot = other.slot;
+                length = other.length;
+            }
+        }
+
+        @Override
+        Object result(final NovelStorage novels)
+        {
+            return slot < 0 ? "" : novels.getTitle(slot);
+        }
+    }
+
+    /**
+     * Keeps the first book with the earliest year.
+     */
+    private static final class Oldest extends Accumulator
+    {
+        private int slot = -1;
+        private int year = Integer.MAX_VALUE;
+
+        @Override
+        void accept(final int slot, final String title, final String foldedTitle, final int year)
+        {
+            if(year < this.year)
+            {
+                this.slot = slot;
+                this.year = year;
+            }
+        }
+
+        @Override
+        void merge(final Accumulator later)
+        {
+            final Oldest other;
+            other = (Oldest) later;
+
+            if(other.year < year)
+            {
+                slot = other.slot;
+                year = other.year;
+            }
+        }
+
+        @Override
+        Object result(final NovelStorage novels)
+        {
+            return slot < 0 ? null : novels.get(slot);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package ca.bcit.bookstore2;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * Bounded least-recently-used cache of query results.
+ *
+ * Results are keyed by query name and arguments and stamped with the
+ * catalog version they were computed against. A result from an older
+ * version counts as a miss and is recomputed, so any change to the catalog
+ * invalidates every cached result without walking the cache.
+ *
+ * The lock guards only the lookup and the insert. A miss stores a pending
+ * result and computes it outside the lock, so a slow query never holds up
+ * queries on other keys. Threads asking for the same key meanwhile wait
+ * for that one computation instead of repeating it.
+ *
+ * @author Alex Lee
+ * @author Evan Tang
+ *
+ * @version 1.0
+ */
+final class QueryCache
+{
+    private static final float LOAD_FACTOR = 0.75f;
+    private static final boolean ACCESS_ORDER = true;
+
+    private final int maxEntries;
+    private final Map<List<Object>, Entry> entries;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param maxEntries most results to keep before evicting the least recently used
+     */
+    QueryCache(final int maxEntries)
+    {
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<>(16, LOAD_FACTOR, ACCESS_ORDER)
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<List<Object>, Entry> eldest)
+            {
+                if(size() > QueryCache.this.maxEntries)
+                {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached result of a query, computing and caching it if it is
+     * missing or was computed against another catalog version.
+     *
+     * @param version current catalog version
+     * @param query computes the result
+     * @param name name of the query
+     * @param arguments arguments of the query
+     * @param <T> type of the result
+     *
+     * @return the result
+     */
+    <T> T get(final long version,
+              final Supplier<T> query,
+              final String name,
+              final Object... arguments)
+    {
+        final List<Object> key;
+        final Entry entry;
+        final boolean computing;
+
+        key = key(name, arguments);
+
+        synchronized(this)
+        {
+            final Entry cached;
+            cached = entries.get(key);
+
+            computing = cached == null || cached.version != version;
+
+            if(computing)
+            {
+                misses++;
+                entry = new Entry(version);
+                entries.put(key, entry);
+            }
+            else
+            {
+                hits++;
+                entry = cached;
+            }
+        }
+
+        if(computing)
+        {
+            return compute(key, entry, query);
+        }
+
+        try
+        {
+            @SuppressWarnings("unchecked")
+            final T result = (T) entry.result.join();
+            return result;
+        }
+        catch(final CompletionException failed)
+        {
+            // the thread computing it failed; let the caller see the failure itself
+            return query.get();
+        }
+    }
+
+    /**
+     * Computes a result outside the lock and hands it to the threads waiting
+     * for it. A failed computation is dropped so that the next call retries.
+     */
+    private <T> T compute(final List<Object> key, final Entry entry, final Supplier<T> query)
+    {
+        final T result;
+
+        try
+        {
+            result = query.get();
+        }
+        catch(final RuntimeException | Error failure)
+        {
+            synchronized(this)
+            {
+                entries.remove(key, entry);
+            }
+            entry.result.completeExceptionally(failure);
+            throw failure;
+        }
+
+        entry.result.complete(result);
+        return result;
+    }
+
+    /**
+     * Takes a snapshot of the hit, miss and eviction counts.
+     *
+     * @return the statistics
+     */
+    synchronized QueryCacheStats stats()
+    {
+        return new QueryCacheStats(hits, misses, evictions, entries.size(), maxEntries);
+    }
+
+    private static List<Object> key(final String name, final Object[] arguments)
+    {
+        final Object[] parts;
+        parts = new Object[arguments.length + 1];
+
+        parts[0] = name;
+        System.arraycopy(arguments, 0, parts, 1, arguments.length);
+        return Arrays.asList(parts);
+    }
+
+    /**
+     * A result, possibly still being computed, and the catalog version it is
+     * computed against.
+     */
+    private static final class Entry
+    {
+        private final long version;
+        private final CompletableFuture<Object> result;
+
+        private Entry(final long version)
+        {
+            this.version = version;
+            this.result = new CompletableFuture<>();
+        }
+    }
+}
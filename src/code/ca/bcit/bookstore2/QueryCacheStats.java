@@ -0,0 +1,116 @@
+package ca.bcit.bookstore2;
+
+/**
+ * Snapshot of query cache statistics.
+ *
+ * @author Alex Lee
+ * @author Evan Tang
+ *
+ * @version 1.0
+ */
+public final class QueryCacheStats
+{
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final int size;
+    private final int maxEntries;
+
+    /**
+     * Creates the snapshot.
+     *
+     * @param hits lookups answered from the cache
+     * @param misses lookups that ran the query
+     * @param evictions results dropped to stay within the size bound
+     * @param size results currently cached
+     * @param maxEntries most results the cache keeps
+     */
+    QueryCacheStats(final long hits,
+                    final long misses,
+                    final long evictions,
+                    final int size,
+                    final int maxEntries)
+    {
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.size = size;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Getter for hits.
+     *
+     * @return lookups answered from the cache
+     */
+    public long getHits()
+    {
+        return hits;
+    }
+
+    /**
+     * Getter for misses.
+     *
+     * @return lookups that ran the query
+     */
+    public long getMisses()
+    {
+        return misses;
+    }
+
+    /**
+     * Getter for evictions.
+     *
+     * @return results dropped to stay within the size bound
+     */
+    public long getEvictions()
+    {
+        return evictions;
+    }
+
+    /**
+     * Getter for size.
+     *
+     * @return results currently cached
+     */
+    public int getSize()
+    {
+        return size;
+    }
+
+    /**
+     * Getter for the size bound.
+     *
+     * @return most results the cache keeps
+     */
+    public int getMaxEntries()
+    {
+        return maxEntries;
+    }
+
+    /**
+     * Returns the fraction of lookups answered from the cache.
+     *
+     * @return hit rate between 0 and 1, or 0 if there were no lookups
+     */
+    public double getHitRate()
+    {
+        final long lookups;
+        lookups = hits + misses;
+
+        return lookups == 0 ? 0.0 : (double) hits / lookups;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "QueryCacheStats{" +
+                "hits=" + hits +
+                ", misses=" + misses +
+                ", evictions=" + evictions +
+                ", size=" + size +
+                ", maxEntries=" + maxEntries +
+                ", hitRate=" + getHitRate() +
+                '}';
+    }
+}
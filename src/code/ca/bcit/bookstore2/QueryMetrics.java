@@ -0,0 +1,360 @@
+package ca.bcit.bookstore2;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.Formatter;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Call counts, latency histograms and result sizes for the public
+ * operations of a bookstore or bookshop.
+ *
+ * Operations record into a per-operation histogram without taking locks.
+ * The metrics can be read through JMX, once registered, or as a text
+ * table. A bookstore without metrics pays one volatile read and a branch
+ * at the start and end of each operation; nothing is timed or allocated.
+ *
+ * @author Alex Lee
+ * @author Evan Tang
+ *
+ * @version 1.0
+ */
+public final class QueryMetrics implements QueryMetricsMXBean
+{
+    /**
+     * Start time meaning the operation is not being timed.
+     */
+    static final long NOT_TIMED = Long.MIN_VALUE;
+
+    private static final double NANOS_PER_MICRO = 1_000.0;
+    private static final double MEDIAN = 50.0;
+    private static final double P99 = 99.0;
+    private static final double P999 = 99.9;
+
+    private final IntSupplier catalogSize;
+    private final Map<String, OperationStats> operations;
+    private volatile ObjectName objectName;
+
+    /**
+     * Creates empty metrics.
+     *
+     * @param catalogSize reports the number of novels in the catalog
+     */
+    QueryMetrics(final IntSupplier catalogSize)
+    {
+        this.catalogSize = catalogSize;
+        this.operations = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Starts timing an operation if metrics are enabled.
+     *
+     * @param metrics the metrics, or null when they are disabled
+     *
+     * @return the start time, or NOT_TIMED
+     */
+    static long start(final QueryMetrics metrics)
+    {
+        return metrics == null ? NOT_TIMED : System.nanoTime();
+    }
+
+    /**
+     * Records an operation that returned a result, then returns the result.
+     *
+     * @param metrics the metrics, or null when they are disabled
+     * @param operation name of the operation
+     * @param start value returned by start
+     * @param result the result
+     * @param <T> type of the result
+     *
+     * @return the result
+     */
+    static <T> T stop(final QueryMetrics metrics, final String operation, final long start, final T result)
+    {
+        if(metrics != null && start != NOT_TIMED)
+        {
+            stopWith(metrics, operation, start, sizeOf(result));
+        }
+        return result;
+    }
+
+    /**
+     * Records an operation that returned a number, then returns the number.
+     *
+     * @param metrics the metrics, or null when they are disabled
+     * @param operation name of the operation
+     * @param start value returned by start
+     * @param result the result
+     *
+     * @return the result
+     */
+    static int stop(final QueryMetrics metrics, final String operation, final long start, final int result)
+    {
+        stopWith(metrics, operation, start, 1);
+        return result;
+    }
+
+    /**
+     * Records an operation that returned a number, then returns the number.
+     *
+     * @param metrics the metrics, or null when they are disabled
+     * @param operation name of the operation
+     * @param start value returned by start
+     * @param result the result
+     *
+     * @return the result
+     */
+    static double stop(final QueryMetrics metrics, final String operation, final long start, final double result)
+    {
+        stopWith(metrics, operation, start, 1);
+        return result;
+    }
+
+    /**
+     * Records an operation that returned a flag, then returns the flag.
+     *
+     * @param metrics the metrics, or null when they are disabled
+     * @param operation name of the operation
+     * @param start value returned by start
+     * @param result the result
+     *
+     * @return the result
+     */
+    static boolean stop(final QueryMetrics metrics, final String operation, final long start, final boolean result)
+    {
+        stopWith(metrics, operation, start, 1);
+        return result;
+    }
+
+    /**
+     * Records an operation with no result.
+     *
+     * @param metrics the metrics, or null when they are disabled
+     * @param operation name of the operation
+     * @param start value returned by start
+     */
+    static void stop(final QueryMetrics metrics, final String operation, final long start)
+    {
+        stopWith(metrics, operation, start, 0);
+    }
+
+    private static void stopWith(final QueryMetrics metrics,
+                                 final String operation,
+                                 final long start,
+                                 final int resultItems)
+    {
+        if(metrics != null && start != NOT_TIMED)
+        {
+            metrics.record(operation, System.nanoTime() - start, resultItems);
+        }
+    }
+
+    /**
+     * Records one call of an operation.
+     *
+     * @param operation name of the operation
+     * @param nanos how long the call took
+     * @param resultItems number of items the call returned
+     */
+    void record(final String operation, final long nanos, final int resultItems)
+    {
+        final OperationStats stats;
+        stats = operations.computeIfAbsent(operation, name -> new OperationStats());
+
+        stats.latency.record(nanos);
+        stats.resultItems.add(resultItems);
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server under the
+     * domain of this package.
+     *
+     * @param name name that tells these metrics apart from others
+     *
+     * @return the name the metrics were registered under
+     *
+     * @throws JMException if the metrics cannot be registered
+     */
+    public ObjectName registerMBean(final String name) throws JMException
+    {
+        if(name == null || name.isBlank())
+        {
+            throw new IllegalArgumentException("name must be provided");
+        }
+
+        final ObjectName registered;
+        registered = new ObjectName(QueryMetrics.class.getPackageName() +
+                ":type=QueryMetrics,name=" + ObjectName.quote(name));
+
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, registered);
+        objectName = registered;
+        return registered;
+    }
+
+    /**
+     * Removes the metrics from the platform MBean server if they were registered.
+     *
+     * @throws JMException if the metrics cannot be unregistered
+     */
+    public void unregisterMBean() throws JMException
+    {
+        final ObjectName registered;
+        registered = objectName;
+
+        if(registered != null)
+        {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(registered);
+            objectName = null;
+        }
+    }
+
+    @Override
+    public long getCatalogSize()
+    {
+        return catalogSize.getAsInt();
+    }
+
+    @Override
+    public long getTotalCalls()
+    {
+        long total = 0;
+
+        for(final OperationStats stats : operations.values())
+        {
+            total += stats.latency.count();
+        }
+        return total;
+    }
+
+    @Override
+    public Map<String, Long> getCallCounts()
+    {
+        return byOperation(stats -> stats.latency.count());
+    }
+
+    @Override
+    public Map<String, Long> getResultItems()
+    {
+        return byOperation(stats -> stats.resultItems.sum());
+    }
+
+    @Override
+    public Map<String, Double> getMeanMicros()
+    {
+        return byOperationMicros(stats -> stats.latency.mean());
+    }
+
+    @Override
+    public Map<String, Double> getP50Micros()
+    {
+        return byOperationMicros(stats -> stats.latency.percentile(MEDIAN));
+    }
+
+    @Override
+    public Map<String, Double> getP99Micros()
+    {
+        return byOperationMicros(stats -> stats.latency.percentile(P99));
+    }
+
+    @Override
+    public Map<String, Double> getMaxMicros()
+    {
+        return byOperationMicros(stats -> stats.latency.max());
+    }
+
+    @Override
+    public String dump()
+    {
+        final Formatter table;
+        table = new Formatter();
+
+        table.format("catalog size %d%n", getCatalogSize());
+        table.format("%-32s %10s %12s %12s %12s %12s %12s %12s%n",
+                "operation", "calls", "mean us", "p50 us", "p99 us", "p99.9 us", "max us", "items/call");
+
+        for(final Map.Entry<String, OperationStats> entry : new TreeMap<>(operations).entrySet())
+        {
+            final LatencyHistogram latency;
+            final long calls;
+
+            latency = entry.getValue().latency;
+            calls = latency.count();
+
+            table.format("%-32s %10d %12.1f %12.1f %12.1f %12.1f %12.1f %12.1f%n",
+                    entry.getKey(),
+                    calls,
+                    latency.mean() / NANOS_PER_MICRO,
+                    latency.percentile(MEDIAN) / NANOS_PER_MICRO,
+                    latency.percentile(P99) / NANOS_PER_MICRO,
+                    latency.percentile(P999) / NANOS_PER_MICRO,
+                    latency.max() / NANOS_PER_MICRO,
+                    calls == 0 ? 0.0 : (double) entry.getValue().resultItems.sum() / calls);
+        }
+        return table.toString();
+    }
+
+    @Override
+    public void reset()
+    {
+        operations.clear();
+    }
+
+    @Override
+    public String toString()
+    {
+        return dump();
+    }
+
+    private Map<String, Long> byOperation(final ToLongFunction<OperationStats> value)
+    {
+        final Map<String, Long> values;
+        values = new TreeMap<>();
+
+        operations.forEach((name, stats) -> values.put(name, value.applyAsLong(stats)));
+        return values;
+    }
+
+    private Map<String, Double> byOperationMicros(final ToDoubleFunction<OperationStats> nanos)
+    {
+        final Map<String, Double> values;
+        values = new TreeMap<>();
+
+        operations.forEach((name, stats) -> values.put(name, nanos.applyAsDouble(stats) / NANOS_PER_MICRO));
+        return values;
+    }
+
+    /**
+     * Counts the items in a result: the size of a collection or map, and
+     * one for anything else that is not null.
+     */
+    private static int sizeOf(final Object result)
+    {
+        if(result instanceof Collection)
+        {
+            return ((Collection<?>) result).size();
+        }
+
+        if(result instanceof Map)
+        {
+            return ((Map<?, ?>) result).size();
+        }
+        return result == null ? 0 : 1;
+    }
+
+    /**
+     * What is recorded for one operation.
+     */
+    private static final class OperationStats
+    {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder resultItems = new LongAdder();
+    }
+}
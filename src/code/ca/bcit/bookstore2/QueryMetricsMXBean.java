@@ -0,0 +1,84 @@
+package ca.bcit.bookstore2;
+
+import java.util.Map;
+
+/**
+ * Management interface for the metrics of a bookstore or bookshop.
+ *
+ * Latencies are in microseconds and keyed by operation name.
+ *
+ * @author Alex Lee
+ * @author Evan Tang
+ *
+ * @version 1.0
+ */
+public interface QueryMetricsMXBean
+{
+    /**
+     * Returns the number of novels in the catalog.
+     *
+     * @return the catalog size
+     */
+    long getCatalogSize();
+
+    /**
+     * Returns the number of calls to all operations together.
+     *
+     * @return total calls
+     */
+    long getTotalCalls();
+
+    /**
+     * Returns the number of calls to each operation.
+     *
+     * @return calls by operation
+     */
+    Map<String, Long> getCallCounts();
+
+    /**
+     * Returns the number of items each operation has returned in total.
+     *
+     * @return result items by operation
+     */
+    Map<String, Long> getResultItems();
+
+    /**
+     * Returns the mean latency of each operation.
+     *
+     * @return mean microseconds by operation
+     */
+    Map<String, Double> getMeanMicros();
+
+    /**
+     * Returns the median latency of each operation.
+     *
+     * @return median microseconds by operation
+     */
+    Map<String, Double> getP50Micros();
+
+    /**
+     * Returns the 99th percentile latency of each operation.
+     *
+     * @return 99th percentile microseconds by operation
+     */
+    Map<String, Double> getP99Micros();
+
+    /**
+     * Returns the largest latency of each operation.
+     *
+     * @return maximum microseconds by operation
+     */
+    Map<String, Double> getMaxMicros();
+
+    /**
+     * Returns the metrics as a text table.
+     *
+     * @return the table
+     */
+    String dump();
+
+    /**
+     * Forgets everything recorded so far.
+     */
+    void reset();
+}
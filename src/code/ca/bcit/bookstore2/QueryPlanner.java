@@ -0,0 +1,361 @@
+package ca.bcit.bookstore2;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Chooses how to run a NovelQuery over a bookstore's indexes.
+ *
+ * Every condition is given an estimate of the books it matches, read from
+ * the statistics the indexes already keep: the per-year counts for a
+ * range of years, the per-length buckets for a title length, the book
+ * count of an author, and the smallest posting list among the grams of a
+ * word. The condition with the lowest estimate drives the query, visiting
+ * only the slots its index lists. The rest are checked on those slots,
+ * most selective first, so that most slots are rejected by the first
+ * check. A query with nothing an index can answer scans the catalog.
+ * The driving slots are pulled from the index's posting lists one at a
+ * time, merging the years of a range as it goes, so a stream that stops
+ * after a few books reads only that far.
+ *
+ * The suppliers give null for an index still being built in the
+ * background. Its condition then counts as one no index answers and is
+ * checked on each book, so the query runs at once by scanning.
+ *
+ * @author Alex Lee
+ * @author Evan Tang
+ *
+ * @version 1.0
+ */
+final class QueryPlanner
+{
+    private final NovelStorage novels;
+    private final Supplier<TitleIndex> titleIndex;
+    private final Supplier<YearIndex> yearIndex;
+    private final Supplier<LengthIndex> lengthIndex;
+    private final Supplier<AuthorIndex> authorIndex;
+
+    /**
+     * Creates a planner over a catalog. Indexes are only asked for when a
+     * query has a condition that uses them.
+     *
+     * @param novels the novels
+     * @param titleIndex supplies the title index, or null if it is not ready
+     * @param yearIndex supplies the year index, or null if it is not ready
+     * @param lengthIndex supplies the title length index, or null if it is not ready
+     * @param authorIndex supplies the author index, or null if it is not ready
+     */
+    QueryPlanner(final NovelStorage novels,
+                 final Supplier<TitleIndex> titleIndex,
+                 final Supplier<YearIndex> yearIndex,
+                 final Supplier<LengthIndex> lengthIndex,
+                 final Supplier<AuthorIndex> authorIndex)
+    {
+        this.novels = novels;
+        this.titleIndex = titleIndex;
+        this.yearIndex = yearIndex;
+        this.lengthIndex = lengthIndex;
+        this.authorIndex = authorIndex;
+    }
+
+    /**
+     * Plans a query.
+     *
+     * @param conditions conditions that must all hold
+     *
+     * @return the plan
+     */
+    Plan plan(final List<NovelQuery.Condition> conditions)
+    {
+        final List<Step> checks;
+        Step driver = null;
+
+        checks = new ArrayList<>(conditions.size());
+
+        for(final NovelQuery.Condition condition : conditions)
+        {
+            final Step step;
+            step = new Step(condition);
+
+            if(step.indexed && (driver == null || step.estimate < driver.estimate))
+            {
+                driver = step;
+            }
+            checks.add(step);
+        }
+
+        checks.remove(driver);
+        checks.sort(Comparator.comparingLong(step -> step.estimate));
+
+        return new Plan(driver, checks);
+    }
+
+    /**
+     * How a query runs: the slots to visit and the checks each must pass.
+     */
+    final class Plan
+    {
+        private final Step driver;
+        private final Step[] checks;
+
+        private Plan(final Step driver, final List<Step> checks)
+        {
+            this.driver = driver;
+            this.checks = checks.toArray(new Step[0]);
+        }
+
+        /**
+         * Returns the matching books, in catalog order. Nothing is read until
+         * the first book is asked for.
+         *
+         * @return spliterator over the matching books
+         */
+        Spliterator<Novel> spliterator()
+        {
+            final long estimate;
+            estimate = driver == null ? novels.liveCount() : driver.estimate;
+
+            return new Spliterators.AbstractSpliterator<>(estimate, Spliterator.ORDERED | Spliterator.NONNULL)
+            {
+                private Cursor cursor;
+
+                @Override
+                public boolean tryAdvance(final Consumer<? super Novel> action)
+                {
+                    if(cursor == null)
+                    {
+                        cursor = new Cursor();
+                    }
+
+                    final int slot;
+                    slot = cursor.next();
+
+                    if(slot < 0)
+                    {
+                        return false;
+                    }
+                    action.accept(novels.get(slot));
+                    return true;
+                }
+            };
+        }
+
+        /**
+         * Counts the matching books without building them.
+         *
+         * @return number of matching books
+         */
+        int count()
+        {
+            final Cursor cursor;
+            int count = 0;
+
+            cursor = new Cursor();
+
+            while(cursor.next() >= 0)
+            {
+                count++;
+            }
+            return count;
+        }
+
+        @Override
+        public String toString()
+        {
+            final StringBuilder plan;
+            plan = new StringBuilder();
+
+            if(driver == null)
+            {
+                plan.append("scan ").append(novels.liveCount()).append(" books");
+            }
+            else
+            {
+                plan.append("index ").append(driver.condition).append(" ~").append(driver.estimate).append(" books");
+            }
+
+            for(int i = 0; i < checks.length; i++)
+            {
+                plan.append(i == 0 ? ", then check " : ", ").append(checks[i].condition);
+
+                if(checks[i].indexed)
+                {
+                    plan.append(" ~").append(checks[i].estimate);
+                }
+            }
+            return plan.toString();
+        }
+
+        /**
+         * Walks the slots that pass every check, in catalog order. The slots
+         * of the driving condition are read from its index as they are
+         * needed; without one, every live slot is visited in turn.
+         */
+        private final class Cursor
+        {
+            private final SlotCursor candidates;
+            private final int end;
+            private int position;
+
+            private Cursor()
+            {
+                candidates = driver == null ? null : driver.slots();
+                end = novels.slotCount();
+            }
+
+            /**
+             * Returns the next passing slot, or -1 when there are no more.
+             */
+            private int next()
+            {
+                if(candidates != null)
+                {
+                    int slot;
+
+                    while((slot = candidates.next()) != SlotCursor.END)
+                    {
+                        if(passes(slot))
+                        {
+                            return slot;
+                        }
+                    }
+                    return -1;
+                }
+
+                while(position < end)
+                {
+                    final int slot;
+                    slot = position;
+                    position++;
+
+                    if(novels.isLive(slot) && passes(slot))
+                    {
+                        return slot;
+                    }
+                }
+                return -1;
+            }
+        }
+
+        private boolean passes(final int slot)
+        {
+            for(final Step check : checks)
+            {
+                if(!check.test(slot))
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * A condition with its estimate, able to list its slots from an index
+     * or to check one slot.
+     */
+    private final class Step
+    {
+        private final NovelQuery.Condition condition;
+        private final boolean indexed;
+        private final long estimate;
+        private final byte[] encoded;
+
+        private Step(final NovelQuery.Condition condition)
+        {
+            this.condition = condition;
+            this.indexed = condition.kind() != NovelQuery.Kind.TEST && ready(condition.kind());
+            this.estimate = indexed ? estimate(condition) : Long.MAX_VALUE;
+            this.encoded = condition.kind() == NovelQuery.Kind.TITLE_CONTAINS ?
+                    TitleArena.encode(condition.text()) : null;
+        }
+
+        /**
+         * Opens a cursor over the matching slots in the condition's index.
+         */
+        private SlotCursor slots()
+        {
+            switch(condition.kind())
+            {
+                case TITLE_CONTAINS:
+                    return titleIndex.get().matches(condition.text());
+                case PUBLISHED_BETWEEN:
+                    return yearIndex.get().slotsBetween(condition.first(), condition.last());
+                case TITLE_LENGTH:
+                    return lengthIndex.get().slots(condition.first());
+                case WRITTEN_BY:
+                    return authorIndex.get().slotsBy(condition.text());
+                default:
+                    throw new IllegalStateException("no index answers " + condition);
+            }
+        }
+
+        private boolean test(final int slot)
+        {
+            switch(condition.kind())
+            {
+                case TITLE_CONTAINS:
+                {
+                    final TitleIndex index;
+                    index = titleIndex.get();
+
+                    // an index published since planning gives the same answer
+                    return index == null ?
+                            TitleIndex.fold(novels.getTitle(slot)).contains(condition.text()) :
+                            index.contains(slot, encoded);
+                }
+                case PUBLISHED_BETWEEN:
+                {
+                    final int year;
+                    year = novels.getYearPublished(slot);
+
+                    return year >= condition.first() && year <= condition.last();
+                }
+                case TITLE_LENGTH:
+                    return novels.getTitle(slot).length() == condition.first();
+                case WRITTEN_BY:
+                    return novels.getAuthorName(slot).equals(condition.text());
+                default:
+                    return condition.test().test(novels.get(slot));
+            }
+        }
+
+        /**
+         * Checks whether the index for a kind of condition is ready.
+         */
+        private boolean ready(final NovelQuery.Kind kind)
+        {
+            switch(kind)
+            {
+                case TITLE_CONTAINS:
+                    return titleIndex.get() != null;
+                case PUBLISHED_BETWEEN:
+                    return yearIndex.get() != null;
+                case TITLE_LENGTH:
+                    return lengthIndex.get() != null;
+                default:
+                    return authorIndex.get() != null;
+            }
+        }
+
+        private long estimate(final NovelQuery.Condition condition)
+        {
+            switch(condition.kind())
+            {
+                case TITLE_CONTAINS:
+                    return titleIndex.get().estimate(condition.text());
+                case PUBLISHED_BETWEEN:
+                    return yearIndex.get().countBetween(condition.first(), condition.last());
+                case TITLE_LENGTH:
+                    return lengthIndex.get().count(condition.first());
+                default:
+                    return authorIndex.get().count(condition.text());
+            }
+        }
+    }
+}
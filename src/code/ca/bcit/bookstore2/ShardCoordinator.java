@@ -0,0 +1,479 @@
+package ca.bcit.bookstore2;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A catalog split across several ShardServers, queried as if it were one
+ * bookstore.
+ *
+ * Each novel lives on the shard its Partitioner picks. A query is written
+ * to every shard before any answer is read, so the shards work on it at
+ * the same time, and the partial answers are then merged. Merging works
+ * from raw numbers rather than finished results: a percentage is the sum
+ * of the shards' matching counts over the sum of their sizes, never an
+ * average of their percentages.
+ *
+ * Ties that a single bookstore breaks by catalog order, such as two
+ * equally old books, go to the shard listed first, and lists are joined
+ * in shard order. Calls are serialised, since each shard connection
+ * carries one request at a time.
+ *
+ * @author Alex Lee
+ * @author Evan Tang
+ *
+ * @version 1.0
+ */
+public final class ShardCoordinator implements AutoCloseable
+{
+    private static final int BUFFER_BYTES = 1 << 16;
+    private static final double PERCENTAGE = 100.0;
+
+    private final Partitioner partitioner;
+    private final Socket[] sockets;
+    private final DataInputStream[] inputs;
+    private final DataOutputStream[] outputs;
+
+    /**
+     * Connects to a set of shard servers.
+     *
+     * @param shards addresses of the shards, in shard order
+     * @param partitioner picks the shard for each novel
+     *
+     * @throws IOException if a shard cannot be reached
+     */
+    public ShardCoordinator(final List<InetSocketAddress> shards, final Partitioner partitioner) throws IOException
+    {
+        if(shards == null || shards.isEmpty())
+        {
+            throw new IllegalArgumentException("at least one shard must be provided");
+        }
+
+        if(partitioner == null)
+        {
+            throw new IllegalArgumentException("partitioner must be provided");
+        }
+
+        this.partitioner = partitioner;
+        this.sockets = new Socket[shards.size()];
+        this.inputs = new DataInputStream[shards.size()];
+        this.outputs = new DataOutputStream[shards.size()];
+
+        try
+        {
+            for(int shard = 0; shard < sockets.length; shard++)
+            {
+                sockets[shard] = new Socket(shards.get(shard).getAddress(), shards.get(shard).getPort());
+                sockets[shard].setTcpNoDelay(true);
+                inputs[shard] = new DataInputStream(
+                        new BufferedInputStream(sockets[shard].getInputStream(), BUFFER_BYTES));
+                outputs[shard] = new DataOutputStream(
+                        new BufferedOutputStream(sockets[shard].getOutputStream(), BUFFER_BYTES));
+            }
+        }
+        catch(final IOException e)
+        {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the number of shards.
+     *
+     * @return number of shards
+     */
+    public int getShardCount()
+    {
+        return sockets.length;
+    }
+
+    /**
+     * Sends each novel to its shard, one batch per shard.
+     *
+     * @param novels the novels to add
+     *
+     * @throws IOException if a shard cannot be reached
+     */
+    public synchronized void addNovels(final List<Novel> novels) throws IOException
+    {
+        if(novels == null)
+        {
+            throw new IllegalArgumentException("novels must be provided");
+        }
+
+        final List<List<Novel>> batches;
+        batches = new ArrayList<>(sockets.length);
+
+        for(int shard = 0; shard < sockets.length; shard++)
+        {
+            batches.add(new ArrayList<>());
+        }
+
+        for(final Novel novel : novels)
+        {
+            if(novel == null)
+            {
+                throw new IllegalArgumentException("novels must not contain null");
+            }
+            batches.get(shardFor(novel)).add(novel);
+        }
+
+        for(int shard = 0; shard < sockets.length; shard++)
+        {
+            outputs[shard].writeByte(ShardProtocol.ADD_NOVELS);
+            ShardProtocol.writeNovels(outputs[shard], batches.get(shard));
+            outputs[shard].flush();
+        }
+
+        gather(in -> null);
+    }
+
+    /**
+     * Adds a novel to its shard.
+     *
+     * @param novel the novel to add
+     *
+     * @throws IOException if the shard cannot be reached
+     */
+    public void addNovel(final Novel novel) throws IOException
+    {
+        if(novel == null)
+        {
+            throw new IllegalArgumentException("novel must be provided");
+        }
+        addNovels(List.of(novel));
+    }
+
+    /**
+     * Removes one copy of a novel from its shard.
+     *
+     * @param novel the novel to remove
+     *
+     * @return true if a copy was removed, false if the catalog did not have it
+     *
+     * @throws IOException if the shard cannot be reached
+     */
+    public synchronized boolean removeNovel(final Novel novel) throws IOException
+    {
+        if(novel == null)
+        {
+            throw new IllegalArgumentException("novel must be provided");
+        }
+
+        final int shard;
+        shard = shardFor(novel);
+
+        outputs[shard].writeByte(ShardProtocol.REMOVE_NOVEL);
+        ShardProtocol.writeNovel(outputs[shard], novel);
+        outputs[shard].flush();
+
+        return reply(shard, DataInputStream::readBoolean);
+    }
+
+    /**
+     * Counts how many books contain specific word.
+     *
+     * @param word specific word to be found
+     *
+     * @return number of books containing the word
+     *
+     * @throws IOException if a shard cannot be reached
+     */
+    public synchronized int howManyBooksContain(final String word) throws IOException
+    {
+        if(word == null)
+        {
+            throw new IllegalArgumentException("word must be provided");
+        }
+
+        for(final DataOutputStream out : outputs)
+        {
+            out.writeByte(ShardProtocol.COUNT_CONTAINING);
+            ShardProtocol.writeString(out, word);
+            out.flush();
+        }
+
+        int count = 0;
+
+        for(final int shardCount : gather(DataInputStream::readInt))
+        {
+            count += shardCount;
+        }
+        return count;
+    }
+
+    /**
+     * Calculate the percentage of the book were written between these two years.
+     *
+     * @param first left bound of the year
+     * @param last right bound of the year
+     *
+     * @return percentage of the book
+     *
+     * @throws IOException if a shard cannot be reached
+     */
+    public synchronized double whichPercentWrittenBetween(final int first, final int last) throws IOException
+    {
+        for(final DataOutputStream out : outputs)
+        {
+            out.writeByte(ShardProtocol.COUNT_BETWEEN);
+            out.writeInt(first);
+            out.writeInt(last);
+            out.flush();
+        }
+
+        long matching = 0;
+        long total = 0;
+
+        for(final int[] counts : gather(in -> new int[] {in.readInt(), in.readInt()}))
+        {
+            matching += counts[0];
+            total += counts[1];
+        }
+        return matching * PERCENTAGE / total;
+    }
+
+    /**
+     * Returns the oldest book in the catalog.
+     *
+     * @return the oldest book, or null if there are none
+     *
+     * @throws IOException if a shard cannot be reached
+     */
+    public synchronized Novel getOldestBook() throws IOException
+    {
+        broadcast(ShardProtocol.OLDEST);
+
+        Novel oldest = null;
+
+        for(final Novel candidate : gather(in -> in.readBoolean() ? ShardProtocol.readNovel(in) : null))
+        {
+            if(candidate != null && (oldest == null || candidate.getYearPublished() < oldest.getYearPublished()))
+            {
+                oldest = candidate;
+            }
+        }
+        return oldest;
+    }
+
+    /**
+     * Returns the longest title in the catalog.
+     *
+     * @return the longest title, or an empty string if there are no books
+     *
+     * @throws IOException if a shard cannot be reached
+     */
+    public synchronized String getLongestTitle() throws IOException
+    {
+        broadcast(ShardProtocol.LONGEST);
+
+        String longest = "";
+
+        for(final String candidate : gather(ShardProtocol::readString))
+        {
+            if(candidate.length() > longest.length())
+            {
+                longest = candidate;
+            }
+        }
+        return longest;
+    }
+
+    /**
+     * Finds the longest title in the catalog and writes it to a sink.
+     *
+     * @param sink where to write the title
+     *
+     * @throws IOException if a shard cannot be reached
+     */
+    public void getLongest(final LineSink sink) throws IOException
+    {
+        sink.line(getLongestTitle());
+    }
+
+    /**
+     * Returns a List of all books whose title is this length
+     *
+     * @param titleLength desired length of the title
+     *
+     * @return desired list of novel, in shard order
+     *
+     * @throws IOException if a shard cannot be reached
+     */
+    public synchronized List<Novel> getBooksThisLength(final int titleLength) throws IOException
+    {
+        for(final DataOutputStream out : outputs)
+        {
+            out.writeByte(ShardProtocol.BOOKS_OF_LENGTH);
+            out.writeInt(titleLength);
+            out.flush();
+        }
+
+        final List<Novel> books;
+        books = new ArrayList<>();
+
+        for(final List<Novel> shardBooks : gather(ShardProtocol::readNovels))
+        {
+            books.addAll(shardBooks);
+        }
+        return books;
+    }
+
+    /**
+     * Returns the number of novels across every shard.
+     *
+     * @return number of novels
+     *
+     * @throws IOException if a shard cannot be reached
+     */
+    public synchronized int getNovelCount() throws IOException
+    {
+        broadcast(ShardProtocol.NOVEL_COUNT);
+
+        int count = 0;
+
+        for(final int shardCount : gather(DataInputStream::readInt))
+        {
+            count += shardCount;
+        }
+        return count;
+    }
+
+    /**
+     * Closes the connections to every shard. The shards keep running.
+     */
+    @Override
+    public synchronized void close()
+    {
+        for(final Socket socket : sockets)
+        {
+            if(socket != null)
+            {
+                try
+                {
+                    socket.close();
+                }
+                catch(final IOException e)
+                {
+                    // nothing more can be done with this connection
+                }
+            }
+        }
+    }
+
+    private int shardFor(final Novel novel)
+    {
+        final int shard;
+        shard = partitioner.shardFor(novel, sockets.length);
+
+        if(shard < 0 || shard >= sockets.length)
+        {
+            throw new IllegalStateException("partitioner chose shard " + shard + " of " + sockets.length);
+        }
+        return shard;
+    }
+
+    /**
+     * Sends a request with no arguments to every shard.
+     */
+    private void broadcast(final byte operation) throws IOException
+    {
+        for(final DataOutputStream out : outputs)
+        {
+            out.writeByte(operation);
+            out.flush();
+        }
+    }
+
+    /**
+     * Reads every shard's response, in shard order. A shard that reports an
+     * error does not stop the others' responses being read, so that every
+     * connection is ready for the next request; the first error is thrown
+     * once they all have been.
+     */
+    private <T> List<T> gather(final Reply<T> reply) throws IOException
+    {
+        final List<T> replies;
+        Exception failure = null;
+
+        replies = new ArrayList<>(sockets.length);
+
+        for(int shard = 0; shard < sockets.length; shard++)
+        {
+            try
+            {
+                replies.add(reply(shard, reply));
+            }
+            catch(final IllegalArgumentException | ShardFailure e)
+            {
+                if(failure == null)
+                {
+                    failure = e;
+                }
+            }
+        }
+
+        if(failure instanceof IllegalArgumentException)
+        {
+            throw (IllegalArgumentException) failure;
+        }
+
+        if(failure != null)
+        {
+            throw (ShardFailure) failure;
+        }
+        return replies;
+    }
+
+    /**
+     * Reads one shard's response, turning a reported error into an exception.
+     */
+    private <T> T reply(final int shard, final Reply<T> reply) throws IOException
+    {
+        final byte status;
+        status = inputs[shard].readByte();
+
+        if(status == ShardProtocol.OK)
+        {
+            return reply.read(inputs[shard]);
+        }
+
+        final String message;
+        message = ShardProtocol.readString(inputs[shard]);
+
+        if(status == ShardProtocol.BAD_ARGUMENT)
+        {
+            throw new IllegalArgumentException(message);
+        }
+        throw new ShardFailure("shard " + shard + " failed: " + message);
+    }
+
+    /**
+     * Reads the result part of a successful response.
+     */
+    private interface Reply<T>
+    {
+        T read(DataInputStream in) throws IOException;
+    }
+
+    /**
+     * A shard could not run a request, though the connection is still usable.
+     */
+    private static final class ShardFailure extends IOException
+    {
+        private static final long serialVersionUID = 1L;
+
+        private ShardFailure(final String message)
+        {
+            super(message);
+        }
+    }
+}
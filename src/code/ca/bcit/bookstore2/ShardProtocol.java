@@ -0,0 +1,138 @@
+package ca.bcit.bookstore2;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Wire format between a ShardCoordinator and its ShardServers.
+ *
+ * Each request is an operation code followed by its arguments, written
+ * with DataOutputStream. Each response starts with a status: OK followed
+ * by the result, or one of the error statuses followed by a message. A
+ * novel is written as its title, author name and year.
+ *
+ * Strings are written as their UTF-8 byte count and bytes rather than with
+ * writeUTF, which refuses strings over 64 KB. Such a failure would come
+ * after the operation code had been buffered for some shards but not
+ * others, leaving their streams out of step.
+ *
+ * @author Alex Lee
+ * @author Evan Tang
+ *
+ * @version 1.0
+ */
+final class ShardProtocol
+{
+    static final byte ADD_NOVELS = 1;
+    static final byte REMOVE_NOVEL = 2;
+    static final byte COUNT_CONTAINING = 3;
+    static final byte COUNT_BETWEEN = 4;
+    static final byte OLDEST = 5;
+    static final byte LONGEST = 6;
+    static final byte BOOKS_OF_LENGTH = 7;
+    static final byte NOVEL_COUNT = 8;
+
+    static final byte OK = 0;
+    static final byte BAD_ARGUMENT = 1;
+    static final byte FAILED = 2;
+
+    private ShardProtocol()
+    {
+    }
+
+    static void writeString(final DataOutputStream out, final String text) throws IOException
+    {
+        final byte[] bytes;
+        bytes = text.getBytes(StandardCharsets.UTF_8);
+
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(final DataInputStream in) throws IOException
+    {
+        final int length;
+        final byte[] bytes;
+
+        length = in.readInt();
+
+        if(length < 0)
+        {
+            throw new IOException("bad string length " + length);
+        }
+
+        bytes = new byte[length];
+        in.readFully(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static void writeNovel(final DataOutputStream out, final Novel novel) throws IOException
+    {
+        writeString(out, novel.getTitle());
+        writeString(out, novel.getAuthorName());
+        out.writeInt(novel.getYearPublished());
+    }
+
+    static Novel readNovel(final DataInputStream in) throws IOException
+    {
+        final String title;
+        final String author;
+
+        title = readString(in);
+        author = readString(in);
+
+        return new Novel(title, author, in.readInt());
+    }
+
+    static void writeNovels(final DataOutputStream out, final List<Novel> novels) throws IOException
+    {
+        out.writeInt(novels.size());
+
+        for(final Novel novel : novels)
+        {
+            writeNovel(out, novel);
+        }
+    }
+
+    static List<Novel> readNovels(final DataInputStream in) throws IOException
+    {
+        final int count;
+        final String[] titles;
+        final String[] authors;
+        final int[] years;
+        final List<Novel> novels;
+
+        count = in.readInt();
+
+        if(count < 0)
+        {
+            throw new IOException("bad novel count " + count);
+        }
+
+        // every field is read before any novel is built, so a novel that
+        // fails validation still leaves the stream at the end of the list
+        titles = new String[count];
+        authors = new String[count];
+        years = new int[count];
+
+        for(int i = 0; i < count; i++)
+        {
+            titles[i] = readString(in);
+            authors[i] = readString(in);
+            years[i] = in.readInt();
+        }
+
+        novels = new ArrayList<>(count);
+
+        for(int i = 0; i < count; i++)
+        {
+            novels.add(new Novel(titles[i], authors[i], years[i]));
+        }
+        return novels;
+    }
+}
@@ -0,0 +1,343 @@
+package ca.bcit.bookstore2;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Serves one shard of a catalog to a ShardCoordinator over TCP.
+ *
+ * The shard starts empty and is filled by the coordinator. Each
+ * connection is served by its own thread and answers requests in the
+ * order they arrive. The catalog is one BookStore behind a read-write
+ * lock: queries from different connections run together, and a change
+ * waits for them to finish. ConcurrentBookStore would spare queries that
+ * wait, but it keeps two copies of the catalog, and a shard is sized to
+ * fill its machine's memory with one.
+ *
+ * Run on its own, the server listens on the loopback interface, prints
+ * the port it is listening on, and stops when its standard input closes:
+ * <pre>
+ *   java ca.bcit.bookstore2.ShardServer [port]
+ * </pre>
+ *
+ * @author Alex Lee
+ * @author Evan Tang
+ *
+ * @version 1.0
+ */
+public final class ShardServer implements AutoCloseable
+{
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    private final BookStore bookStore;
+    private final ReadWriteLock lock;
+    private final ServerSocket serverSocket;
+    private final List<Socket> connections;
+    private final Thread acceptor;
+
+    /**
+     * Creates an empty shard and binds it to an address.
+     *
+     * @param address where to listen; port 0 picks a free port
+     *
+     * @throws IOException if the address cannot be bound
+     */
+    public ShardServer(final InetSocketAddress address) throws IOException
+    {
+        if(address == null)
+        {
+            throw new IllegalArgumentException("address must be provided");
+        }
+
+        bookStore = new BookStore("Shard", new ArrayList<>());
+        lock = new ReentrantReadWriteLock();
+        serverSocket = new ServerSocket();
+        connections = new ArrayList<>();
+
+        serverSocket.bind(address);
+        acceptor = new Thread(this::acceptConnections, "shard-acceptor");
+        acceptor.setDaemon(true);
+    }
+
+    /**
+     * Starts accepting connections.
+     */
+    public void start()
+    {
+        acceptor.start();
+    }
+
+    /**
+     * Returns the address the server listens on.
+     *
+     * @return the bound address
+     */
+    public InetSocketAddress getAddress()
+    {
+        return (InetSocketAddress) serverSocket.getLocalSocketAddress();
+    }
+
+    /**
+     * Stops accepting connections and closes the open ones.
+     *
+     * @throws IOException if the listening socket cannot be closed
+     */
+    @Override
+    public void close() throws IOException
+    {
+        serverSocket.close();
+
+        synchronized(connections)
+        {
+            for(final Socket connection : connections)
+            {
+                connection.close();
+            }
+            connections.clear();
+        }
+    }
+
+    /**
+     * Runs a shard server until standard input closes.
+     *
+     * @param args optional port to listen on
+     *
+     * @throws IOException if the server cannot be started
+     */
+    public static void main(final String[] args) throws IOException
+    {
+        final int port;
+        port = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+
+        try(ShardServer server = new ShardServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), port)))
+        {
+            server.start();
+            System.out.println(server.getAddress().getPort());
+            System.out.flush();
+
+            while(System.in.read() >= 0)
+            {
+                // run until the parent closes our input
+            }
+        }
+    }
+
+    private void acceptConnections()
+    {
+        while(!serverSocket.isClosed())
+        {
+            try
+            {
+                final Socket connection;
+                final Thread handler;
+
+                connection = serverSocket.accept();
+                connection.setTcpNoDelay(true);
+
+                synchronized(connections)
+                {
+                    connections.add(connection);
+                }
+
+                handler = new Thread(() -> serve(connection), "shard-connection");
+                handler.setDaemon(true);
+                handler.start();
+            }
+            catch(final IOException e)
+            {
+                // the socket was closed
+            }
+        }
+    }
+
+    /**
+     * Answers requests on one connection until the coordinator hangs up.
+     */
+    private void serve(final Socket connection)
+    {
+        try(connection;
+            DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(connection.getInputStream(), BUFFER_BYTES));
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(connection.getOutputStream(), BUFFER_BYTES)))
+        {
+            while(true)
+            {
+                final byte operation;
+                operation = in.readByte();
+
+                answer(operation, in, out);
+                out.flush();
+            }
+        }
+        catch(final EOFException e)
+        {
+            // the coordinator closed the connection
+        }
+        catch(final IOException e)
+        {
+            // the connection broke or the server is closing
+        }
+        finally
+        {
+            synchronized(connections)
+            {
+                connections.remove(connection);
+            }
+        }
+    }
+
+    /**
+     * Reads the arguments of one request, runs it and writes the response.
+     * Arguments are read in full before anything runs, so a rejected
+     * request leaves the stream at the start of the next one.
+     */
+    private void answer(final byte operation,
+                        final DataInputStream in,
+                        final DataOutputStream out) throws IOException
+    {
+        try
+        {
+            switch(operation)
+            {
+                case ShardProtocol.ADD_NOVELS:
+                {
+                    final List<Novel> novels = ShardProtocol.readNovels(in);
+
+                    update(store -> novels.forEach(store::addNovel));
+                    out.writeByte(ShardProtocol.OK);
+                    break;
+                }
+                case ShardProtocol.REMOVE_NOVEL:
+                {
+                    final Novel novel = ShardProtocol.readNovel(in);
+                    final boolean[] removed = new boolean[1];
+
+                    update(store -> removed[0] = store.removeNovel(novel));
+
+                    out.writeByte(ShardProtocol.OK);
+                    out.writeBoolean(removed[0]);
+                    break;
+                }
+                case ShardProtocol.COUNT_CONTAINING:
+                {
+                    final String word = ShardProtocol.readString(in);
+                    final int count = read(store -> store.howManyBooksContain(word));
+
+                    out.writeByte(ShardProtocol.OK);
+                    out.writeInt(count);
+                    break;
+                }
+                case ShardProtocol.COUNT_BETWEEN:
+                {
+                    final int first = in.readInt();
+                    final int last = in.readInt();
+                    final int[] counts = read(store -> new int[] {
+                            store.countBooksWrittenBetween(first, last), store.getNovelCount()});
+
+                    out.writeByte(ShardProtocol.OK);
+                    out.writeInt(counts[0]);
+                    out.writeInt(counts[1]);
+                    break;
+                }
+                case ShardProtocol.OLDEST:
+                {
+                    final Novel oldest = read(BookStore::getOldestBook);
+
+                    out.writeByte(ShardProtocol.OK);
+                    out.writeBoolean(oldest != null);
+                    if(oldest != null)
+                    {
+                        ShardProtocol.writeNovel(out, oldest);
+                    }
+                    break;
+                }
+                case ShardProtocol.LONGEST:
+                {
+                    final String longest = read(BookStore::getLongestTitle);
+
+                    out.writeByte(ShardProtocol.OK);
+                    ShardProtocol.writeString(out, longest);
+                    break;
+                }
+                case ShardProtocol.BOOKS_OF_LENGTH:
+                {
+                    final int length = in.readInt();
+                    final List<Novel> books = read(store -> store.getBooksThisLength(length));
+
+                    out.writeByte(ShardProtocol.OK);
+                    ShardProtocol.writeNovels(out, books);
+                    break;
+                }
+                case ShardProtocol.NOVEL_COUNT:
+                {
+                    final int count = read(BookStore::getNovelCount);
+
+                    out.writeByte(ShardProtocol.OK);
+                    out.writeInt(count);
+                    break;
+                }
+                default:
+                    throw new IOException("unknown shard operation " + operation);
+            }
+        }
+        catch(final IllegalArgumentException e)
+        {
+            out.writeByte(ShardProtocol.BAD_ARGUMENT);
+            ShardProtocol.writeString(out, String.valueOf(e.getMessage()));
+        }
+        catch(final RuntimeException e)
+        {
+            out.writeByte(ShardProtocol.FAILED);
+            ShardProtocol.writeString(out, String.valueOf(e));
+        }
+    }
+
+    /**
+     * Runs a query while no change is being made.
+     */
+    private <R> R read(final Function<BookStore, R> query)
+    {
+        lock.readLock().lock();
+
+        try
+        {
+            return query.apply(bookStore);
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Makes a change while no query or other change is running.
+     */
+    private void update(final Consumer<BookStore> change)
+    {
+        lock.writeLock().lock();
+
+        try
+        {
+            change.accept(bookStore);
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package ca.bcit.bookstore2;
+
+/**
+ * Pulls matching catalog slots out of an index one at a time, in slot
+ * order.
+ *
+ * Where forEach style methods visit every match at once, a cursor reads
+ * only as far into the index's posting lists as its caller asks, so a
+ * query stream that stops early does not pay for the matches it never
+ * reached.
+ *
+ * @author Alex Lee
+ * @author Evan Tang
+ *
+ * @version 1.0
+ */
+interface SlotCursor
+{
+    /**
+     * Returned by next once there are no more slots.
+     */
+    int END = -1;
+
+    /**
+     * A cursor with no slots.
+     */
+    SlotCursor EMPTY = () -> END;
+
+    /**
+     * Returns the next slot.
+     *
+     * @return the next slot, or END when there are no more
+     */
+    int next();
+}
@@ -0,0 +1,197 @@
+package ca.bcit.bookstore2;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.IntConsumer;
+
+/**
+ * Titles kept in alphabetical order by precomputed collation keys.
+ *
+ * Each title is turned into collation keys for a locale once, when it is
+ * added, so listing the titles in order is a walk of the map and a range
+ * or a page only walks the titles it returns. Titles are compared word by
+ * word, so "Go Tell It on the Mountain" comes before "Gone with the Wind".
+ * Within a word the collator ignores case but not accents, and treats
+ * punctuation such as a curly apostrophe the way the locale does. Titles
+ * with the same key come out in catalog order.
+ *
+ * @author Alex Lee
+ * @author Evan Tang
+ *
+ * @version 1.0
+ */
+final class SortedTitleIndex
+{
+    private static final String WORD_SEPARATOR = "\\s+";
+
+    private final Collator collator;
+    private final NavigableMap<TitleKey, IntList> slotsByKey;
+
+    /**
+     * Creates an empty index.
+     *
+     * @param locale locale whose alphabetical order to use
+     */
+    SortedTitleIndex(final Locale locale)
+    {
+        collator = Collator.getInstance(locale);
+        collator.setStrength(Collator.SECONDARY);
+        slotsByKey = new TreeMap<>();
+    }
+
+    /**
+     * Adds a title to the index. Slots must be added in increasing order.
+     *
+     * @param slot catalog slot of the novel
+     * @param title title of the novel
+     */
+    void add(final int slot, final String title)
+    {
+        slotsByKey.computeIfAbsent(key(title), key -> new IntList()).add(slot);
+    }
+
+    /**
+     * Removes a title from the index.
+     *
+     * @param slot catalog slot of the novel
+     * @param title title of the novel
+     */
+    void remove(final int slot, final String title)
+    {
+        final TitleKey key;
+        final IntList slots;
+
+        key = key(title);
+        slots = slotsByKey.get(key);
+
+        if(slots != null && slots.removeSorted(slot) && slots.isEmpty())
+        {
+            slotsByKey.remove(key);
+        }
+    }
+
+    /**
+     * Visits every slot in alphabetical order of its title.
+     *
+     * @param action called with each slot
+     */
+    void forEachInOrder(final IntConsumer action)
+    {
+        forEach(slotsByKey, action);
+    }
+
+    /**
+     * Visits the slots whose titles sort at or after one title and before
+     * another, in alphabetical order.
+     *
+     * @param from lowest title to include
+     * @param to title to stop before
+     * @param action called with each slot
+     */
+    void forEachBetween(final String from, final String to, final IntConsumer action)
+    {
+        final TitleKey fromKey;
+        final TitleKey toKey;
+
+        fromKey = key(from);
+        toKey = key(to);
+
+        if(fromKey.compareTo(toKey) < 0)
+        {
+            forEach(slotsByKey.subMap(fromKey, true, toKey, false), action);
+        }
+    }
+
+    /**
+     * Visits the slots whose titles sort after a title, in alphabetical
+     * order, stopping once a page is full. Titles that share a key are never
+     * split across pages, so a page may run over its size.
+     *
+     * @param after title the page starts after, or null to start at the beginning
+     * @param pageSize number of titles wanted
+     * @param action called with each slot
+     */
+    void forEachAfter(final String after, final int pageSize, final IntConsumer action)
+    {
+        final NavigableMap<TitleKey, IntList> tail;
+        tail = after == null ? slotsByKey : slotsByKey.tailMap(key(after), false);
+
+        int visited = 0;
+
+        for(final IntList slots : tail.values())
+        {
+            if(visited >= pageSize)
+            {
+                return;
+            }
+
+            for(int i = 0; i < slots.size(); i++)
+            {
+                action.accept(slots.get(i));
+            }
+            visited += slots.size();
+        }
+    }
+
+    private TitleKey key(final String title)
+    {
+        final String[] words;
+        final CollationKey[] keys;
+
+        words = title.strip().split(WORD_SEPARATOR);
+        keys = new CollationKey[words.length];
+
+        for(int i = 0; i < words.length; i++)
+        {
+            keys[i] = collator.getCollationKey(words[i]);
+        }
+        return new TitleKey(keys);
+    }
+
+    private static void forEach(final Map<TitleKey, IntList> entries, final IntConsumer action)
+    {
+        for(final IntList slots : entries.values())
+        {
+            for(int i = 0; i < slots.size(); i++)
+            {
+                action.accept(slots.get(i));
+            }
+        }
+    }
+
+    /**
+     * Collation keys of the words of a title, compared word by word.
+     */
+    private static final class TitleKey implements Comparable<TitleKey>
+    {
+        private final CollationKey[] words;
+
+        private TitleKey(final CollationKey[] words)
+        {
+            this.words = words;
+        }
+
+        @Override
+        public int compareTo(final TitleKey other)
+        {
+            return Arrays.compare(words, other.words);
+        }
+
+        @Override
+        public boolean equals(final Object o)
+        {
+            return o instanceof TitleKey && compareTo((TitleKey) o) == 0;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Arrays.hashCode(words);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package ca.bcit.bookstore2;
+
+/**
+ * Where a bookstore keeps its novels.
+ *
+ * @author Alex Lee
+ * @author Evan Tang
+ *
+ * @version 1.0
+ */
+public enum StorageMode
+{
+    /**
+     * One Novel object per book on the Java heap.
+     */
+    HEAP,
+
+    /**
+     * Columns of years and string offsets plus a UTF-8 arena in direct
+     * memory, with the titles in a shared TitleDictionary.
+     */
+    OFF_HEAP
+}
@@ -0,0 +1,394 @@
+package ca.bcit.bookstore2;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.function.IntConsumer;
+
+/**
+ * Case-folded titles packed back to back in one UTF-8 byte array.
+ *
+ * A substring scan runs over the whole array rather than title by title.
+ * It reads eight bytes at a time and, with bit arithmetic on the long,
+ * marks every position whose byte equals the first byte of the query and
+ * whose byte a query length later equals the last one. Only those
+ * positions are compared in full, and a match is then mapped back to its
+ * slot through the start offsets. Nothing is allocated per title.
+ *
+ * UTF-8 never encodes one character as part of another, so a folded
+ * title contains a query exactly when its bytes contain the query's bytes.
+ *
+ * @author Alex Lee
+ * @author Evan Tang
+ *
+ * @version 1.0
+ */
+final class TitleArena
+{
+    private static final int INITIAL_BYTES = 1 << 16;
+    private static final int INITIAL_SLOTS = 1 << 10;
+
+    // the word read at the last possible start may run past the used bytes
+    private static final int PADDING = Long.BYTES;
+
+    private static final long LOW_SEVEN_BITS = 0x7F7F7F7F7F7F7F7FL;
+    private static final long EVERY_BYTE = 0x0101010101010101L;
+    private static final int BYTE_MASK = 0xFF;
+    private static final int BYTE_SHIFT = 3;
+
+    private static final VarHandle LONGS =
+            MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private byte[] bytes;
+    private int used;
+    private int[] starts;
+    private int slotCount;
+    private final BitSet removed;
+
+    /**
+     * Creates an empty arena.
+     */
+    TitleArena()
+    {
+        bytes = new byte[INITIAL_BYTES + PADDING];
+        starts = new int[INITIAL_SLOTS + 1];
+        removed = new BitSet();
+    }
+
+    /**
+     * Appends a folded title. Slots must be added in increasing order; any
+     * slot skipped over is treated as removed.
+     *
+     * @param slot catalog slot of the novel
+     * @param folded case-folded title
+     */
+    void add(final int slot, final String folded)
+    {
+        final byte[] encoded;
+        encoded = encode(folded);
+
+        ensureSlotCapacity(slot + 1);
+        ensureByteCapacity(encoded.length);
+
+        while(slotCount < slot)
+        {
+            removed.set(slotCount);
+            slotCount++;
+            starts[slotCount] = used;
+        }
+
+        System.arraycopy(encoded, 0, bytes, used, encoded.length);
+        used += encoded.length;
+        slotCount++;
+        starts[slotCount] = used;
+    }
+
+    /**
+     * Removes a slot. Its bytes stay in place but never match again.
+     *
+     * @param slot catalog slot of the novel
+     */
+    void remove(final int slot)
+    {
+        removed.set(slot);
+    }
+
+    /**
+     * Checks whether a slot holds a title.
+     *
+     * @param slot catalog slot
+     *
+     * @return true if the slot was added and not removed
+     */
+    boolean isLive(final int slot)
+    {
+        return slot >= 0 && slot < slotCount && !removed.get(slot);
+    }
+
+    /**
+     * Returns the number of slots added, including removed ones.
+     *
+     * @return number of slots
+     */
+    int slotCount()
+    {
+        return slotCount;
+    }
+
+    /**
+     * Returns the folded title in a slot.
+     *
+     * @param slot catalog slot of a live title
+     *
+     * @return the folded title
+     */
+    String get(final int slot)
+    {
+        return new String(bytes, starts[slot], starts[slot + 1] - starts[slot], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Checks whether the title in a slot contains a query.
+     *
+     * @param slot catalog slot of a live title
+     * @param query UTF-8 bytes of the folded query
+     *
+     * @return true if the title contains the query
+     */
+    boolean contains(final int slot, final byte[] query)
+    {
+        return scan(query, slot, slot + 1, null) > 0;
+    }
+
+    /**
+     * Visits every live slot in a range whose title contains a query, in
+     * slot order.
+     *
+     * @param query UTF-8 bytes of the folded query
+     * @param from first slot to scan
+     * @param to slot after the last one to scan
+     * @param action called with each matching slot
+     */
+    void forEachMatch(final byte[] query, final int from, final int to, final IntConsumer action)
+    {
+        scan(query, from, to, action);
+    }
+
+    /**
+     * Counts the live slots in a range whose title contains a query.
+     *
+     * @param query UTF-8 bytes of the folded query
+     * @param from first slot to scan
+     * @param to slot after the last one to scan
+     *
+     * @return number of matching slots in the range
+     */
+    int count(final byte[] query, final int from, final int to)
+    {
+        return scan(query, from, to, null);
+    }
+
+    /**
+     * Encodes a folded title or query the way the arena stores titles.
+     *
+     * @param folded folded text
+     *
+     * @return its UTF-8 bytes
+     */
+    static byte[] encode(final String folded)
+    {
+        return folded.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Scans a range of slots, counting the live ones whose title contains
+     * the query and passing each to an action if there is one.
+     */
+    private int scan(final byte[] query, final int from, final int to, final IntConsumer action)
+    {
+        final int end;
+        end = Math.min(to, slotCount);
+
+        if(from >= end)
+        {
+            return 0;
+        }
+
+        if(query.length == 0)
+        {
+            return everyLive(from, end, action);
+        }
+
+        final int length;
+        final int lastStart;
+        final long firstBytes;
+        final long lastBytes;
+        final boolean exact;
+        int count;
+        int slot;
+        int position;
+
+        length = query.length;
+        lastStart = starts[end] - length;
+        firstBytes = EVERY_BYTE * (query[0] & BYTE_MASK);
+        lastBytes = EVERY_BYTE * (query[length - 1] & BYTE_MASK);
+
+        // the first and last bytes are the whole of a short query
+        exact = length <= 2;
+        count = 0;
+        slot = from;
+        position = starts[from];
+
+        while(true)
+        {
+            position = find(query, exact, firstBytes, lastBytes, position, lastStart);
+
+            if(position < 0)
+            {
+                return count;
+            }
+
+            slot = slotAt(position, slot, end);
+
+            // a match running into the next title does not count
+            if(position + length <= starts[slot + 1])
+            {
+                if(!removed.get(slot))
+                {
+                    count++;
+
+                    if(action != null)
+                    {
+                        action.accept(slot);
+                    }
+                }
+
+                // one match is enough for a title
+                slot++;
+                position = starts[slot];
+            }
+            else
+            {
+                position++;
+            }
+        }
+    }
+
+    /**
+     * Finds the first position, from one up to a last start, where the
+     * bytes equal the query.
+     *
+     * @return the position, or -1 if there is none
+     */
+    private int find(final byte[] query,
+                     final boolean exact,
+                     final long firstBytes,
+                     final long lastBytes,
+                     final int from,
+                     final int lastStart)
+    {
+        final int length;
+        length = query.length;
+
+        for(int word = from; word <= lastStart; word += Long.BYTES)
+        {
+            long candidates;
+            candidates = zeroBytes((long) LONGS.get(bytes, word) ^ firstBytes) &
+                    zeroBytes((long) LONGS.get(bytes, word + length - 1) ^ lastBytes);
+
+            while(candidates != 0)
+            {
+                final int position;
+                position = word + (Long.numberOfTrailingZeros(candidates) >>> BYTE_SHIFT);
+
+                if(position > lastStart)
+                {
+                    return -1;
+                }
+
+                if(exact || Arrays.equals(bytes, position, position + length, query, 0, length))
+                {
+                    return position;
+                }
+                candidates &= candidates - 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Visits every live slot in a range, for the empty query.
+     */
+    private int everyLive(final int from, final int end, final IntConsumer action)
+    {
+        int count = 0;
+
+        for(int slot = removed.nextClearBit(from); slot < end; slot = removed.nextClearBit(slot + 1))
+        {
+            count++;
+
+            if(action != null)
+            {
+                action.accept(slot);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Sets the high bit of every byte of a word that is zero, and clears
+     * every other bit.
+     */
+    private static long zeroBytes(final long word)
+    {
+        final long low;
+        low = (word & LOW_SEVEN_BITS) + LOW_SEVEN_BITS;
+
+        return ~(low | word | LOW_SEVEN_BITS);
+    }
+
+    /**
+     * Finds the slot whose bytes hold a position, searching forward from a
+     * slot known not to start after it. Matches are usually close together,
+     * so the search gallops forward before bisecting.
+     */
+    private int slotAt(final int position, final int from, final int to)
+    {
+        int low = from;
+        int step = 1;
+
+        while(low + step < to && starts[low + step] <= position)
+        {
+            low += step;
+            step <<= 1;
+        }
+
+        // the last slot in the range starting at or before the position
+        int high = Math.min(low + step, to) - 1;
+
+        while(low < high)
+        {
+            final int middle;
+            middle = (low + high + 1) >>> 1;
+
+            if(starts[middle] <= position)
+            {
+                low = middle;
+            }
+            else
+            {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    private void ensureSlotCapacity(final int slots)
+    {
+        if(slots + 1 > starts.length)
+        {
+            starts = Arrays.copyOf(starts, Math.max(starts.length * 2, slots + 1));
+        }
+    }
+
+    private void ensureByteCapacity(final int extraBytes)
+    {
+        final long needed;
+        needed = (long) used + extraBytes + PADDING;
+
+        if(needed > bytes.length)
+        {
+            final long grown;
+            grown = Math.max((long) bytes.length * 2, needed);
+
+            if(grown > Integer.MAX_VALUE - PADDING)
+            {
+                throw new IllegalStateException("titles do not fit in one arena");
+            }
+            bytes = Arrays.copyOf(bytes, (int) grown);
+        }
+    }
+}
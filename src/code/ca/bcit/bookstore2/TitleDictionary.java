@@ -0,0 +1,634 @@
+package ca.bcit.bookstore2;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * A sorted set of distinct titles, front-coded in blocks so that it takes
+ * a fraction of the memory of the same titles held as Strings.
+ *
+ * Titles are sorted the way String.compareTo sorts them and numbered from
+ * zero in that order. They are kept in blocks of sixteen in one byte
+ * array: the first title of a block is stored whole, and each of the
+ * others as the number of leading bytes it shares with the title before
+ * it followed by the bytes that differ. Titles in the same catalog often
+ * start alike, so most of each title is not stored at all.
+ *
+ * Looking a title up is a binary search over the first titles of the
+ * blocks, compared as bytes without decoding them, and then a walk of one
+ * block. A title is only turned back into a String when it is asked for.
+ *
+ * Characters are stored one UTF-16 unit at a time in one to three bytes,
+ * the same way DataOutputStream.writeUTF does apart from the zero
+ * character. The bytes of two titles then compare in the same order as
+ * the titles themselves, and every String is stored exactly, including
+ * unpaired surrogates.
+ *
+ * A dictionary never changes once it is built and may be shared between
+ * threads. Off-heap storage and Bookshop keep their titles only as ids
+ * into one, so a BookStore and a Bookshop over the same novels can share
+ * a single copy of the titles. Building one sorts the distinct titles,
+ * which is most of what it costs.
+ *
+ * @author Alex Lee
+ * @author Evan Tang
+ *
+ * @version 1.0
+ */
+public final class TitleDictionary
+{
+    private static final int BLOCK_SIZE = 16;
+    private static final int INITIAL_BYTES = 1 << 12;
+
+    private static final int SEVEN_BITS = 0x7F;
+    private static final int MORE_BYTES = 0x80;
+    private static final int VARINT_SHIFT = 7;
+
+    private static final int ONE_BYTE_LIMIT = 0x80;
+    private static final int TWO_BYTE_LIMIT = 0x800;
+    private static final int TWO_BYTE_LEAD = 0xC0;
+    private static final int THREE_BYTE_LEAD = 0xE0;
+    private static final int CONTINUATION = 0x80;
+    private static final int CONTINUATION_BITS = 0x3F;
+    private static final int CONTINUATION_SHIFT = 6;
+    private static final int TWO_BYTE_BITS = 0x1F;
+    private static final int THREE_BYTE_BITS = 0x0F;
+    private static final int BYTE_MASK = 0xFF;
+    private static final int MAX_BYTES_PER_CHAR = 3;
+
+    private final byte[] data;
+    private final int[] blockStarts;
+    private final int size;
+    private final int longestBytes;
+
+    private TitleDictionary(final byte[] data, final int[] blockStarts, final int size, final int longestBytes)
+    {
+        this.data = data;
+        this.blockStarts = blockStarts;
+        this.size = size;
+        this.longestBytes = longestBytes;
+    }
+
+    /**
+     * Builds a dictionary of titles. Repeated titles are stored once.
+     *
+     * @param titles the titles
+     *
+     * @return the dictionary
+     */
+    public static TitleDictionary of(final Collection<String> titles)
+    {
+        if(titles == null)
+        {
+            throw new IllegalArgumentException("titles must be provided");
+        }
+
+        final String[] sorted;
+        sorted = titles.toArray(new String[0]);
+
+        for(final String title : sorted)
+        {
+            if(title == null)
+            {
+                throw new IllegalArgumentException("titles must not contain null");
+            }
+        }
+        Arrays.sort(sorted);
+
+        final Builder builder;
+        builder = new Builder(sorted.length);
+
+        for(int i = 0; i < sorted.length; i++)
+        {
+            if(i == 0 || !sorted[i].equals(sorted[i - 1]))
+            {
+                builder.add(sorted[i]);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Builds a dictionary of titles and finds the id of each, which saves
+     * looking every title up afterwards. Repeated titles are stored once and
+     * sorted once.
+     *
+     * @param titles the titles
+     * @param ids receives the id of each title, at the title's position
+     *
+     * @return the dictionary
+     */
+    static TitleDictionary of(final List<String> titles, final int[] ids)
+    {
+        final Map<String, Integer> firstSeen;
+        final String[] distinct;
+        int position = 0;
+
+        firstSeen = new HashMap<>();
+
+        for(final String title : titles)
+        {
+            if(title == null)
+            {
+                throw new IllegalArgumentException("titles must not contain null");
+            }
+
+            final Integer seen;
+            seen = firstSeen.putIfAbsent(title, firstSeen.size());
+
+            ids[position++] = seen == null ? firstSeen.size() - 1 : seen;
+        }
+
+        distinct = firstSeen.keySet().toArray(new String[0]);
+        Arrays.sort(distinct);
+
+        final Builder builder;
+        final int[] sortedIds;
+
+        builder = new Builder(distinct.length);
+        sortedIds = new int[distinct.length];
+
+        for(int id = 0; id < distinct.length; id++)
+        {
+            builder.add(distinct[id]);
+            sortedIds[firstSeen.get(distinct[id])] = id;
+        }
+
+        for(int i = 0; i < position; i++)
+        {
+            ids[i] = sortedIds[ids[i]];
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns the number of titles.
+     *
+     * @return number of titles
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Returns the title with an id.
+     *
+     * @param id position of the title in sorted order
+     *
+     * @return the title
+     */
+    public String get(final int id)
+    {
+        Objects.checkIndex(id, size);
+
+        final Cursor cursor;
+        cursor = new Cursor(id / BLOCK_SIZE);
+
+        for(int i = id % BLOCK_SIZE; i > 0; i--)
+        {
+            cursor.next();
+        }
+        return cursor.title();
+    }
+
+    /**
+     * Finds the id of a title.
+     *
+     * @param title the title to find
+     *
+     * @return the id, or (-(insertion point) - 1) if the title is not in the
+     *         dictionary, as with Arrays.binarySearch
+     */
+    public int indexOf(final String title)
+    {
+        if(title == null)
+        {
+            throw new IllegalArgumentException("title must be provided");
+        }
+
+        if(size == 0)
+        {
+            return -1;
+        }
+
+        final byte[] key;
+        key = encode(title);
+
+        // the last block whose first title is not after the key
+        int low = 0;
+        int high = blockStarts.length - 1;
+
+        while(low < high)
+        {
+            final int middle;
+            middle = (low + high + 1) >>> 1;
+
+            if(compareHead(middle, key) <= 0)
+            {
+                low = middle;
+            }
+            else
+            {
+                high = middle - 1;
+            }
+        }
+
+        final Cursor cursor;
+        final int blockEnd;
+
+        cursor = new Cursor(low);
+        blockEnd = Math.min(size, (low + 1) * BLOCK_SIZE);
+
+        for(int id = low * BLOCK_SIZE; id < blockEnd; id++)
+        {
+            final int comparison;
+            comparison = cursor.compareTo(key);
+
+            if(comparison == 0)
+            {
+                return id;
+            }
+
+            if(comparison > 0)
+            {
+                return -id - 1;
+            }
+
+            if(id + 1 < blockEnd)
+            {
+                cursor.next();
+            }
+        }
+        return -blockEnd - 1;
+    }
+
+    /**
+     * Checks whether the dictionary holds a title.
+     *
+     * @param title the title to look for
+     *
+     * @return true if it does, false otherwise
+     */
+    public boolean contains(final String title)
+    {
+        return indexOf(title) >= 0;
+    }
+
+    /**
+     * Returns the titles in sorted order as a list that decodes each title
+     * when it is read. Iterating decodes each block once.
+     *
+     * @return unmodifiable view of the titles
+     */
+    public List<String> asList()
+    {
+        return new TitleList();
+    }
+
+    /**
+     * Returns the memory the encoded titles take, in bytes, counting the
+     * arrays that hold them.
+     *
+     * @return size of the encoded titles
+     */
+    public long sizeInBytes()
+    {
+        return (long) data.length + (long) blockStarts.length * Integer.BYTES;
+    }
+
+    /**
+     * Compares the first title of a block with an encoded key.
+     */
+    private int compareHead(final int block, final byte[] key)
+    {
+        int position = blockStarts[block];
+        int length = 0;
+        int shift = 0;
+        int next;
+
+        do
+        {
+            next = data[position++];
+            length |= (next & SEVEN_BITS) << shift;
+            shift += VARINT_SHIFT;
+        }
+        while((next & MORE_BYTES) != 0);
+
+        return Arrays.compareUnsigned(data, position, position + length, key, 0, key.length);
+    }
+
+    /**
+     * Encodes a title one UTF-16 unit at a time.
+     */
+    private static byte[] encode(final String title)
+    {
+        final byte[] bytes;
+        int length = 0;
+
+        bytes = new byte[title.length() * MAX_BYTES_PER_CHAR];
+
+        for(int i = 0; i < title.length(); i++)
+        {
+            final char c;
+            c = title.charAt(i);
+
+            if(c < ONE_BYTE_LIMIT)
+            {
+                bytes[length++] = (byte) c;
+            }
+            else if(c < TWO_BYTE_LIMIT)
+            {
+                bytes[length++] = (byte) (TWO_BYTE_LEAD | c >> CONTINUATION_SHIFT);
+                bytes[length++] = (byte) (CONTINUATION | c & CONTINUATION_BITS);
+            }
+            else
+            {
+                bytes[length++] = (byte) (THREE_BYTE_LEAD | c >> (CONTINUATION_SHIFT * 2));
+                bytes[length++] = (byte) (CONTINUATION | c >> CONTINUATION_SHIFT & CONTINUATION_BITS);
+                bytes[length++] = (byte) (CONTINUATION | c & CONTINUATION_BITS);
+            }
+        }
+        return length == bytes.length ? bytes : Arrays.copyOf(bytes, length);
+    }
+
+    /**
+     * Decodes bytes written by encode.
+     */
+    private static String decode(final byte[] bytes, final int length)
+    {
+        final char[] chars;
+        int count = 0;
+        int i = 0;
+
+        chars = new char[length];
+
+        while(i < length)
+        {
+            final int lead;
+            lead = bytes[i++] & BYTE_MASK;
+
+            if(lead < ONE_BYTE_LIMIT)
+            {
+                chars[count++] = (char) lead;
+            }
+            else if(lead < THREE_BYTE_LEAD)
+            {
+                chars[count++] = (char) ((lead & TWO_BYTE_BITS) << CONTINUATION_SHIFT |
+                        bytes[i++] & CONTINUATION_BITS);
+            }
+            else
+            {
+                chars[count++] = (char) ((lead & THREE_BYTE_BITS) << (CONTINUATION_SHIFT * 2) |
+                        (bytes[i] & CONTINUATION_BITS) << CONTINUATION_SHIFT |
+                        bytes[i + 1] & CONTINUATION_BITS);
+                i += 2;
+            }
+        }
+        return new String(chars, 0, count);
+    }
+
+    /**
+     * Reads the titles of a block one after another, rebuilding each in a
+     * buffer from the one before it.
+     */
+    private final class Cursor
+    {
+        private final byte[] title;
+        private int length;
+        private int position;
+
+        private Cursor(final int block)
+        {
+            title = new byte[longestBytes];
+            position = blockStarts[block];
+            length = readVarint();
+
+            System.arraycopy(data, position, title, 0, length);
+            position += length;
+        }
+
+        /**
+         * Moves to the next title in the block.
+         */
+        private void next()
+        {
+            final int shared;
+            final int suffix;
+
+            shared = readVarint();
+            suffix = readVarint();
+
+            System.arraycopy(data, position, title, shared, suffix);
+            position += suffix;
+            length = shared + suffix;
+        }
+
+        private String title()
+        {
+            return decode(title, length);
+        }
+
+        private int compareTo(final byte[] key)
+        {
+            return Arrays.compareUnsigned(title, 0, length, key, 0, key.length);
+        }
+
+        private int readVarint()
+        {
+            int value = 0;
+            int shift = 0;
+            int next;
+
+            do
+            {
+                next = data[position++];
+                value |= (next & SEVEN_BITS) << shift;
+                shift += VARINT_SHIFT;
+            }
+            while((next & MORE_BYTES) != 0);
+
+            return value;
+        }
+    }
+
+    /**
+     * The titles in sorted order, decoded when read.
+     */
+    private final class TitleList extends AbstractList<String> implements RandomAccess
+    {
+        @Override
+        public String get(final int id)
+        {
+            return TitleDictionary.this.get(id);
+        }
+
+        @Override
+        public int size()
+        {
+            return size;
+        }
+
+        @Override
+        public int indexOf(final Object title)
+        {
+            if(!(title instanceof String))
+            {
+                return -1;
+            }
+
+            final int id;
+            id = TitleDictionary.this.indexOf((String) title);
+
+            return Math.max(id, -1);
+        }
+
+        @Override
+        public int lastIndexOf(final Object title)
+        {
+            return indexOf(title);
+        }
+
+        @Override
+        public boolean contains(final Object title)
+        {
+            return indexOf(title) >= 0;
+        }
+
+        @Override
+        public Iterator<String> iterator()
+        {
+            return new Iterator<>()
+            {
+                private Cursor cursor;
+                private int id;
+
+                @Override
+                public boolean hasNext()
+                {
+                    return id < size;
+                }
+
+                @Override
+                public String next()
+                {
+                    if(id >= size)
+                    {
+                        throw new NoSuchElementException();
+                    }
+
+                    if(id % BLOCK_SIZE == 0)
+                    {
+                        cursor = new Cursor(id / BLOCK_SIZE);
+                    }
+                    else
+                    {
+                        cursor.next();
+                    }
+                    id++;
+                    return cursor.title();
+                }
+            };
+        }
+    }
+
+    /**
+     * Front-codes sorted, distinct titles into blocks.
+     */
+    private static final class Builder
+    {
+        private byte[] data;
+        private int length;
+        private final int[] blockStarts;
+        private int size;
+        private int longestBytes;
+        private byte[] previous;
+
+        private Builder(final int capacity)
+        {
+            data = new byte[INITIAL_BYTES];
+            blockStarts = new int[(capacity + BLOCK_SIZE - 1) / BLOCK_SIZE];
+            previous = new byte[0];
+        }
+
+        private void add(final String title)
+        {
+            final byte[] encoded;
+            encoded = encode(title);
+
+            if(size % BLOCK_SIZE == 0)
+            {
+                blockStarts[size / BLOCK_SIZE] = length;
+                writeVarint(encoded.length);
+                write(encoded, 0, encoded.length);
+            }
+            else
+            {
+                final int shared;
+                shared = sharedPrefix(previous, encoded);
+
+                writeVarint(shared);
+                writeVarint(encoded.length - shared);
+                write(encoded, shared, encoded.length - shared);
+            }
+
+            longestBytes = Math.max(longestBytes, encoded.length);
+            previous = encoded;
+            size++;
+        }
+
+        private TitleDictionary build()
+        {
+            return new TitleDictionary(Arrays.copyOf(data, length),
+                    Arrays.copyOf(blockStarts, (size + BLOCK_SIZE - 1) / BLOCK_SIZE), size, longestBytes);
+        }
+
+        private void writeVarint(final int value)
+        {
+            int remaining = value;
+
+            while(remaining >= MORE_BYTES)
+            {
+                write((byte) (remaining & SEVEN_BITS | MORE_BYTES));
+                remaining >>>= VARINT_SHIFT;
+            }
+            write((byte) remaining);
+        }
+
+        private void write(final byte value)
+        {
+            if(length == data.length)
+            {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            data[length++] = value;
+        }
+
+        private void write(final byte[] bytes, final int from, final int count)
+        {
+            if(length + count > data.length)
+            {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, length + count));
+            }
+            System.arraycopy(bytes, from, data, length, count);
+            length += count;
+        }
+
+        private static int sharedPrefix(final byte[] first, final byte[] second)
+        {
+            final int mismatch;
+            mismatch = Arrays.mismatch(first, second);
+
+            // titles are distinct, so one is at most a prefix of the other
+            return mismatch < 0 ? first.length : mismatch;
+        }
+    }
+}
@@ -0,0 +1,347 @@
+package ca.bcit.bookstore2;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+/**
+ * Trigram inverted index over case-folded titles.
+ *
+ * Every title is lower-cased once when it is added. Each three-character
+ * gram of the folded title maps to a sorted posting list of catalog slots,
+ * so a substring query only reads the posting lists of its own grams and
+ * then confirms the candidates against the folded titles. Queries shorter
+ * than a gram are answered by a scan of the folded titles, which are kept
+ * packed in a TitleArena so that the scan neither lower-cases nor
+ * allocates anything per title.
+ *
+ * @author Alex Lee
+ * @author Evan Tang
+ *
+ * @version 1.0
+ */
+final class TitleIndex
+{
+    private static final int GRAM_LENGTH = 3;
+    private static final int CHAR_BITS = 16;
+
+    private final Map<Long, IntList> postings;
+    private final TitleArena foldedTitles;
+
+    /**
+     * Creates an empty index.
+     */
+    TitleIndex()
+    {
+        postings = new HashMap<>();
+        foldedTitles = new TitleArena();
+    }
+
+    /**
+     * Adds a title to the index. Slots must be added in increasing order.
+     *
+     * @param slot catalog slot of the novel
+     * @param title title of the novel
+     */
+    void add(final int slot, final String title)
+    {
+        final String folded;
+        folded = fold(title);
+        foldedTitles.add(slot, folded);
+
+        for(int i = 0; i + GRAM_LENGTH <= folded.length(); i++)
+        {
+            final IntList posting;
+            posting = postings.computeIfAbsent(gram(folded, i), key -> new IntList());
+
+            // a title repeating a gram is only posted once
+            if(posting.isEmpty() || posting.get(posting.size() - 1) != slot)
+            {
+                posting.add(slot);
+            }
+        }
+    }
+
+    /**
+     * Removes a slot from the index.
+     *
+     * @param slot catalog slot of the novel
+     */
+    void remove(final int slot)
+    {
+        if(!foldedTitles.isLive(slot))
+        {
+            return;
+        }
+
+        final String folded;
+        folded = foldedTitles.get(slot);
+
+        for(int i = 0; i + GRAM_LENGTH <= folded.length(); i++)
+        {
+            final Long key;
+            final IntList posting;
+
+            key = gram(folded, i);
+            posting = postings.get(key);
+
+            if(posting != null)
+            {
+                posting.removeSorted(slot);
+                if(posting.isEmpty())
+                {
+                    postings.remove(key);
+                }
+            }
+        }
+        foldedTitles.remove(slot);
+    }
+
+    /**
+     * Visits every slot whose folded title contains the query, in slot order.
+     *
+     * @param query text to find, compared as-is against folded titles
+     * @param action called with each matching slot
+     */
+    void forEachMatch(final String query, final IntConsumer action)
+    {
+        final byte[] encoded;
+        encoded = TitleArena.encode(query);
+
+        if(usesScan(query))
+        {
+            foldedTitles.forEachMatch(encoded, 0, foldedTitles.slotCount(), action);
+            return;
+        }
+
+        final IntList[] lists;
+        lists = postingsFor(query);
+
+        if(lists == null)
+        {
+            return;
+        }
+
+        final IntList smallest;
+        smallest = lists[0];
+
+        for(int i = 0; i < smallest.size(); i++)
+        {
+            final int slot;
+            slot = smallest.get(i);
+
+            if(inAll(lists, slot) && foldedTitles.contains(slot, encoded))
+            {
+                action.accept(slot);
+            }
+        }
+    }
+
+    /**
+     * Returns a cursor over the slots whose folded title contains the
+     * query, in slot order. Candidates are confirmed as the cursor reaches
+     * them.
+     *
+     * @param query text to find, compared as-is against folded titles
+     *
+     * @return the cursor
+     */
+    SlotCursor matches(final String query)
+    {
+        final byte[] encoded;
+        encoded = TitleArena.encode(query);
+
+        if(usesScan(query))
+        {
+            return new SlotCursor()
+            {
+                private int slot;
+
+                @Override
+                public int next()
+                {
+                    while(slot < foldedTitles.slotCount())
+                    {
+                        final int candidate;
+                        candidate = slot++;
+
+                        if(foldedTitles.contains(candidate, encoded))
+                        {
+                            return candidate;
+                        }
+                    }
+                    return END;
+                }
+            };
+        }
+
+        final IntList[] lists;
+        lists = postingsFor(query);
+
+        if(lists == null)
+        {
+            return SlotCursor.EMPTY;
+        }
+
+        final SlotCursor smallest;
+        smallest = lists[0].cursor();
+
+        return () -> {
+            int slot;
+
+            while((slot = smallest.next()) != SlotCursor.END)
+            {
+                if(inAll(lists, slot) && foldedTitles.contains(slot, encoded))
+                {
+                    return slot;
+                }
+            }
+            return SlotCursor.END;
+        };
+    }
+
+    /**
+     * Counts the slots whose folded title contains the query.
+     *
+     * @param query text to find, compared as-is against folded titles
+     *
+     * @return number of matching slots
+     */
+    int count(final String query)
+    {
+        final int[] counter = new int[1];
+
+        forEachMatch(query, slot -> counter[0]++);
+        return counter[0];
+    }
+
+    /**
+     * Estimates how many slots contain a query, from the smallest posting
+     * list of its grams. The estimate is never below the true count; a
+     * query answered by a scan is estimated at every slot.
+     *
+     * @param query text to find, compared as-is against folded titles
+     *
+     * @return upper bound on the number of matching slots
+     */
+    int estimate(final String query)
+    {
+        if(usesScan(query))
+        {
+            return foldedTitles.slotCount();
+        }
+
+        final IntList[] lists;
+        lists = postingsFor(query);
+
+        return lists == null ? 0 : lists[0].size();
+    }
+
+    /**
+     * Checks whether the folded title in a live slot contains a query.
+     *
+     * @param slot catalog slot of the novel
+     * @param encoded query encoded by TitleArena.encode
+     *
+     * @return true if the title contains the query
+     */
+    boolean contains(final int slot, final byte[] encoded)
+    {
+        return foldedTitles.contains(slot, encoded);
+    }
+
+    /**
+     * Checks whether a query is too short to look up by gram and is answered
+     * by scanning the folded titles.
+     *
+     * @param query text to find
+     *
+     * @return true if the query is answered by a scan, false otherwise
+     */
+    boolean usesScan(final String query)
+    {
+        return query.length() < GRAM_LENGTH;
+    }
+
+    /**
+     * Counts the folded titles in a slot range that contain the query,
+     * without using the postings.
+     *
+     * @param query text to find, compared as-is against folded titles
+     * @param from first slot to scan
+     * @param to slot after the last one to scan
+     *
+     * @return number of matching slots in the range
+     */
+    int countScan(final String query, final int from, final int to)
+    {
+        return foldedTitles.count(TitleArena.encode(query), from, to);
+    }
+
+    /**
+     * Case-folds a title the same way queries have always done.
+     *
+     * @param title the title to fold
+     *
+     * @return the folded title
+     */
+    static String fold(final String title)
+    {
+        return title.toLowerCase();
+    }
+
+    /**
+     * Looks up the posting list of every gram in the query, smallest first.
+     *
+     * @return the posting lists, or null if some gram has no postings
+     */
+    private IntList[] postingsFor(final String query)
+    {
+        final IntList[] lists;
+        lists = new IntList[query.length() - GRAM_LENGTH + 1];
+
+        for(int i = 0; i < lists.length; i++)
+        {
+            lists[i] = postings.get(gram(query, i));
+
+            if(lists[i] == null)
+            {
+                return null;
+            }
+
+            // keep the smallest list at the front to drive the intersection
+            if(lists[i].size() < lists[0].size())
+            {
+                final IntList smaller = lists[i];
+                lists[i] = lists[0];
+                lists[0] = smaller;
+            }
+        }
+        return lists;
+    }
+
+    /**
+     * Checks whether a slot appears in every posting list after the first.
+     */
+    private static boolean inAll(final IntList[] lists, final int slot)
+    {
+        for(int i = 1; i < lists.length; i++)
+        {
+            if(!lists[i].containsSorted(slot))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Packs the gram starting at an offset into a single key.
+     */
+    private static Long gram(final String text, final int offset)
+    {
+        return ((long) text.charAt(offset) << (CHAR_BITS * 2)) |
+                ((long) text.charAt(offset + 1) << CHAR_BITS) |
+                text.charAt(offset + 2);
+    }
+}
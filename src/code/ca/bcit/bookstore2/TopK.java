@@ -0,0 +1,89 @@
+package ca.bcit.bookstore2;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * The best few catalog slots seen so far, by some order.
+ *
+ * Slots are offered one at a time. A heap holds at most the wanted number
+ * of slots with the worst of them on top, so each offer costs O(log k)
+ * and memory stays at k slots however many are offered. Two instances
+ * built over different ranges can be merged, which lets a parallel scan
+ * find the best slots of each range and then combine them.
+ *
+ * @author Alex Lee
+ * @author Evan Tang
+ *
+ * @version 1.0
+ */
+final class TopK
+{
+    private final int limit;
+    private final Comparator<Integer> order;
+    private final PriorityQueue<Integer> best;
+
+    /**
+     * Creates an empty selection.
+     *
+     * @param limit most slots to keep
+     * @param order order of the slots, best first
+     */
+    TopK(final int limit, final Comparator<Integer> order)
+    {
+        this.limit = limit;
+        this.order = order;
+        this.best = new PriorityQueue<>(order.reversed());
+    }
+
+    /**
+     * Keeps a slot if it is among the best seen so far.
+     *
+     * @param slot the slot
+     */
+    void offer(final int slot)
+    {
+        if(best.size() < limit)
+        {
+            best.add(slot);
+        }
+        else if(limit > 0 && order.compare(slot, best.peek()) < 0)
+        {
+            best.poll();
+            best.add(slot);
+        }
+    }
+
+    /**
+     * Adds the slots kept by another selection over the same order.
+     *
+     * @param other the other selection
+     *
+     * @return this selection
+     */
+    TopK merge(final TopK other)
+    {
+        for(final int slot : other.best)
+        {
+            offer(slot);
+        }
+        return this;
+    }
+
+    /**
+     * Returns the kept slots, best first.
+     *
+     * @return the slots
+     */
+    List<Integer> slots()
+    {
+        final List<Integer> slots;
+        slots = new ArrayList<>(best);
+
+        Collections.sort(slots, order);
+        return slots;
+    }
+}
@@ -0,0 +1,531 @@
+package ca.bcit.bookstore2;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+
+/**
+ * Per-year counts and posting lists over publication years.
+ *
+ * Years are bounded by the range a Novel accepts, so the index keeps one
+ * counter and one sorted slot list per year. Prefix sums over the counters
+ * are rebuilt lazily after the catalog changes, which makes range counts
+ * two array reads and finding the year at a rank a binary search over
+ * the sums.
+ *
+ * For the oldest and newest books a year's slots are also wanted in title
+ * order. That order is sorted once per year, the first time it is asked
+ * for, and then kept up to date as novels come and go by binary search
+ * on the title, so taking the first k books of a year reads only k slots.
+ *
+ * @author Alex Lee
+ * @author Evan Tang
+ *
+ * @version 1.0
+ */
+final class YearIndex
+{
+    private static final int YEAR_SLOTS = Novel.CURRENT_YEAR + 1;
+
+    private final int[] counts;
+    private final int[] prefixCounts;
+    private final IntList[] slotsByYear;
+    private final IntList[] slotsByTitle;
+    private final IntFunction<String> titles;
+    private volatile boolean prefixStale;
+
+    /**
+     * Creates an empty index.
+     *
+     * @param titles looks up the title in a slot, for ordering a year's books by title
+     */
+    YearIndex(final IntFunction<String> titles)
+    {
+        counts = new int[YEAR_SLOTS];
+        prefixCounts = new int[YEAR_SLOTS];
+        slotsByYear = new IntList[YEAR_SLOTS];
+        slotsByTitle = new IntList[YEAR_SLOTS];
+        this.titles = titles;
+        prefixStale = false;
+    }
+
+    /**
+     * Adds a novel's year to the index. Slots must be added in increasing order.
+     *
+     * @param slot catalog slot of the novel
+     * @param year year the novel was published
+     */
+    void add(final int slot, final int year)
+    {
+        if(slotsByYear[year] == null)
+        {
+            slotsByYear[year] = new IntList();
+        }
+        slotsByYear[year].add(slot);
+        counts[year]++;
+        prefixStale = true;
+        addInTitleOrder(slot, year);
+    }
+
+    /**
+     * Removes a novel's year from the index.
+     *
+     * @param slot catalog slot of the novel
+     * @param year year the novel was published
+     */
+    void remove(final int slot, final int year)
+    {
+        if(slotsByYear[year] != null && slotsByYear[year].removeSorted(slot))
+        {
+            counts[year]--;
+            prefixStale = true;
+            removeInTitleOrder(slot, year);
+        }
+    }
+
+    /**
+     * Counts the novels published in an inclusive range of valid years.
+     *
+     * @param first first year of the range
+     * @param last last year of the range
+     *
+     * @return number of novels published in the range
+     */
+    int countBetween(final int first, final int last)
+    {
+        if(prefixStale)
+        {
+            rebuildPrefixCounts();
+        }
+        return prefixCounts[last] - prefixCounts[first - 1];
+    }
+
+    /**
+     * Checks whether any novel was published in a valid year.
+     *
+     * @param year the year to check
+     *
+     * @return true if there is one, false otherwise
+     */
+    boolean contains(final int year)
+    {
+        return counts[year] > 0;
+    }
+
+    /**
+     * Counts the novels published in a valid year.
+     *
+     * @param year the year
+     *
+     * @return number of novels published that year
+     */
+    int count(final int year)
+    {
+        return counts[year];
+    }
+
+    /**
+     * Returns the earliest slot published in a valid year.
+     *
+     * @param year the year
+     *
+     * @return the slot, or -1 if no novel was published that year
+     */
+    int first(final int year)
+    {
+        return counts[year] == 0 ? -1 : slotsByYear[year].get(0);
+    }
+
+    /**
+     * Counts every novel in the index.
+     *
+     * @return number of novels
+     */
+    int total()
+    {
+        return countBetween(Novel.INITIAL_YEAR, Novel.CURRENT_YEAR);
+    }
+
+    /**
+     * Counts the novels published before a valid year.
+     *
+     * @param year the year
+     *
+     * @return number of older novels
+     */
+    int countBefore(final int year)
+    {
+        return year == Novel.INITIAL_YEAR ? 0 : countBetween(Novel.INITIAL_YEAR, year - 1);
+    }
+
+    /**
+     * Finds the year of the novel at a rank, counting from the oldest.
+     *
+     * @param rank position from 0 to one less than the total
+     *
+     * @return the year of the novel at that position
+     */
+    int yearAtRank(final int rank)
+    {
+        if(prefixStale)
+        {
+            rebuildPrefixCounts();
+        }
+
+        // first year whose running total passes the rank
+        int low = Novel.INITIAL_YEAR;
+        int high = Novel.CURRENT_YEAR;
+
+        while(low < high)
+        {
+            final int middle;
+            middle = (low + high) >>> 1;
+
+            if(prefixCounts[middle] > rank)
+            {
+                high = middle;
+            }
+            else
+            {
+                low = middle + 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Visits the slots published in a valid year, in slot order.
+     *
+     * @param year the year
+     * @param action called with each slot
+     */
+    void forEachIn(final int year, final IntConsumer action)
+    {
+        final IntList slots;
+        slots = slotsByYear[year];
+
+        for(int i = 0; i < counts[year]; i++)
+        {
+            action.accept(slots.get(i));
+        }
+    }
+
+    /**
+     * Visits the first slots published in a valid year in title order,
+     * breaking ties by slot.
+     *
+     * @param year the year
+     * @param limit most slots to visit
+     * @param action called with each slot
+     */
+    void forEachInTitleOrder(final int year, final int limit, final IntConsumer action)
+    {
+        if(counts[year] == 0)
+        {
+            return;
+        }
+
+        final IntList ordered;
+        ordered = titleOrder(year);
+
+        for(int i = 0; i < Math.min(limit, ordered.size()); i++)
+        {
+            action.accept(ordered.get(i));
+        }
+    }
+
+    /**
+     * Visits the slots published in an inclusive range of years, in slot order.
+     * Years outside the range a Novel accepts are ignored.
+     *
+     * @param first first year of the range
+     * @param last last year of the range
+     * @param action called with each matching slot
+     */
+    void forEachBetween(final int first, final int last, final IntConsumer action)
+    {
+        final SlotCursor slots;
+        int slot;
+
+        slots = slotsBetween(first, last);
+
+        while((slot = slots.next()) != SlotCursor.END)
+        {
+            action.accept(slot);
+        }
+    }
+
+    /**
+     * Returns a cursor over the slots published in an inclusive range of
+     * years, in slot order. Years outside the range a Novel accepts are
+     * ignored.
+     *
+     * @param first first year of the range
+     * @param last last year of the range
+     *
+     * @return the cursor
+     */
+    SlotCursor slotsBetween(final int first, final int last)
+    {
+        final int from;
+        final int to;
+        final IntList[] years;
+        int yearCount = 0;
+
+        from = Math.max(first, Novel.INITIAL_YEAR);
+        to = Math.min(last, Novel.CURRENT_YEAR);
+        years = new IntList[Math.max(0, to - from + 1)];
+
+        for(int year = from; year <= to; year++)
+        {
+            if(counts[year] > 0)
+            {
+                years[yearCount++] = slotsByYear[year];
+            }
+        }
+
+        if(yearCount == 0)
+        {
+            return SlotCursor.EMPTY;
+        }
+        return yearCount == 1 ? years[0].cursor() : new YearMerge(years, yearCount);
+    }
+
+    /**
+     * Returns a year's slots in title order, sorting them the first time.
+     * Concurrent readers may both ask for the same year, so only one sorts.
+     */
+    private synchronized IntList titleOrder(final int year)
+    {
+        if(slotsByTitle[year] == null)
+        {
+            final int[] slots;
+            final String[] sortKeys;
+            final Integer[] order;
+
+            slots = slotsByYear[year].toArray();
+            sortKeys = new String[slots.length];
+            order = new Integer[slots.length];
+
+            // decode each title once rather than on every comparison
+            for(int i = 0; i < slots.length; i++)
+            {
+                sortKeys[i] = titles.apply(slots[i]);
+                order[i] = i;
+            }
+
+            // slots are in increasing order, so equal titles keep slot order
+            Arrays.sort(order, (left, right) -> sortKeys[left].compareTo(sortKeys[right]));
+
+            final IntList ordered;
+            ordered = new IntList();
+
+            for(final int position : order)
+            {
+                ordered.add(slots[position]);
+            }
+            slotsByTitle[year] = ordered;
+        }
+        return slotsByTitle[year];
+    }
+
+    /**
+     * Puts a new slot in its year's title order, if that has been sorted.
+     */
+    private synchronized void addInTitleOrder(final int slot, final int year)
+    {
+        final IntList ordered;
+        ordered = slotsByTitle[year];
+
+        if(ordered != null)
+        {
+            ordered.insert(titlePosition(ordered, slot), slot);
+        }
+    }
+
+    /**
+     * Takes a slot out of its year's title order, if that has been sorted.
+     */
+    private synchronized void removeInTitleOrder(final int slot, final int year)
+    {
+        final IntList ordered;
+        ordered = slotsByTitle[year];
+
+        if(ordered != null)
+        {
+            final int position;
+            position = titlePosition(ordered, slot);
+
+            if(position < ordered.size() && ordered.get(position) == slot)
+            {
+                ordered.removeAt(position);
+            }
+        }
+    }
+
+    /**
+     * Finds where a slot belongs in a list ordered by title, then slot.
+     */
+    private int titlePosition(final IntList ordered, final int slot)
+    {
+        final String title;
+        int low = 0;
+        int high = ordered.size();
+
+        title = titles.apply(slot);
+
+        while(low < high)
+        {
+            final int middle;
+            final int other;
+            int comparison;
+
+            middle = (low + high) >>> 1;
+            other = ordered.get(middle);
+            comparison = titles.apply(other).compareTo(title);
+
+            if(comparison == 0)
+            {
+                comparison = Integer.compare(other, slot);
+            }
+
+            if(comparison < 0)
+            {
+                low = middle + 1;
+            }
+            else
+            {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Recomputes the running totals from the per-year counters. Concurrent
+     * readers may both find the totals stale, so only one rebuilds them.
+     */
+    private synchronized void rebuildPrefixCounts()
+    {
+        if(!prefixStale)
+        {
+            return;
+        }
+
+        int total = 0;
+
+        for(int year = 0; year < YEAR_SLOTS; year++)
+        {
+            total += counts[year];
+            prefixCounts[year] = total;
+        }
+        prefixStale = false;
+    }
+
+    /**
+     * Merges the slot lists of several years into one slot order. The
+     * years are kept in a heap on their next slot, so each slot costs a
+     * logarithm of the number of years rather than a pass over them.
+     */
+    private static final class YearMerge implements SlotCursor
+    {
+        private final IntList[] years;
+        private final int[] positions;
+        private final int[] heads;
+        private int size;
+
+        private YearMerge(final IntList[] years, final int size)
+        {
+            this.years = years;
+            this.positions = new int[size];
+            this.heads = new int[size];
+            this.size = size;
+
+            for(int i = 0; i < size; i++)
+            {
+                heads[i] = years[i].get(0);
+            }
+
+            for(int i = size / 2 - 1; i >= 0; i--)
+            {
+                siftDown(i);
+            }
+        }
+
+        @Override
+        public int next()
+        {
+            if(size == 0)
+            {
+                return END;
+            }
+
+            final int slot;
+            slot = heads[0];
+            positions[0]++;
+
+            if(positions[0] < years[0].size())
+            {
+                heads[0] = years[0].get(positions[0]);
+            }
+            else
+            {
+                size--;
+                move(size, 0);
+            }
+            siftDown(0);
+
+            return slot;
+        }
+
+        /**
+         * Moves a year down the heap until its next slot is no later than
+         * those of the years below it.
+         */
+        private void siftDown(final int start)
+        {
+            final IntList year;
+            final int position;
+            final int head;
+            int i = start;
+
+            year = years[i];
+            position = positions[i];
+            head = heads[i];
+
+            while(true)
+            {
+                int child;
+                child = 2 * i + 1;
+
+                if(child >= size)
+                {
+                    break;
+                }
+
+                if(child + 1 < size && heads[child + 1] < heads[child])
+                {
+                    child++;
+                }
+
+                if(head <= heads[child])
+                {
+                    break;
+                }
+                move(child, i);
+                i = child;
+            }
+
+            years[i] = year;
+            positions[i] = position;
+            heads[i] = head;
+        }
+
+        private void move(final int from, final int to)
+        {
+            years[to] = years[from];
+            positions[to] = positions[from];
+            heads[to] = heads[from];
+        }
+    }
+}